@@ -30,6 +30,19 @@ class DefaultProperties {
   public static final String JSESSIONID = "JSESSIONID"
   // Default timeout for wait for Start/Stop of the server in seconds
   public static final Integer START_STOP_TIMEOUT = Integer.valueOf(Library.getUniversalProperty('start.stop.timeout', '60'))
+  // How many servers could be started, stopped, backed up, ... by ServerController at once, 1 means one by one
+  // stopping at the first failure, see ServerLifecycleExecutor for the parallel mode and its thread safety
+  public static final Integer SERVER_LIFECYCLE_PARALLELISM = Integer.valueOf(Library.getUniversalProperty('server.lifecycle.parallelism', '1'))
+  // How new server instances are created from the reference installation, 'copy' or 'link' (binaries are hard linked), see ServerInstanceCreatorHelper
+  public static final String SERVER_CLONE_MODE = Library.getUniversalProperty('server.clone.mode', 'copy')
+  // How logs and configuration of servers are archived after a test, 'dir' (directory per test) or 'zip' (one zip per test), see ReportArchive
+  public static final String ARCHIVE_FORMAT = Library.getUniversalProperty('archive.format', 'dir')
+  // Whether files not changed since they were archived last time (or since the log checkpoint) are left out of archives
+  public static final Boolean ARCHIVE_SKIP_UNCHANGED = Boolean.valueOf(Library.getUniversalProperty('archive.skip.unchanged', 'false'))
+  // Cap of the total read throughput of archiving in MB/s so that running servers are not starved, 0 means no cap
+  public static final Integer ARCHIVE_BANDWIDTH_LIMIT = Integer.valueOf(Library.getUniversalProperty('archive.bandwidth.limit', '0'))
+  // How many servers are archived by ServerController at once
+  public static final Integer ARCHIVE_PARALLELISM = Integer.valueOf(Library.getUniversalProperty('archive.parallelism', '4'))
   // Property whether run postinstall after ews installation
   public static final Boolean EWS_SKIP_POSTINSTALL = Boolean.valueOf(Library.getUniversalProperty('ews.postinstall.skip', 'false'))
   // Well, just a line separator :-)
@@ -60,6 +73,8 @@ class DefaultProperties {
   public static final String CLUSTERBENCH_EE6_DIST_NONDIST = Library.getUniversalProperty('clusterbench.ee6.dist.nondist',
       "${JENKINS_JOBS_DIR_PREFIX}/clusterbench-mod_cluster-mbabacek/lastSuccessful/archive/clusterbench-ee6-web-nondist/target/clusterbench.war")
   public static final boolean SOLARIS_DEFAULT_LIBRARY_PATH_CLEAN = Boolean.valueOf(Library.getUniversalProperty('solaris.default.library.path.clean', 'false'))
+  // Keep one jboss-cli process per management endpoint alive and feed it commands over stdin instead of forking per command
+  public static final boolean EAP_CLI_PERSISTENT_SESSION = Boolean.valueOf(Library.getUniversalProperty('eap.cli.persistent.session', 'false'))
 
   // Get the fips self signed directory depending on whether fips on the OS is enabled or not
   public static final String SELF_SIGNED_CERTIFICATE_RESOURCE = Library.getUniversalProperty('self_signed.certificate.resource',
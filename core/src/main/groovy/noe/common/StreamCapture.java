@@ -0,0 +1,200 @@
+package noe.common;
+
+import noe.common.utils.Library;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Sink for textual process output filled by {@link StreamPump}.
+ * <p>
+ * Whole output is kept by default. Capture created with a limit keeps lines in a ring buffer of at most
+ * <code>limit</code> characters, when the output is longer only its tail is retained (see {@link #getDroppedChars()}). The whole output could be spilled to a file and every line could be
+ * passed to a {@link LineListener} as soon as it is read. Lines are separated by {@link StreamConsumer#NEW_LINE}
+ * the same way as {@link StreamConsumer} does it.
+ * <p>
+ * Limit for callers which opt in to the bounded capture is taken from property <code>cmd.output.limit</code>
+ * (characters, 1048576 by default), see {@link #DEFAULT_LIMIT}.
+ */
+public class StreamCapture {
+    private static final Logger log = LoggerFactory.getLogger(StreamCapture.class);
+    public static final int DEFAULT_LIMIT = Integer.parseInt(Library.getUniversalProperty("cmd.output.limit", "1048576"));
+    // the largest array which could be allocated
+    private static final int UNBOUNDED = Integer.MAX_VALUE - 8;
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Receives lines of the output (without line terminator) from the pump thread.
+     */
+    public interface LineListener {
+        void line(String line);
+    }
+
+    private final int limit;
+    private final Charset charset = Charset.defaultCharset();
+    private final ByteArrayOutputStream pendingLine = new ByteArrayOutputStream();
+    private File spillFile;
+    private Writer spill;
+    private LineListener listener;
+
+    private char[] ring;
+    private int start = 0;
+    private int size = 0;
+    private long dropped = 0;
+
+    /**
+     * Keeps the whole output
+     */
+    public StreamCapture() {
+        this(UNBOUNDED);
+    }
+
+    /**
+     * @param limit maximal number of retained characters
+     */
+    public StreamCapture(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit of captured output must be positive, got " + limit);
+        }
+        this.limit = limit;
+        this.ring = new char[Math.min(INITIAL_CAPACITY, limit)];
+    }
+
+    /**
+     * Whole output is written also to the file, the file is overwritten.
+     */
+    public synchronized StreamCapture spillTo(File file) {
+        this.spillFile = file;
+        return this;
+    }
+
+    public synchronized StreamCapture onLine(LineListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Consumes a chunk of raw output, complete lines are processed immediately.
+     */
+    synchronized void write(byte[] bytes, int offset, int length) {
+        int lineStart = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] == '\n') {
+                pendingLine.write(bytes, lineStart, i - lineStart);
+                flushLine();
+                lineStart = i + 1;
+            }
+        }
+        pendingLine.write(bytes, lineStart, offset + length - lineStart);
+    }
+
+    /**
+     * End of the stream, unterminated last line is processed and spill file closed.
+     */
+    synchronized void close() {
+        if (pendingLine.size() > 0) {
+            flushLine();
+        }
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                log.warn("Closing of output spill file {} failed", spillFile, e);
+            }
+            spill = null;
+        }
+    }
+
+    private void flushLine() {
+        String line = new String(pendingLine.toByteArray(), charset);
+        pendingLine.reset();
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+
+        append(line);
+        append(StreamConsumer.NEW_LINE);
+        if (spillFile != null) {
+            spillLine(line);
+        }
+        if (listener != null) {
+            try {
+                listener.line(line);
+            } catch (RuntimeException e) {
+                log.warn("Output line listener failed", e);
+            }
+        }
+    }
+
+    private void spillLine(String line) {
+        try {
+            if (spill == null) {
+                spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), charset));
+            }
+            spill.write(line);
+            spill.write(StreamConsumer.NEW_LINE);
+        } catch (IOException e) {
+            log.warn("Spilling output to {} failed, only the tail will be available", spillFile, e);
+            spillFile = null;
+        }
+    }
+
+    private void append(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (size == ring.length) {
+                if (ring.length < limit) {
+                    grow();
+                } else {
+                    ring[start] = text.charAt(i);
+                    start = (start + 1) % ring.length;
+                    dropped++;
+                    continue;
+                }
+            }
+            ring[(start + size) % ring.length] = text.charAt(i);
+            size++;
+        }
+    }
+
+    private void grow() {
+        char[] grown = new char[(int) Math.min(limit, ring.length * 2L)];
+        copyTo(grown);
+        ring = grown;
+        start = 0;
+    }
+
+    private void copyTo(char[] target) {
+        int firstPart = Math.min(size, ring.length - start);
+        System.arraycopy(ring, start, target, 0, firstPart);
+        System.arraycopy(ring, 0, target, firstPart, size - firstPart);
+    }
+
+    /**
+     * Number of characters which did not fit into the limit, the oldest ones are dropped
+     */
+    public synchronized long getDroppedChars() {
+        return dropped;
+    }
+
+    public synchronized File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * @return retained (tail of the) output
+     */
+    @Override
+    public synchronized String toString() {
+        char[] content = new char[size];
+        copyTo(content);
+        return new String(content);
+    }
+}
@@ -0,0 +1,137 @@
+package noe.common;
+
+import noe.common.utils.Library;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads process output streams into {@link StreamCapture}s on a small shared pool of daemon threads.
+ * <p>
+ * Unlike {@link StreamConsumer} there is no thread per stream. The pump never blocks: only bytes reported by
+ * {@link InputStream#available()} are read, a stream without data is polled again later. The stream is finished
+ * when its process exited and no data are left.
+ * <p>
+ * Pool size and poll interval are taken from properties <code>cmd.stream.pump.threads</code> (2 by default)
+ * and <code>cmd.stream.pump.interval</code> (ms, 5 by default).
+ */
+public class StreamPump {
+    private static final Logger log = LoggerFactory.getLogger(StreamPump.class);
+    private static final int THREADS = Integer.parseInt(Library.getUniversalProperty("cmd.stream.pump.threads", "2"));
+    private static final long POLL_INTERVAL = Long.parseLong(Library.getUniversalProperty("cmd.stream.pump.interval", "5"));
+    private static final int CHUNK = 8192;
+
+    private static final ScheduledExecutorService pool = Executors.newScheduledThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "noe-stream-pump-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private StreamPump() {
+    }
+
+    /**
+     * Starts capturing of the stream of the process
+     *
+     * @return future completed with the capture when the whole output was read
+     */
+    public static CompletableFuture<StreamCapture> capture(Process process, InputStream stream, StreamCapture capture) {
+        CompletableFuture<StreamCapture> done = new CompletableFuture<StreamCapture>();
+        pool.execute(new Reader(process, stream, capture, done));
+        return done;
+    }
+
+    /**
+     * Waits for the capture to be finished, the timeout is not an error, the output read so far stays available.
+     *
+     * @return true if the whole stream was captured
+     */
+    public static boolean await(CompletableFuture<StreamCapture> capture, long timeoutMillis) {
+        try {
+            capture.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.debug("Output was not completely captured in {} ms", timeoutMillis);
+        } catch (ExecutionException e) {
+            log.warn("Exception detected when processing output", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static final class Reader implements Runnable {
+        private final Process process;
+        private final InputStream stream;
+        private final StreamCapture capture;
+        private final CompletableFuture<StreamCapture> done;
+        private final byte[] buffer = new byte[CHUNK];
+
+        private Reader(Process process, InputStream stream, StreamCapture capture, CompletableFuture<StreamCapture> done) {
+            this.process = process;
+            this.stream = stream;
+            this.capture = capture;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // exit status has to be checked before reading, otherwise the last chunk could be missed
+                boolean exited = !process.isAlive();
+                boolean read = false;
+                int available;
+                while ((available = stream.available()) > 0) {
+                    int count = stream.read(buffer, 0, Math.min(available, buffer.length));
+                    if (count < 0) {
+                        break;
+                    }
+                    capture.write(buffer, 0, count);
+                    read = true;
+                }
+                if (exited) {
+                    finish(null);
+                } else if (read) {
+                    pool.execute(this);
+                } else {
+                    pool.schedule(this, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+            } catch (IOException e) {
+                // stream closed by the process termination
+                log.trace("Reading of process output ended: {}", e.getMessage());
+                finish(null);
+            } catch (RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        private void finish(Throwable failure) {
+            capture.close();
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+            if (failure != null) {
+                done.completeExceptionally(failure);
+            } else {
+                done.complete(capture);
+            }
+        }
+    }
+}
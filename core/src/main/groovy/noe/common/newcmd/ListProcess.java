@@ -75,12 +75,17 @@ public class ListProcess {
      * Listing data running on system. Return type is inner data structure that offers sorting
      * and filtering
      * For information about limitations of this method see documentation at {@link #listAllAsArray(PsCmdFormat...)}
+     * On Linux the data are read directly from /proc by {@link ProcFsReader} and no ps command is run.
      *
      * @param formatOptions what data will be returned about processes
      * @return list of running processes on underlying system
      * @throws IOException when error on execution of ps command occurs
      */
     public ListProcessData listAll(final PsCmdFormat... formatOptions) throws IOException {
+        if (ProcFsReader.isAvailable()) {
+            return new ProcFsReader().listAll(formatOptions);
+        }
+
         ListProcessData data = new ListProcessData();
 
         // as there could be several calls of 'ps' command results - then number of listed processes
@@ -1,30 +1,52 @@
 package noe.common.newcmd;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Ordering;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.IntPredicate;
 
 /**
  * DTO object which consists list of parsed results from system native command
  * listing processes.
  * This class then offers sorting capabilities over the parsed results.
+ * <p>
+ * The data are stored by columns. Each line of ps output is a row index, process ids are kept
+ * in a <code>long[]</code>, numeric columns (see {@link PsCmdFormat#getDataType()}) are parsed once
+ * when the value is stored and command and user names are interned. The typed accessors
+ * ({@link #getPid(int)}, {@link #getLong(int, PsCmdFormat, long)}, {@link #getCpu(int)}, ...) and index based
+ * {@link #filter(IntPredicate)} and {@link #sortedIndexes(boolean, PsCmdFormat...)} work directly over
+ * the columns. Map returning methods are kept, rows are returned as read-only views of the columns.
  */
 public class ListProcessData {
+    // values which are stored many times over the listing, e.g. 'java' or 'root'
+    private static final Interner<String> interner = Interners.newWeakInterner();
+    // marks value of numeric column which was not possible to parse
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+    private static final PsCmdFormat[] FORMATS = PsCmdFormat.values();
+
+    private int size = 0;
+    private long[] pids = new long[64];
     /**
-     * This is a map which represents lines of the output of ps command. Each line is then
-     * represented by another map where each record is mapped to a column from the ps output.
-     * This means that e.g. line '1 cat ochaloup' will be transfered to:
-     * Map<1, Map<PID:1, COMM: cat, USER: ochaloup>>
+     * Values of columns as returned by ps command indexed by {@link PsCmdFormat#ordinal()}, the column
+     * array is null until a first value of the format is stored. E.g. line '1 cat ochaloup' is
+     * stored as pids[0] = 1, values[COMMAND][0] = "cat", values[USER][0] = "ochaloup".
      */
-    private Map<String,Map<PsCmdFormat,String>> listing = new HashMap<String, Map<PsCmdFormat,String>>();
+    private final String[][] values = new String[FORMATS.length][];
+    // parsed values of Integer and Long typed columns
+    private final long[][] numbers = new long[FORMATS.length][];
+    private double[] cpu;
+    private final Map<Long, Integer> pidIndex = new HashMap<Long, Integer>();
 
 
     /**
@@ -39,10 +61,9 @@ public class ListProcessData {
      */
     public ListProcessData add(final Map<PsCmdFormat,String> mapValue) {
         Preconditions.checkNotNull(mapValue, "Data to add can't be null");
-        if(mapValue.get(PsCmdFormat.PROCESS_ID) == null) {
-            throw new IllegalArgumentException("mapValue parameter has to contain dat for PsCmdFormat#PROCESS_ID");
-        }
-        return this.add(mapValue.get(PsCmdFormat.PROCESS_ID), mapValue);
+        int index = indexOfOrCreate(parsePid(mapValue));
+        setAll(index, mapValue);
+        return this;
     }
 
     /**
@@ -57,12 +78,9 @@ public class ListProcessData {
      */
     public ListProcessData addIfExists(final Map<PsCmdFormat,String> mapValue) {
         Preconditions.checkNotNull(mapValue, "Data to add can't be null");
-        if(mapValue.get(PsCmdFormat.PROCESS_ID) == null) {
-            throw new IllegalArgumentException("mapValue parameter has to contain dat for PsCmdFormat#PROCESS_ID");
-        }
-        Map<PsCmdFormat,String> listOfValues = listing.get(mapValue.get(PsCmdFormat.PROCESS_ID));
-        if(listOfValues != null) {
-            this.add(mapValue.get(PsCmdFormat.PROCESS_ID), mapValue);
+        int index = indexOf(parsePid(mapValue));
+        if(index >= 0) {
+            setAll(index, mapValue);
         }
         return this;
     }
@@ -80,10 +98,12 @@ public class ListProcessData {
      */
     public ListProcessData put(final Map<PsCmdFormat,String> mapValue) {
         Preconditions.checkNotNull(mapValue, "Data to put can't be null");
-        if(mapValue.get(PsCmdFormat.PROCESS_ID) == null) {
-            throw new IllegalArgumentException("mapValue parameter has to contain dat for PsCmdFormat#PROCESS_ID");
+        int index = indexOfOrCreate(parsePid(mapValue));
+        for(PsCmdFormat format: FORMATS) {
+            set(index, format, null);
         }
-        return this.put(mapValue.get(PsCmdFormat.PROCESS_ID), mapValue);
+        setAll(index, mapValue);
+        return this;
     }
 
     /**
@@ -106,7 +126,7 @@ public class ListProcessData {
      * @return  number of lines
      */
     public int size() {
-        return listing.size();
+        return size;
     }
 
     /**
@@ -117,12 +137,12 @@ public class ListProcessData {
      * @return info on data
      */
     public Map<PsCmdFormat,String> get(final long processId) {
-        String processIdAsString = String.valueOf(processId);
-        if(listing.get(processIdAsString) == null) {
+        int index = indexOf(processId);
+        if(index < 0) {
             return null;
         }
         // creating copy of data
-        return new HashMap<PsCmdFormat,String>(listing.get(processIdAsString));
+        return new HashMap<PsCmdFormat,String>(new RowView(index));
     }
 
     /**
@@ -133,8 +153,11 @@ public class ListProcessData {
      * @param value  what value should be contained
      */
     public boolean contains(final PsCmdFormat psCmdFormat, final String value) {
-        for(Map<PsCmdFormat, String> line: listing.values()) {
-            if(line.get(psCmdFormat) != null && line.get(psCmdFormat).equals(value)) {
+        if(value == null) {
+            return false;
+        }
+        for(int index = 0; index < size; index++) {
+            if(value.equals(getValue(index, psCmdFormat))) {
                 return true;
             }
         }
@@ -142,22 +165,30 @@ public class ListProcessData {
     }
 
     /**
-     * Returning copy of data from the process listing as string.
+     * Returning data from the process listing as list of read-only views of lines.
      *
      * @return  list where record represents line and map represents columns for that line
      */
     public List<Map<PsCmdFormat, String>> getAsList() {
-        return new ArrayList<Map<PsCmdFormat, String>>(listing.values());
+        List<Map<PsCmdFormat, String>> list = new ArrayList<Map<PsCmdFormat, String>>(size);
+        for(int index = 0; index < size; index++) {
+            list.add(new RowView(index));
+        }
+        return list;
     }
 
     /**
-     * Returning copy of data from the process listing as map with process id used as key.
+     * Returning data from the process listing as map with process id used as key.
      *
      * @return  map where each record represents line indexed by process id and
-     *          inner map represents columns of the line
+     *          inner map represents columns of the line (read-only view)
      */
     public Map<String,Map<PsCmdFormat,String>> getAsMap() {
-        return new HashMap<String,Map<PsCmdFormat,String>>(listing);
+        Map<String,Map<PsCmdFormat,String>> map = new HashMap<String,Map<PsCmdFormat,String>>();
+        for(int index = 0; index < size; index++) {
+            map.put(String.valueOf(pids[index]), new RowView(index));
+        }
+        return map;
     }
 
     /**
@@ -169,7 +200,7 @@ public class ListProcessData {
      *         and map represents columns from the ps output
      */
     public List<Map<PsCmdFormat, String>> sortByAsList(final PsCmdFormat... formatsToSort) {
-        return sortBy(false, formatsToSort);
+        return asList(sortedIndexes(false, formatsToSort));
     }
 
     /**
@@ -181,7 +212,7 @@ public class ListProcessData {
      *         and map represents columns from the ps output in reverse order
      */
     public List<Map<PsCmdFormat, String>> sortReverseByAsList(final PsCmdFormat... formatsToSort) {
-        return sortBy(true, formatsToSort);
+        return asList(sortedIndexes(true, formatsToSort));
     }
 
     /**
@@ -193,8 +224,7 @@ public class ListProcessData {
      * @return  filtered copy of data
      */
     public ListProcessData filterBy(final PsCmdFormat cmdFormat, final String equalsString) {
-        ListProcessDataPredicate predicate = new ListProcessDataPredicate(cmdFormat, equalsString, true);
-        return filterBy(predicate);
+        return filter(valuePredicate(cmdFormat, equalsString, true));
     }
 
     /**
@@ -206,8 +236,7 @@ public class ListProcessData {
      * @return  filtered copy of data
      */
     public ListProcessData filterByContains(final PsCmdFormat cmdFormat, final String containsString) {
-        ListProcessDataPredicate predicate = new ListProcessDataPredicate(cmdFormat, containsString, false);
-        return filterBy(predicate);
+        return filter(valuePredicate(cmdFormat, containsString, false));
     }
 
     /**
@@ -218,8 +247,7 @@ public class ListProcessData {
      * @return  copy of ListProcessData with removed items
      */
     public ListProcessData removeBy(final PsCmdFormat cmdFormat, final String equalsString) {
-        ListProcessDataPredicate predicate = new ListProcessDataPredicate(cmdFormat, equalsString, true);
-        return removeBy(predicate);
+        return filter(valuePredicate(cmdFormat, equalsString, true).negate());
     }
 
     /**
@@ -230,8 +258,136 @@ public class ListProcessData {
      * @return  copy of ListProcessData with removed items
      */
     public ListProcessData removeByContains(final PsCmdFormat cmdFormat, final String containsString) {
-        ListProcessDataPredicate predicate = new ListProcessDataPredicate(cmdFormat, containsString, false);
-        return removeBy(predicate);
+        return filter(valuePredicate(cmdFormat, containsString, false).negate());
+    }
+
+    // - Index based access -------------------------------------------------------------------
+
+    /**
+     * Copy of data consisting of lines which row indexes satisfy the predicate.
+     *
+     * @param rowPredicate  predicate over row index, e.g. <code>{ data.getParentPid(it) == 1 }</code>
+     * @return  filtered copy of data
+     */
+    public ListProcessData filter(final IntPredicate rowPredicate) {
+        ListProcessData copyOfData = new ListProcessData();
+        for(int index = 0; index < size; index++) {
+            if(rowPredicate.test(index)) {
+                copyOfData.copyRow(this, index);
+            }
+        }
+        return copyOfData;
+    }
+
+    /**
+     * Row indexes sorted by the columns. Missing values are sorted first, numeric columns are compared
+     * as numbers, values of numeric column which are not numbers are sorted before numbers.
+     *
+     * @param isReverse  reverse order
+     * @param formatsToSort  columns to sort by, nulls are skipped
+     * @return row indexes in sorted order
+     */
+    public int[] sortedIndexes(final boolean isReverse, final PsCmdFormat... formatsToSort) {
+        Integer[] indexes = new Integer[size];
+        for(int index = 0; index < size; index++) {
+            indexes[index] = index;
+        }
+        Comparator<Integer> comparator = null;
+        if(formatsToSort != null) {
+            for(PsCmdFormat psCmdFormat: formatsToSort) {
+                if(psCmdFormat == null) {
+                    continue;
+                }
+                Comparator<Integer> formatComparator = new RowComparator(psCmdFormat);
+                if(isReverse) {
+                    formatComparator = Collections.reverseOrder(formatComparator);
+                }
+                comparator = comparator == null ? formatComparator : comparator.thenComparing(formatComparator);
+            }
+        }
+        if(comparator != null) {
+            Arrays.sort(indexes, comparator);
+        }
+        int[] sorted = new int[size];
+        for(int index = 0; index < size; index++) {
+            sorted[index] = indexes[index];
+        }
+        return sorted;
+    }
+
+    /**
+     * @return row index of the process id or -1 if the process is not listed
+     */
+    public int indexOf(final long processId) {
+        Integer index = pidIndex.get(processId);
+        return index == null ? -1 : index;
+    }
+
+    public long getPid(final int index) {
+        checkIndex(index);
+        return pids[index];
+    }
+
+    /**
+     * @return parent process id or -1 if it's not listed or it's not a number
+     */
+    public long getParentPid(final int index) {
+        return getLong(index, PsCmdFormat.PARENT_PROCESS_ID, -1L);
+    }
+
+    public String getCommand(final int index) {
+        return getValue(index, PsCmdFormat.COMMAND);
+    }
+
+    public String getCommandArgs(final int index) {
+        return getValue(index, PsCmdFormat.COMMAND_ARGS);
+    }
+
+    public String getUser(final int index) {
+        return getValue(index, PsCmdFormat.USER);
+    }
+
+    /**
+     * @return virtual memory size in KiB or -1 if it's not listed
+     */
+    public long getVirtMem(final int index) {
+        return getLong(index, PsCmdFormat.VIRT_MEM, -1L);
+    }
+
+    /**
+     * @return CPU usage in percents or NaN if it's not listed or not parsable
+     */
+    public double getCpu(final int index) {
+        checkIndex(index);
+        return cpu == null || values[PsCmdFormat.CPU.ordinal()][index] == null ? Double.NaN : cpu[index];
+    }
+
+    /**
+     * @return value of the column as returned by ps command or null if it's not listed
+     */
+    public String getValue(final int index, final PsCmdFormat format) {
+        checkIndex(index);
+        if(format == PsCmdFormat.PROCESS_ID) {
+            return String.valueOf(pids[index]);
+        }
+        String[] column = values[format.ordinal()];
+        return column == null ? null : column[index];
+    }
+
+    /**
+     * @return parsed value of numeric column (see {@link PsCmdFormat#getDataType()})
+     *         or the default value when it's not listed or not a number
+     */
+    public long getLong(final int index, final PsCmdFormat format, final long defaultValue) {
+        checkIndex(index);
+        if(format == PsCmdFormat.PROCESS_ID) {
+            return pids[index];
+        }
+        long[] column = numbers[format.ordinal()];
+        if(column == null || values[format.ordinal()][index] == null || column[index] == NOT_A_NUMBER) {
+            return defaultValue;
+        }
+        return column[index];
     }
 
     /**
@@ -241,180 +397,271 @@ public class ListProcessData {
      * could return a bit different data.
      */
     void removeIncomplete(final int expectedNumberOfRecords) {
-        Iterator<String> listingIterator = listing.keySet().iterator();
-        while (listingIterator.hasNext()) {
-           String key = listingIterator.next();
-           // there could be added some necessary items to listing (e.g. pid) as addition to expected
-           // records that user wants to work with
-           if(listing.get(key).size() < expectedNumberOfRecords) {
-               listingIterator.remove();
-           }
+        // there could be added some necessary items to listing (e.g. pid) as addition to expected
+        // records that user wants to work with
+        int kept = 0;
+        for(int index = 0; index < size; index++) {
+            if(countValues(index) >= expectedNumberOfRecords) {
+                moveRow(index, kept++);
+            }
+        }
+        for(int index = kept; index < size; index++) {
+            for(PsCmdFormat format: FORMATS) {
+                set(index, format, null);
+            }
+        }
+        size = kept;
+        pidIndex.clear();
+        for(int index = 0; index < size; index++) {
+            pidIndex.put(pids[index], index);
         }
     }
 
-    private ListProcessData filterBy(final ListProcessDataPredicate predicate) {
-        Iterable<Map<PsCmdFormat, String>> filteredList = Iterables.filter(getAsList(), predicate);
-        ListProcessData copyOfData = new ListProcessData();
-        return copyOfData.putAll(filteredList);
+    // - Internals ----------------------------------------------------------------------------
+
+    private List<Map<PsCmdFormat, String>> asList(final int[] indexes) {
+        List<Map<PsCmdFormat, String>> list = new ArrayList<Map<PsCmdFormat, String>>(indexes.length);
+        for(int index: indexes) {
+            list.add(new RowView(index));
+        }
+        return list;
     }
 
-    private ListProcessData removeBy(final ListProcessDataPredicate predicate) {
-        List<Map<PsCmdFormat, String>> asList = getAsList();
-        Iterables.removeIf(asList, predicate);
-        ListProcessData copyOfData = new ListProcessData();
-        return copyOfData.putAll(asList);
+    private IntPredicate valuePredicate(final PsCmdFormat cmdFormat, final String stringToVerify, final boolean isEqual) {
+        Preconditions.checkNotNull(cmdFormat, "PsCmdFormat for predicate can't be null");
+        Preconditions.checkNotNull(stringToVerify, "String to verify for predicate can't be null");
+        return new IntPredicate() {
+            @Override
+            public boolean test(final int index) {
+                String value = getValue(index, cmdFormat);
+                if(value == null) {
+                    return false;
+                }
+                return isEqual ? value.equals(stringToVerify) : value.contains(stringToVerify);
+            }
+        };
     }
 
-    private List<Map<PsCmdFormat, String>> sortBy(final boolean isReverse, final PsCmdFormat... formatsToSort) {
-        if(formatsToSort == null) {
-            return getAsList();
+    private static long parsePid(final Map<PsCmdFormat, String> mapValue) {
+        String pid = mapValue.get(PsCmdFormat.PROCESS_ID);
+        if(pid == null) {
+            throw new IllegalArgumentException("mapValue parameter has to contain dat for PsCmdFormat#PROCESS_ID");
         }
-        Ordering<Map<PsCmdFormat, String>> ordering = null;
-        for(PsCmdFormat psCmdFormat: formatsToSort) {
-            if(psCmdFormat == null) {
-                continue;
-            }
-            if(ordering == null) {
-                ordering = isReverse ? (new ListProcessDataOrdering(psCmdFormat)).reverse() : new ListProcessDataOrdering(psCmdFormat);
-            } else {
-                ordering = isReverse ? ordering.compound((new ListProcessDataOrdering(psCmdFormat)).reverse()) :
-                    ordering.compound(new ListProcessDataOrdering(psCmdFormat));
-            }
+        try {
+            return Long.parseLong(pid.trim());
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("PsCmdFormat#PROCESS_ID has to be a number but it's '" + pid + "'", nfe);
         }
-        return ordering == null ? getAsList() : ordering.sortedCopy(listing.values());
     }
 
-    static class ListProcessDataOrdering extends Ordering<Map<PsCmdFormat, String>> {
-        private PsCmdFormat psCmdFormatToSort;
-        /**
-         * Definition of comparator when saying what is the map should be compared by.
-         *
-         * @param psCmdFormatToSort  is parameter which defines sorting key of the map
-         *        the sorting key is defined as 'ps' command record type - see {@link PsCmdFormat}
-         */
-        public ListProcessDataOrdering(final PsCmdFormat psCmdFormatToSort) {
-            this.psCmdFormatToSort = psCmdFormatToSort;
+    private int indexOfOrCreate(final long pid) {
+        int index = indexOf(pid);
+        if(index >= 0) {
+            return index;
         }
-        @Override
-        public int compare(final Map<PsCmdFormat, String> left, final Map<PsCmdFormat, String> right) {
-            if(left == null && right == null) {
-                // both maps are null
-                return 0;
+        if(size == pids.length) {
+            grow();
+        }
+        index = size++;
+        pids[index] = pid;
+        pidIndex.put(pid, index);
+        return index;
+    }
+
+    private void grow() {
+        int capacity = pids.length * 2;
+        pids = Arrays.copyOf(pids, capacity);
+        for(int ordinal = 0; ordinal < FORMATS.length; ordinal++) {
+            if(values[ordinal] != null) {
+                values[ordinal] = Arrays.copyOf(values[ordinal], capacity);
             }
-            if(left != null && left.get(psCmdFormatToSort) == null &&
-               right != null && right.get(psCmdFormatToSort) == null) {
-                // maps are not null but neither one contain the key that we want to sort by
-                return 0;
+            if(numbers[ordinal] != null) {
+                numbers[ordinal] = Arrays.copyOf(numbers[ordinal], capacity);
             }
-            if(left == null || left.get(psCmdFormatToSort) == null) {
-                return -1;
+        }
+        if(cpu != null) {
+            cpu = Arrays.copyOf(cpu, capacity);
+        }
+    }
+
+    private void setAll(final int index, final Map<PsCmdFormat, String> mapValue) {
+        for(Map.Entry<PsCmdFormat, String> entry: mapValue.entrySet()) {
+            if(entry.getKey() != PsCmdFormat.PROCESS_ID) {
+                set(index, entry.getKey(), entry.getValue());
             }
-            if(right == null || right.get(psCmdFormatToSort) == null) {
-                return 1;
+        }
+    }
+
+    private void set(final int index, final PsCmdFormat format, final String value) {
+        if(format == PsCmdFormat.PROCESS_ID) {
+            return;
+        }
+        int ordinal = format.ordinal();
+        if(values[ordinal] == null) {
+            if(value == null) {
+                return;
             }
+            values[ordinal] = new String[pids.length];
+        }
+        boolean isRepeating = format == PsCmdFormat.COMMAND || format == PsCmdFormat.USER;
+        values[ordinal][index] = (isRepeating && value != null) ? interner.intern(value) : value;
 
-            String str1 = left.get(psCmdFormatToSort);
-            String str2 = right.get(psCmdFormatToSort);
-            Class<?> dataType = psCmdFormatToSort.getDataType();
-            if(dataType.isInstance(Integer.valueOf(0))) {
-                boolean int1error = false;
-                Integer int1 = null, int2 = null;
-                try {
-                    int1 = Integer.valueOf(str1);
-                } catch (NumberFormatException nfe) {
-                    int1error = true;
-                }
-                try {
-                    int2 = Integer.valueOf(str2);
-                } catch (NumberFormatException nfe) {
-                    // if string from left is not possible to convert to int
-                    // then in case of right is not possible to convert do string comparison
-                    // otherwise left was possible to convert but right is not possible to convert (returns 1)
-                    return int1error ? str1.compareTo(str2) : 1;
-                }
-                // if string from left is not possible to convert to int
-                // then we know that right was converted fine and we return -1
-                // otherwise both were converted without problem and returning integer comparison
-                return int1error ? -1 : int1.compareTo(int2);
+        if(format.getDataType() == Integer.class || format.getDataType() == Long.class) {
+            if(numbers[ordinal] == null) {
+                numbers[ordinal] = new long[pids.length];
             }
-            if(dataType.isInstance(Long.valueOf(0))) {
-                boolean long1error = false;
-                Long long1 = null, long2 = null;
-                try {
-                    long1 = Long.valueOf(str1);
-                } catch (NumberFormatException nfe) {
-                    long1error = true;
-                }
-                try {
-                    long2 = Long.valueOf(str2);
-                } catch (NumberFormatException nfe) {
-                    // if string from left is not possible to convert to long
-                    // then in case of right is not possible to convert do string comparison
-                    // otherwise left was possible to convert but right is not possible to convert (returns 1)
-                    return long1error ? str1.compareTo(str2) : 1;
-                }
-                // if string from left is not possible to convert to long
-                // then we know that right was converted fine and we return -1
-                // otherwise both were converted without problem and returning integer comparison
-                return long1error ? -1 : long1.compareTo(long2);
+            numbers[ordinal][index] = parseNumber(value, format.getDataType());
+        } else if(format == PsCmdFormat.CPU) {
+            if(cpu == null) {
+                cpu = new double[pids.length];
             }
-            return str1.compareTo(str2);
+            cpu[index] = parseCpu(value);
         }
     }
 
-    static class ListProcessDataPredicate implements Predicate<Map<PsCmdFormat, String>> {
-        private PsCmdFormat psCmdFormatToVerify;
-        private String stringToVerify;
-        private boolean isEqual = true;
-        /**
-         * Equality set to true
-         */
-        public ListProcessDataPredicate(final PsCmdFormat psCmdFormatToVerify, final String stringToVerify) {
-            this(psCmdFormatToVerify, stringToVerify, true);
+    private static long parseNumber(final String value, final Class<?> dataType) {
+        if(value == null) {
+            return NOT_A_NUMBER;
         }
-        public ListProcessDataPredicate(final PsCmdFormat psCmdFormatToVerify, final String stringToVerify, final boolean isEqual) {
-            Preconditions.checkNotNull(psCmdFormatToVerify, "PsCmdFormat for predicate can't be null");
-            Preconditions.checkNotNull(stringToVerify, "String to verify for predicate can't be null");
-            this.psCmdFormatToVerify = psCmdFormatToVerify;
-            this.stringToVerify = stringToVerify;
-            this.isEqual = isEqual;
+        try {
+            return dataType == Integer.class ? Integer.parseInt(value) : Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            return NOT_A_NUMBER;
         }
+    }
+
+    private static double parseCpu(final String value) {
+        if(value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim().replace(',', '.'));
+        } catch (NumberFormatException nfe) {
+            return Double.NaN;
+        }
+    }
+
+    private void copyRow(final ListProcessData source, final int sourceIndex) {
+        int index = indexOfOrCreate(source.pids[sourceIndex]);
+        for(PsCmdFormat format: FORMATS) {
+            String[] column = source.values[format.ordinal()];
+            if(column != null && column[sourceIndex] != null) {
+                set(index, format, column[sourceIndex]);
+            }
+        }
+    }
 
-        public boolean apply(final Map<PsCmdFormat, String> input) {
-            if(input == null || input.get(psCmdFormatToVerify) == null) {
-                return false;
+    private void moveRow(final int from, final int to) {
+        if(from == to) {
+            return;
+        }
+        pids[to] = pids[from];
+        for(int ordinal = 0; ordinal < FORMATS.length; ordinal++) {
+            if(values[ordinal] != null) {
+                values[ordinal][to] = values[ordinal][from];
             }
-            if(isEqual) {
-                return input.get(psCmdFormatToVerify).equals(stringToVerify);
-            } else {
-                return input.get(psCmdFormatToVerify).contains(stringToVerify);
+            if(numbers[ordinal] != null) {
+                numbers[ordinal][to] = numbers[ordinal][from];
             }
         }
+        if(cpu != null) {
+            cpu[to] = cpu[from];
+        }
+    }
 
+    private int countValues(final int index) {
+        int count = 1; // process id
+        for(PsCmdFormat format: FORMATS) {
+            String[] column = values[format.ordinal()];
+            if(column != null && column[index] != null) {
+                count++;
+            }
+        }
+        return count;
     }
 
-    private ListProcessData add(final String key, final Map<PsCmdFormat,String> mapValue) {
-        Map<PsCmdFormat,String> listOfValues = listing.get(key);
-        if(listOfValues == null) {
-            listOfValues = new HashMap<PsCmdFormat,String>();
-            listing.put(key, listOfValues);
+    private void checkIndex(final int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of listing of size " + size);
         }
-        listOfValues.putAll(mapValue);
-        return this;
     }
 
-    private ListProcessData put(final String key, final Map<PsCmdFormat, String> mapValue) {
-        listing.put(key, new HashMap<PsCmdFormat, String>(mapValue));
-        return this;
+    /**
+     * Comparison of two rows by one column.
+     */
+    private class RowComparator implements Comparator<Integer> {
+        private final PsCmdFormat psCmdFormatToSort;
+        private final boolean isNumeric;
+
+        RowComparator(final PsCmdFormat psCmdFormatToSort) {
+            this.psCmdFormatToSort = psCmdFormatToSort;
+            this.isNumeric = psCmdFormatToSort.getDataType() == Integer.class || psCmdFormatToSort.getDataType() == Long.class;
+        }
+
+        @Override
+        public int compare(final Integer left, final Integer right) {
+            String str1 = getValue(left, psCmdFormatToSort);
+            String str2 = getValue(right, psCmdFormatToSort);
+            if(str1 == null || str2 == null) {
+                // values not listed are sorted first
+                return str1 == null ? (str2 == null ? 0 : -1) : 1;
+            }
+            if(!isNumeric) {
+                return str1.compareTo(str2);
+            }
+            long long1 = getLong(left, psCmdFormatToSort, NOT_A_NUMBER);
+            long long2 = getLong(right, psCmdFormatToSort, NOT_A_NUMBER);
+            if(long1 == NOT_A_NUMBER || long2 == NOT_A_NUMBER) {
+                // values which are not numbers are sorted before numbers, between themselves as strings
+                return long1 == long2 ? str1.compareTo(str2) : (long1 == NOT_A_NUMBER ? -1 : 1);
+            }
+            return Long.compare(long1, long2);
+        }
+    }
+
+    /**
+     * Read-only map view of one line of the listing.
+     */
+    private class RowView extends AbstractMap<PsCmdFormat, String> {
+        private final int index;
+
+        RowView(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String get(final Object key) {
+            return key instanceof PsCmdFormat ? getValue(index, (PsCmdFormat) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<PsCmdFormat, String>> entrySet() {
+            Map<PsCmdFormat, String> row = new EnumMap<PsCmdFormat, String>(PsCmdFormat.class);
+            for(PsCmdFormat format: FORMATS) {
+                String value = getValue(index, format);
+                if(value != null) {
+                    row.put(format, value);
+                }
+            }
+            return Collections.unmodifiableMap(row).entrySet();
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for(String key: listing.keySet()) {
-            sb.append("{[" + key + "]");
-            for(Entry<PsCmdFormat,String> item: listing.get(key).entrySet()) {
-                sb.append(item.getKey() + ":" + item.getValue() + ",");
+        for(int index = 0; index < size; index++) {
+            sb.append("{[" + pids[index] + "]");
+            for(PsCmdFormat format: FORMATS) {
+                String value = getValue(index, format);
+                if(value != null) {
+                    sb.append(format + ":" + value + ",");
+                }
             }
             sb.append("}");
         }
@@ -0,0 +1,283 @@
+package noe.common.newcmd;
+
+import noe.common.utils.Library;
+import noe.common.utils.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Linux replacement of {@link PsCmdBuilder} driven listing. Process table is read directly from
+ * <code>/proc/[pid]/stat</code>, <code>cmdline</code> and <code>status</code> in one pass without forking
+ * any process. Values are formatted the same way as <code>ps -o</code> prints them so callers can't
+ * see any difference.
+ * <p>
+ * The snapshot is not atomic either, but each process is read at once and there is no need to join
+ * several <code>ps</code> runs. Processes which vanish during the reading are skipped.
+ * <p>
+ * The reader is used by {@link ListProcess} whenever {@link #isAvailable()}, it could be switched off by
+ * property <code>process.list.procfs=false</code>.
+ */
+public class ProcFsReader {
+    private static final Logger log = LoggerFactory.getLogger(ProcFsReader.class);
+
+    private static final File PROC = new File("/proc");
+    // USER_HZ, it is 100 on all the Linux architectures we run at
+    private static final long CLOCK_TICKS = 100L;
+    // fields of /proc/[pid]/stat numbered the same as in proc(5), the data are read after the 'comm' field
+    private static final int STAT_PPID = 4;
+    private static final int STAT_TTY_NR = 7;
+    private static final int STAT_UTIME = 14;
+    private static final int STAT_STIME = 15;
+    private static final int STAT_PRIORITY = 18;
+    private static final int STAT_STARTTIME = 22;
+    private static final int STAT_VSIZE = 23;
+
+    private static final Platform platform = new Platform();
+    private static final boolean enabled = Boolean.parseBoolean(Library.getUniversalProperty("process.list.procfs", "true"));
+
+    private final byte[] buffer = new byte[8192];
+    private Map<String, String> userNames;
+
+    /**
+     * @return true when running on Linux with readable /proc and the reader is not switched off
+     */
+    public static boolean isAvailable() {
+        return enabled && platform.isLinux() && new File(PROC, "self/stat").canRead();
+    }
+
+    /**
+     * Listing all processes running on the system, the same contract as {@link ListProcess#listAll(PsCmdFormat...)}.
+     *
+     * @param formatOptions what data will be returned about processes
+     * @return list of running processes
+     */
+    public ListProcessData listAll(final PsCmdFormat... formatOptions) {
+        Set<PsCmdFormat> formats = EnumSet.of(PsCmdFormat.PROCESS_ID);
+        formats.addAll(Arrays.asList(formatOptions));
+
+        ListProcessData data = new ListProcessData();
+        long bootTime = (formats.contains(PsCmdFormat.ELAPSED_TIME) || formats.contains(PsCmdFormat.CPU)) ? readBootTime() : 0L;
+        long now = System.currentTimeMillis();
+
+        String[] entries = PROC.list();
+        if (entries == null) {
+            return data;
+        }
+        for (String entry : entries) {
+            if (!isPid(entry)) {
+                continue;
+            }
+            Map<PsCmdFormat, String> process = readProcess(entry, formats, bootTime, now);
+            if (process != null) {
+                data.add(process);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Reads data of one process.
+     *
+     * @return data of the process or null when the process does not exist (anymore)
+     */
+    public Map<PsCmdFormat, String> readProcess(final long processId, final PsCmdFormat... formatOptions) {
+        Set<PsCmdFormat> formats = EnumSet.of(PsCmdFormat.PROCESS_ID);
+        formats.addAll(Arrays.asList(formatOptions));
+        return readProcess(String.valueOf(processId), formats, readBootTime(), System.currentTimeMillis());
+    }
+
+    private Map<PsCmdFormat, String> readProcess(final String pid, final Set<PsCmdFormat> formats, final long bootTime, final long now) {
+        File processDir = new File(PROC, pid);
+        Map<PsCmdFormat, String> process = new EnumMap<PsCmdFormat, String>(PsCmdFormat.class);
+        try {
+            String stat = readFile(new File(processDir, "stat"));
+            int commStart = stat.indexOf('(');
+            int commEnd = stat.lastIndexOf(')');
+            if (commStart < 0 || commEnd < commStart) {
+                return null;
+            }
+            String comm = stat.substring(commStart + 1, commEnd);
+            // fields[0] is field number 3 (state)
+            String[] fields = stat.substring(commEnd + 2).trim().split(" ");
+
+            for (PsCmdFormat format : formats) {
+                switch (format) {
+                    case PROCESS_ID:
+                        process.put(format, pid);
+                        break;
+                    case PARENT_PROCESS_ID:
+                        process.put(format, statField(fields, STAT_PPID));
+                        break;
+                    case COMMAND:
+                        process.put(format, comm);
+                        break;
+                    case COMMAND_ARGS:
+                        String cmdline = readFile(new File(processDir, "cmdline")).replace('\0', ' ').trim();
+                        process.put(format, cmdline.isEmpty() ? "[" + comm + "]" : cmdline);
+                        break;
+                    case PRIORITY:
+                        process.put(format, String.valueOf(39 - Long.parseLong(statField(fields, STAT_PRIORITY))));
+                        break;
+                    case TIME:
+                        process.put(format, formatTime(cpuTicks(fields) / CLOCK_TICKS));
+                        break;
+                    case TTY:
+                        process.put(format, formatTty(Integer.parseInt(statField(fields, STAT_TTY_NR))));
+                        break;
+                    case VIRT_MEM:
+                        process.put(format, String.valueOf(Long.parseLong(statField(fields, STAT_VSIZE)) / 1024));
+                        break;
+                    case CPU:
+                        long elapsedMillis = elapsedMillis(fields, bootTime, now);
+                        long permille = elapsedMillis > 0 ? cpuTicks(fields) * 1000L * 1000L / CLOCK_TICKS / elapsedMillis : 0L;
+                        process.put(format, (permille / 10) + "." + (permille % 10));
+                        break;
+                    case ELAPSED_TIME:
+                        process.put(format, formatElapsedTime(elapsedMillis(fields, bootTime, now) / 1000L));
+                        break;
+                    case USER:
+                        process.put(format, readUser(processDir));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Format " + format + " is not supported by " + getClass().getSimpleName());
+                }
+            }
+        } catch (IOException e) {
+            log.trace("Process {} vanished during listing: {}", pid, e.getMessage());
+            return null;
+        }
+        return process;
+    }
+
+    private static String statField(final String[] fields, final int fieldNumber) {
+        return fields[fieldNumber - 3];
+    }
+
+    private static long cpuTicks(final String[] fields) {
+        return Long.parseLong(statField(fields, STAT_UTIME)) + Long.parseLong(statField(fields, STAT_STIME));
+    }
+
+    private static long elapsedMillis(final String[] fields, final long bootTime, final long now) {
+        long startMillis = bootTime * 1000L + Long.parseLong(statField(fields, STAT_STARTTIME)) * 1000L / CLOCK_TICKS;
+        return Math.max(0L, now - startMillis);
+    }
+
+    /**
+     * <code>ps -o time</code> format <code>[DD-]HH:MM:SS</code>
+     */
+    static String formatTime(final long seconds) {
+        long days = seconds / 86400;
+        String time = String.format("%02d:%02d:%02d", (seconds / 3600) % 24, (seconds / 60) % 60, seconds % 60);
+        return days > 0 ? days + "-" + time : time;
+    }
+
+    /**
+     * <code>ps -o etime</code> format <code>[[DD-]HH:]MM:SS</code>
+     */
+    static String formatElapsedTime(final long seconds) {
+        long days = seconds / 86400;
+        long hours = (seconds / 3600) % 24;
+        String time = String.format("%02d:%02d", (seconds / 60) % 60, seconds % 60);
+        if (days > 0) {
+            return String.format("%d-%02d:%s", days, hours, time);
+        }
+        return hours > 0 ? String.format("%02d:%s", hours, time) : time;
+    }
+
+    /**
+     * <code>ps -o tty</code> format, decoding major and minor device number of controlling terminal
+     */
+    static String formatTty(final int ttyNr) {
+        int major = (ttyNr >> 8) & 0xfff;
+        int minor = (ttyNr & 0xff) | ((ttyNr >> 12) & 0xfff00);
+        if (ttyNr == 0) {
+            return "?";
+        } else if (major >= 136 && major <= 143) {
+            return "pts/" + ((major - 136) * 256 + minor);
+        } else if (major == 4) {
+            return minor < 64 ? "tty" + minor : "ttyS" + (minor - 64);
+        }
+        return "?";
+    }
+
+    private long readBootTime() {
+        try {
+            for (String line : readFile(new File(PROC, "stat")).split("\n")) {
+                if (line.startsWith("btime ")) {
+                    return Long.parseLong(line.substring("btime ".length()).trim());
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Not possible to read boot time from /proc/stat", e);
+        }
+        return 0L;
+    }
+
+    private String readUser(final File processDir) throws IOException {
+        for (String line : readFile(new File(processDir, "status")).split("\n")) {
+            if (line.startsWith("Uid:")) {
+                // real, effective, saved, filesystem - ps shows the effective one
+                String uid = line.substring("Uid:".length()).trim().split("\\s+")[1];
+                String userName = getUserNames().get(uid);
+                return userName != null ? userName : uid;
+            }
+        }
+        return "?";
+    }
+
+    private Map<String, String> getUserNames() {
+        if (userNames == null) {
+            userNames = new HashMap<String, String>();
+            try (BufferedReader reader = new BufferedReader(new FileReader("/etc/passwd"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] passwd = line.split(":");
+                    if (passwd.length > 2) {
+                        userNames.put(passwd[2], passwd[0]);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Not possible to read /etc/passwd, numeric user ids will be listed", e);
+            }
+        }
+        return userNames;
+    }
+
+    private String readFile(final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(buffer.length);
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean isPid(final String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
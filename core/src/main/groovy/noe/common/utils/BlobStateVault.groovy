@@ -0,0 +1,271 @@
+package noe.common.utils
+
+import groovy.util.logging.Slf4j
+
+import java.nio.file.AccessDeniedException
+import java.nio.file.Files
+import java.nio.file.LinkOption
+
+/**
+ * Service class for storing and restoring of file and directory states on disk.
+ * State means content of the file (or of all files in the directory and its subdirectories), information whether
+ * items did not exist and file permissions on Unix like OS.
+ *
+ * Contents are stored in {@link BlobStore}, only paths, hashes and permissions are kept in memory, so the memory
+ * does not grow with size of pushed trees. The same content is stored just once no matter how many times or by
+ * how many vaults it was pushed. On restore unchanged files (same size and hash) are not rewritten at all.
+ * Contents of states removed from the vault by pop are released from the store, so that blobs which are not
+ * referenced by any vault are deleted.
+ *
+ * Files are restored by copying. When `state.vault.restore.links=true` is set, files owned by the current user are
+ * restored as hard links to blob store instead. That is only safe for trees whose files are replaced and never
+ * modified in place (a modification in place would change the content for all the linked copies).
+ *
+ * Symlinks do not have any special care, if item is not accessible it's access rights are changed temporarily
+ * the same way as {@link FileStateVault} and {@link DirStateVault} do it.
+ *
+ * @see FileStateVault
+ * @see DirStateVault
+ */
+@Slf4j
+class BlobStateVault implements StateVault<BlobStateVault> {
+
+  private static final boolean RESTORE_LINKS = Boolean.parseBoolean(Library.getUniversalProperty('state.vault.restore.links', 'false'))
+
+  private final Map<String, List<Snapshot>> vault = [:]
+  private final BlobStore store
+  private final boolean isWindows = new Platform().isWindows()
+
+  BlobStateVault(BlobStore store = BlobStore.getDefault()) {
+    this.store = store
+  }
+
+  /**
+   * Recorded state of one file or directory
+   */
+  private static class Entry {
+    boolean directory
+    String hash
+    long size
+    JBFile.FilePermission permission
+  }
+
+  /**
+   * Recorded state of a pushed item, map[path relative to the item: entry], empty if the item did not exist
+   */
+  private static class Snapshot {
+    final Map<String, Entry> entries = new TreeMap<String, Entry>()
+
+    boolean existed() {
+      return !entries.isEmpty()
+    }
+  }
+
+  /**
+   * If item toStore does exist, contents of it and all its subitems are stored to blob store.
+   * If does not then this fact is just noted.
+   */
+  @Override
+  BlobStateVault push(File toStore) {
+    Snapshot snapshot = new Snapshot()
+    if (toStore.exists()) {
+      record(toStore, '', snapshot)
+    }
+    if (!vault.containsKey(key(toStore))) {
+      vault.put(key(toStore), [])
+    }
+    vault.get(key(toStore)).add(snapshot)
+    log.debug("Pushed ${toStore} with ${snapshot.entries.size()} items")
+
+    return this
+  }
+
+  private void record(File item, String relativePath, Snapshot snapshot) {
+    Entry entry = new Entry(directory: item.isDirectory())
+    if (!isWindows) {
+      entry.permission = JBFile.retrievePermissions(item)
+    }
+    snapshot.entries[relativePath] = entry
+
+    if (entry.directory) {
+      withAccess(item, entry.permission, 'u+rwx', { it.canRead() && it.canExecute() }) {
+        item.listFiles().each { File child ->
+          record(child, relativePath ? "${relativePath}/${child.getName()}" : child.getName(), snapshot)
+        }
+      }
+    } else if (item.isFile()) {
+      withAccess(item, entry.permission, 'ugo+r', { it.canRead() }) {
+        entry.size = item.length()
+        entry.hash = store.store(item)
+      }
+    } else {
+      throw new IllegalStateException("Target to store '${item}' is not accessible.")
+    }
+  }
+
+  /**
+   * Restores last known state of given item and remove that state from memory.
+   * If information that item did not exist was found, item is deleted.
+   */
+  @Override
+  BlobStateVault pop(File toRestore) {
+    List<Snapshot> snapshots = snapshots(toRestore)
+    restore(toRestore, snapshots.last())
+    release(snapshots.remove(snapshots.size() - 1))
+    if (snapshots.isEmpty()) {
+      vault.remove(key(toRestore))
+    }
+
+    return this
+  }
+
+  /**
+   * Restores last saved state of all items and remove those states from memory.
+   */
+  @Override
+  BlobStateVault pop() {
+    new ArrayList<String>(vault.keySet()).each { String key ->
+      pop(new File(key))
+    }
+
+    return this
+  }
+
+  /**
+   * Restore to first state, all other states are not applied and are removed from memory.
+   */
+  @Override
+  BlobStateVault popAll(File toRestore) {
+    restore(toRestore, snapshots(toRestore).first())
+    vault.remove(key(toRestore)).each { release(it) }
+
+    return this
+  }
+
+  /**
+   * Restore all pushed items to first state, all other states are not applied and are removed from memory.
+   */
+  @Override
+  BlobStateVault popAll() {
+    new ArrayList<String>(vault.keySet()).each { String key ->
+      popAll(new File(key))
+    }
+
+    return this
+  }
+
+  @Override
+  boolean isPushed(File file) {
+    return vault.containsKey(key(file))
+  }
+
+  private List<Snapshot> snapshots(File toRestore) {
+    if (!vault.containsKey(key(toRestore)) || vault.get(key(toRestore)).isEmpty()) {
+      throw new IllegalStateException("Target to re-store '${toRestore}' does not exist in vault.")
+    }
+    return vault.get(key(toRestore))
+  }
+
+  private void release(Snapshot snapshot) {
+    snapshot.entries.values().findAll { it.hash != null }.each { store.release(it.hash) }
+  }
+
+  private void restore(File toRestore, Snapshot snapshot) {
+    if (!snapshot.existed()) {
+      JBFile.delete(toRestore)
+      return
+    }
+
+    removeUnknown(toRestore, '', snapshot)
+    // parents go before their children thanks to sorting of paths
+    snapshot.entries.each { String relativePath, Entry entry ->
+      File target = relativePath ? new File(toRestore, relativePath) : toRestore
+      if (entry.directory) {
+        if (!target.isDirectory()) {
+          target.mkdirs()
+        }
+        makeAccessible(target, 'u+rwx', { it.canWrite() && it.canExecute() })
+      } else {
+        restoreFile(target, entry)
+      }
+    }
+    // directory permissions last, deepest first, they could deny access to their content
+    if (!isWindows) {
+      snapshot.entries.keySet().toList().reverse().each { String relativePath ->
+        Entry entry = snapshot.entries[relativePath]
+        if (entry.directory) {
+          JBFile.definePermissions(entry.permission, relativePath ? new File(toRestore, relativePath) : toRestore)
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes items which were not present on push or whose type changed
+   */
+  private void removeUnknown(File item, String relativePath, Snapshot snapshot) {
+    Entry entry = snapshot.entries[relativePath]
+    if (entry == null || entry.directory != item.isDirectory()) {
+      if (Files.exists(item.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+        JBFile.delete(item)
+      }
+      return
+    }
+    if (entry.directory) {
+      makeAccessible(item, 'u+rwx', { it.canRead() && it.canExecute() })
+      item.listFiles().each { File child ->
+        removeUnknown(child, relativePath ? "${relativePath}/${child.getName()}" : child.getName(), snapshot)
+      }
+    }
+  }
+
+  private void restoreFile(File target, Entry entry) {
+    if (target.isFile() && target.length() == entry.size && target.canRead() && BlobStore.hash(target) == entry.hash) {
+      log.trace("File ${target} is unchanged")
+    } else if (canLink(entry)) {
+      store.link(entry.hash, entry.permission.getPerm(), target)
+    } else {
+      try {
+        store.restore(entry.hash, target)
+      } catch (AccessDeniedException e) {
+        log.trace("Access to ${target} denied (${e.message}), retrying with changed permissions")
+        JBFile.chmod('u+w', target.getParentFile())
+        store.restore(entry.hash, target)
+      }
+    }
+    if (!isWindows) {
+      JBFile.definePermissions(entry.permission, target)
+    }
+  }
+
+  private boolean canLink(Entry entry) {
+    return RESTORE_LINKS && !isWindows && entry.permission?.getPerm() &&
+        entry.permission.getOwner() == System.getProperty('user.name')
+  }
+
+  private void withAccess(File item, JBFile.FilePermission original, String mode, Closure<Boolean> accessible, Closure action) {
+    boolean changed = makeAccessible(item, mode, accessible)
+    try {
+      action()
+    } finally {
+      if (changed && original != null) {
+        JBFile.definePermissions(original, item)
+      }
+    }
+  }
+
+  /**
+   * @return true if permissions of the item had to be changed
+   */
+  private boolean makeAccessible(File item, String mode, Closure<Boolean> accessible) {
+    if (isWindows || accessible(item)) {
+      return false
+    }
+    JBFile.chmod(mode, item)
+    return true
+  }
+
+  private String key(File file) {
+    return file.getCanonicalPath()
+  }
+}
@@ -0,0 +1,200 @@
+package noe.common.utils
+
+import groovy.util.logging.Slf4j
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.DigestInputStream
+import java.security.MessageDigest
+
+/**
+ * Content addressed store of file contents on disk.
+ *
+ * Every content is stored once under its SHA-256 hash (`ab/cdef...`), the same content pushed repeatedly or by several
+ * vaults (servers) shares one blob. Blobs are read-only and are never modified once written.
+ *
+ * Every {@link #store(File)} is a reference to the blob which is given back by {@link #release(String)}, blob (with its
+ * link variants) is deleted when it is not referenced any more. References are counted in memory, so a directory
+ * must not be used by several JVMs at once.
+ *
+ * Default store is shared by the whole JVM. It is located in `state.vault.blob.dir` if it is set, otherwise in
+ * a new `${java.io.tmpdir}/noe-blob-store-*` directory which is deleted when the JVM exits.
+ *
+ * @see BlobStateVault
+ */
+@Slf4j
+class BlobStore {
+
+  private static final int BUFFER_SIZE = 64 * 1024
+  private static BlobStore defaultStore
+
+  final File dir
+  // blob hash -> number of references
+  private final Map<String, Integer> references = [:]
+
+  BlobStore(File dir) {
+    this.dir = dir
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IllegalStateException("Blob store directory ${dir} can't be created")
+    }
+  }
+
+  static synchronized BlobStore getDefault() {
+    if (defaultStore == null) {
+      String configuredDir = Library.getUniversalProperty('state.vault.blob.dir')
+      if (configuredDir) {
+        defaultStore = new BlobStore(new File(configuredDir))
+      } else {
+        Path tempDir = Files.createTempDirectory(new File(System.getProperty('java.io.tmpdir')).toPath(), 'noe-blob-store-')
+        defaultStore = new BlobStore(tempDir.toFile())
+        addShutdownHook {
+          defaultStore.clear()
+          defaultStore.dir.deleteDir()
+        }
+      }
+    }
+    return defaultStore
+  }
+
+  /**
+   * Stores content of the file, the content is copied only if it is not stored yet.
+   * Every call adds a reference to the blob, see {@link #release(String)}.
+   *
+   * @return hash of the content
+   */
+  String store(File file) {
+    String hash = hash(file)
+    if (reference(hash)) {
+      return hash
+    }
+
+    File temp = File.createTempFile('blob', '.tmp', dir)
+    try {
+      MessageDigest digest = newDigest()
+      new DigestInputStream(new FileInputStream(file), digest).withStream { InputStream input ->
+        Files.copy(input, temp.toPath(), StandardCopyOption.REPLACE_EXISTING)
+      }
+      // the file could be changed in between, the copied content counts
+      hash = digest.digest().encodeHex().toString()
+      synchronized (this) {
+        File blob = blob(hash)
+        if (!blob.exists()) {
+          blob.getParentFile().mkdirs()
+          temp.setReadOnly()
+          Files.move(temp.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE)
+          log.trace("Stored ${file} as blob ${hash}")
+        }
+        references[hash] = (references[hash] ?: 0) + 1
+      }
+      return hash
+    } finally {
+      temp.delete()
+    }
+  }
+
+  boolean contains(String hash) {
+    return blob(hash).isFile()
+  }
+
+  /**
+   * Gives back one reference obtained by {@link #store(File)}, the blob and its link variants are deleted when
+   * there is no reference left. Files linked to the variants keep their content.
+   */
+  synchronized void release(String hash) {
+    Integer count = references[hash]
+    if (count == null) {
+      return
+    }
+    if (count > 1) {
+      references[hash] = count - 1
+      return
+    }
+    references.remove(hash)
+    File blob = blob(hash)
+    blob.getParentFile().listFiles()?.findAll { it.name == blob.name || it.name.startsWith(blob.name + '-') }.each { File file ->
+      // read-only files could not be deleted on Windows
+      file.setWritable(true)
+      file.delete()
+    }
+    log.trace("Deleted blob ${hash}")
+  }
+
+  /**
+   * Adds a reference to the blob if it is stored
+   */
+  private synchronized boolean reference(String hash) {
+    if (!contains(hash)) {
+      return false
+    }
+    references[hash] = (references[hash] ?: 0) + 1
+    return true
+  }
+
+  /**
+   * Writes the content to the target file, the file is replaced
+   */
+  void restore(String hash, File target) {
+    Files.copy(existingBlob(hash).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING)
+  }
+
+  /**
+   * Hard links the target file to a variant of the blob with the given octal mode, the file is replaced.
+   * Linked files share the content, they should not be modified in place (only replaced). Variant modified in place
+   * through one of its links is detected by its digest and created again, so that it is not linked any more.
+   */
+  void link(String hash, String mode, File target) {
+    File variant = new File(existingBlob(hash).getPath() + '-' + mode)
+    // length is not enough, a write in place could keep it
+    if (!variant.isFile() || variant.length() != existingBlob(hash).length() || BlobStore.hash(variant) != hash) {
+      File temp = File.createTempFile('blob', '.tmp', dir)
+      try {
+        Files.copy(existingBlob(hash).toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        Files.setAttribute(temp.toPath(), 'unix:mode', Integer.parseInt(mode, 8))
+        Files.move(temp.toPath(), variant.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+      } finally {
+        temp.delete()
+      }
+    }
+    Files.deleteIfExists(target.toPath())
+    Files.createLink(target.toPath(), variant.toPath())
+  }
+
+  /**
+   * Deletes all blobs
+   */
+  synchronized void clear() {
+    references.clear()
+    dir.eachFile { File item ->
+      item.isDirectory() ? item.deleteDir() : item.delete()
+    }
+  }
+
+  File blob(String hash) {
+    return new File(new File(dir, hash.substring(0, 2)), hash.substring(2))
+  }
+
+  static String hash(File file) {
+    MessageDigest digest = newDigest()
+    byte[] buffer = new byte[BUFFER_SIZE]
+    new FileInputStream(file).withStream { InputStream input ->
+      int read
+      while ((read = input.read(buffer)) > 0) {
+        digest.update(buffer, 0, read)
+      }
+    }
+    return digest.digest().encodeHex().toString()
+  }
+
+  private File existingBlob(String hash) {
+    File blob = blob(hash)
+    if (!blob.isFile()) {
+      throw new IllegalStateException("Blob ${hash} is missing in ${dir}")
+    }
+    return blob
+  }
+
+  private static MessageDigest newDigest() {
+    return MessageDigest.getInstance('SHA-256')
+  }
+}
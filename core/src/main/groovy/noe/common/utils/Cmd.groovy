@@ -2,8 +2,9 @@ package noe.common.utils
 
 import groovy.util.logging.Slf4j
 import noe.common.DefaultProperties
-import noe.common.StreamConsumer
+import noe.common.StreamCapture
 import noe.common.StreamFiller
+import noe.common.StreamPump
 import noe.common.newcmd.CmdCommand
 import noe.common.newcmd.KillCmdBuilder
 import noe.common.newcmd.ListProcess
@@ -14,6 +15,7 @@ import java.lang.management.ManagementFactory
 import java.lang.management.RuntimeMXBean
 import java.lang.reflect.Field
 import java.lang.reflect.Method
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.TimeUnit
 import java.util.regex.Pattern
 /**
@@ -141,14 +143,29 @@ public class Cmd {
    */
   public static Map executeCommandConsumeStreams(
       final List command, final File targetDir = new File('.'), final byte[] input = null, final long timeout = 60000L, final Map tmpProps = null) {
+    return executeCommandCaptureStreams(command, targetDir, input, timeout, tmpProps, new StreamCapture(), new StreamCapture())
+  }
+
+  /**
+   * Command execution with capturing of outputs to the given {@link StreamCapture}s, only the tails of outputs are
+   * kept when the captures are created with a limit, e.g. `new StreamCapture(StreamCapture.DEFAULT_LIMIT)`.
+   * Outputs are read by the shared {@link StreamPump}, no thread is started per command.
+   *
+   * @param command - the command and its arguments as elements of a list
+   * @param targetDir - the directory where the command is supposed to be executed
+   * @param input - string to write to process' input
+   * @param timeout - waitForOrKill timeout in ms
+   * @param tmpProps - additional environment variables
+   * @param stdOutCapture - where the standard output goes, with optional line listener and spill file
+   * @param stdErrCapture - where the error output goes, with optional line listener and spill file
+   * @return - [stdOut:String, stdErr:String, exitValue:Integer], stdOut and stdErr contain retained (tails of) outputs
+   */
+  public static Map executeCommandCaptureStreams(final List command, final File targetDir, final byte[] input, final long timeout,
+                                                 final Map tmpProps, final StreamCapture stdOutCapture, final StreamCapture stdErrCapture) {
     log.debug('Executing command {} in target directory {}', command, targetDir)
-    final StringBuffer stdOutAsStr = new StringBuffer()
-    final StringBuffer stdErrAsStr = new StringBuffer()
     final Process process = command.execute(Library.map2list(Library.mapUnion(Cmd.props, tmpProps)), targetDir)
-    StreamConsumer stdOut = new StreamConsumer(process.getInputStream(), stdOutAsStr)
-    StreamConsumer stdErr = new StreamConsumer(process.getErrorStream(), stdErrAsStr)
-    stdOut.start()
-    stdErr.start()
+    CompletableFuture<StreamCapture> stdOut = StreamPump.capture(process, process.getInputStream(), stdOutCapture)
+    CompletableFuture<StreamCapture> stdErr = StreamPump.capture(process, process.getErrorStream(), stdErrCapture)
 
     if (input) {
       try {
@@ -171,10 +188,10 @@ public class Cmd {
 
     process.waitForOrKill(timeout)
 
-    stdOut.join(3000)
-    stdErr.join(3000)
+    StreamPump.await(stdOut, 3000)
+    StreamPump.await(stdErr, 3000)
 
-    final Map result = [stdOut: stdOutAsStr.toString(), stdErr: stdErrAsStr.toString(), exitValue: process.exitValue()]
+    final Map result = [stdOut: stdOutCapture.toString(), stdErr: stdErrCapture.toString(), exitValue: process.exitValue()]
     if (process.exitValue() != 0) {
       log.debug("RESULT: ${result}")
     }
@@ -789,6 +806,9 @@ public class Cmd {
   }
 
   static List<Long> extractUNIXPids(identifier, getAll = true) {
+    if (ProcessCommandLines.isAvailable()) {
+      return extractLinuxPids(identifier.toString(), getAll)
+    }
     List<Long> pids = []
     final String ALL_FAILED = "All pid extraction options have failed, including the last resort 'pargs' one. This means that the application the pid of which we were trying to" +
         "extract hadn't been started in a supported way. Hint: domain.sh? any custom launch script?"
@@ -908,6 +928,38 @@ public class Cmd {
     return pids
   }
 
+  /**
+   * Linux variant of {@link #extractUNIXPids} matching command lines read from /proc, no process is forked.
+   *
+   * The start script (command line containing the identifier and '.sh', as the ps|grep pipeline did) is preferred,
+   * with getAll its java descendants having the identifier on command line follow. If there is no such script,
+   * java processes with the identifier on command line are returned.
+   */
+  static List<Long> extractLinuxPids(String identifier, boolean getAll = true) {
+    List<Long> scriptPids = ProcessCommandLines.findPids { String cmdline -> cmdline.contains(identifier) && cmdline =~ /.sh/ }
+    scriptPids.removeAll { it == noePid }
+    if (scriptPids) {
+      Long scriptPid = scriptPids.first()
+      List<Long> pids = [scriptPid]
+      if (getAll) {
+        pids.addAll(ProcessCommandLines.findDescendants(scriptPid).findAll { Long pid ->
+          String cmdline = ProcessCommandLines.readCmdline(pid)
+          return cmdline != null && cmdline.contains('java') && cmdline.contains(identifier)
+        })
+      }
+      log.trace("Extracted pids ${pids} for identifier ${identifier}")
+      return pids
+    }
+
+    List<Long> javaPids = ProcessCommandLines.findPids { String cmdline -> cmdline.contains('java') }
+    if (javaPids.isEmpty()) {
+      throw new IllegalArgumentException("Extracting pid of ${identifier} failed, there is neither a start script nor a java process")
+    }
+    List<Long> pids = javaPids.findAll { Long pid -> ProcessCommandLines.readCmdline(pid)?.contains(identifier) }
+    log.trace("Extracted java pids ${pids} for identifier ${identifier}")
+    return (getAll || pids.isEmpty()) ? pids : [pids.first()]
+  }
+
   static List<Long> extractWindowsPids(identifier, getAll = true) {
     List<Long> pids = []
 
@@ -1012,23 +1064,15 @@ public class Cmd {
   }
 
   /**
-   * Wait until is PID removed from system - at max. timeout
+   * Wait until is PID removed from system - at max. timeout (in seconds)
    */
   static boolean waitForPidRemoved(Long pid, int timeout = 30) {
     if (!pid) return true
-    int now = 0
 
     log.trace("waitForPidRemoved(): For pid=${pid} with timeout=${timeout}")
-    while (now < timeout) {
-      log.trace("waitForPidRemoved(): Iteration $now, all pids ${getPidList()}")
-
-      if (!Cmd.pidExists(pid)) {
-        log.trace("waitForPidRemoved(${pid}): Not found -> OK")
-        return true
-      }
-      log.trace("waitForPidRemoved(${pid}): Found -> continuing")
-      Library.letsSleep(1000)
-      now++
+    if (ProcessWatcher.waitForExit([pid], timeout, TimeUnit.SECONDS)) {
+      log.trace("waitForPidRemoved(${pid}): Not found -> OK")
+      return true
     }
 
     // PID still exists
@@ -1042,7 +1086,7 @@ public class Cmd {
     def res = false
 
     try {
-      res = getPidList().contains(pid)
+      res = ProcessWatcher.isAlive(pid)
     }
     catch (e) {
     }
@@ -1051,48 +1095,35 @@ public class Cmd {
   }
 
   /**
-   * Checks periodically whether all defined pids disappeared from the system.
+   * Checks whether all defined pids disappeared from the system.
    * Useful for checking that the result of some kill command took effect.
    *
    * @return true if none of the pids provided exist in the system, false otherwise
    */
   static boolean waitForPidsRemoved(List<Long> pids, int timeout, TimeUnit timeUnit) {
-    long maxTime = System.currentTimeMillis() + timeUnit.toMillis(timeout)
-    boolean anyPidExist = !getPidList().intersect(pids).isEmpty()
-    while (anyPidExist && System.currentTimeMillis() <= maxTime) {
-      anyPidExist = !getPidList().intersect(pids).isEmpty()
-      Library.letsSleep(42)
-    }
-    if (anyPidExist) {
-      log.warn("There are still some pids not removed: ${getPidList().intersect(pids)}")
+    if (!ProcessWatcher.waitForExit(pids, timeout, timeUnit)) {
+      log.warn("There are still some pids not removed: ${ProcessWatcher.aliveOf(pids)}")
+      return false
     }
-    return !anyPidExist
+    return true
   }
 
   /**
    * Check that at least one of the pids is in a system - processes are present in system
    */
   static boolean pidExists(List pids) {
-    def res = false
-
-    pids.each { pid ->
-      res = res || pidExists(pid)
-    }
-
-    return res
+    return !ProcessWatcher.aliveOf(pids).isEmpty()
   }
 
   /**
    * Check that all of the pids are in a system - processes are present in system
    */
   static boolean pidExistsAll(List pids) {
-    def res = true
-
-    pids.each { pid ->
-      res = res && pidExists(pid)
+    if (pids.contains(null)) {
+      return false
     }
-
-    return res
+    Set<Long> alive = ProcessWatcher.aliveOf(pids)
+    return pids.every { alive.contains(it as Long) }
   }
 
   /**
@@ -1127,17 +1158,15 @@ public class Cmd {
   }
 
   static void logProcessOutput(Process p) {
-    final StringBuffer stdOutAsStr = new StringBuffer()
-    final StringBuffer stdErrAsStr = new StringBuffer()
-    StreamConsumer stdOut = new StreamConsumer(p.getInputStream(), stdOutAsStr)
-    StreamConsumer stdErr = new StreamConsumer(p.getErrorStream(), stdErrAsStr)
-    stdOut.start()
-    stdErr.start()
+    final StreamCapture stdOutCapture = new StreamCapture()
+    final StreamCapture stdErrCapture = new StreamCapture()
+    CompletableFuture<StreamCapture> stdOut = StreamPump.capture(p, p.getInputStream(), stdOutCapture)
+    CompletableFuture<StreamCapture> stdErr = StreamPump.capture(p, p.getErrorStream(), stdErrCapture)
     p.waitFor()
-    stdOut.join(5000)
-    stdErr.join(5000)
-    log.debug("stdOut:${stdOutAsStr.toString()}")
-    log.debug("stdErr:${stdErrAsStr.toString()}")
+    StreamPump.await(stdOut, 5000)
+    StreamPump.await(stdErr, 5000)
+    log.debug("stdOut:${stdOutCapture.toString()}")
+    log.debug("stdErr:${stdErrCapture.toString()}")
   }
 
   static void logSystemProcesses(String grepArgs = '') {
@@ -1,5 +1,7 @@
 package noe.common.utils
 
+import groovy.util.logging.Slf4j
+
 /**
  * Service class for storing and restoring of directories states.
  * State means content of files in directory and subdirectories or information whether files
@@ -18,6 +20,9 @@ package noe.common.utils
  * Each record/pushed directory is handled individually, implication is that push of subdirectory of
  * already pushed directory is handled separately. There is no logic checking relation between pushed directories.
  *
+ * Files which did not change since push are not rewritten on restore (see {@link FileStateVault}), changes done by
+ * the last restore are available in {@link #getLastRestoreDiff()}.
+ *
  * For work with files only check class FileStateVault
  *
  * IMPORTANT
@@ -34,8 +39,13 @@ package noe.common.utils
  * @see FileStateVault
  * @see JBFile#delete
  */
+@Slf4j
 class DirStateVault implements StateVault<DirStateVault> {
   private Map<String, List<DirState>> vault = [:]
+  /**
+   * Changes done by the last pop / popAll
+   */
+  VaultDiff lastRestoreDiff = new VaultDiff()
   private boolean isWindows = new Platform().isWindows()
 
   class DirState {
@@ -138,11 +148,13 @@ class DirStateVault implements StateVault<DirStateVault> {
    */
   @Override
   DirStateVault pop() {
-    Set<String> keys = Collections.unmodifiableCollection(vault.keySet())
+    VaultDiff diff = new VaultDiff()
 
-    keys.each {String key ->
+    new ArrayList<String>(vault.keySet()).each { String key ->
       pop(file(key))
+      diff.merge(lastRestoreDiff)
     }
+    lastRestoreDiff = diff
 
     return this
   }
@@ -161,7 +173,7 @@ class DirStateVault implements StateVault<DirStateVault> {
 
     DirState dirState = vault.get(key(toRestore)).last()
 
-    restoreDirectory(toRestore, dirState)
+    lastRestoreDiff = restoreDirectory(toRestore, dirState)
 
     vault.get(key(toRestore)).pop()
     if (vault.get(key(toRestore)).isEmpty()) {
@@ -179,11 +191,13 @@ class DirStateVault implements StateVault<DirStateVault> {
    */
   @Override
   DirStateVault popAll() {
-    Set<String> keys = Collections.unmodifiableCollection(vault.keySet())
+    VaultDiff diff = new VaultDiff()
 
-    keys.each { String key ->
+    new ArrayList<String>(vault.keySet()).each { String key ->
       popAll(file(key))
+      diff.merge(lastRestoreDiff)
     }
+    lastRestoreDiff = diff
 
     vault.clear()
 
@@ -202,7 +216,7 @@ class DirStateVault implements StateVault<DirStateVault> {
     }
 
     DirState dirState = vault.get(key(toRestore)).first()
-    restoreDirectory(toRestore, dirState)
+    lastRestoreDiff = restoreDirectory(toRestore, dirState)
 
     vault.remove(key(toRestore))
 
@@ -223,28 +237,33 @@ class DirStateVault implements StateVault<DirStateVault> {
     }
   }
 
-  private void restoreDirectory(File toRestore, DirState dirState) {
+  private VaultDiff restoreDirectory(File toRestore, DirState dirState) {
     boolean fileDidExist
     boolean dirDidExist
     FileStateVault fileStateVault = dirState?.fileStateVault
     DirStateVault dirStateVault = dirState?.dirStateVault
+    VaultDiff diff = new VaultDiff()
 
     // Directory was empty -> remove content
     if (dirState.isEmpty()) {
+      toRestore.listFiles()?.each { File item -> diff.deleted(item) }
       JBFile.cleanDirectory(toRestore)
-      return
+      return diff
     }
 
     // directory did ont exists -> delete
     if (!vault.get(key(toRestore)).last().existed) {
-      JBFile.delete(toRestore)
-      return
+      if (JBFile.delete(toRestore)) {
+        diff.deleted(toRestore)
+      }
+      return diff
     }
 
     // target exists but it is file not directory and directory existed (not returned in previous step)
     if (toRestore.exists() && toRestore.isFile()) {
       JBFile.delete(toRestore)
       toRestore.mkdirs()
+      diff.recreated(toRestore)
     }
 
     // remove anything, what was not present on push
@@ -255,6 +274,7 @@ class DirStateVault implements StateVault<DirStateVault> {
         fileDidExist = (fileStateVault) ? (fileStateVault?.isPushed(existingItemInToRestoreFolder)) : false
         if (!fileDidExist) {
           JBFile.delete(existingItemInToRestoreFolder)
+          diff.deleted(existingItemInToRestoreFolder)
         }
 
       } else if (existingItemInToRestoreFolder.isDirectory()) {
@@ -262,6 +282,7 @@ class DirStateVault implements StateVault<DirStateVault> {
         dirDidExist = (dirStateVault) ? (dirStateVault?.isPushed(existingItemInToRestoreFolder)) : false
         if (!dirDidExist) {
           JBFile.delete(existingItemInToRestoreFolder)
+          diff.deleted(existingItemInToRestoreFolder)
         }
 
       } else {
@@ -271,11 +292,18 @@ class DirStateVault implements StateVault<DirStateVault> {
     }
 
     // now, there are only files what was pushed, any missing, will be recovered as well as state of existing
-    fileStateVault?.pop()
+    if (fileStateVault) {
+      diff.merge(fileStateVault.pop().lastRestoreDiff)
+    }
 
     makeDirAccessibleIfItIsNot(toRestore)
-    dirStateVault?.pop()
+    if (dirStateVault) {
+      diff.merge(dirStateVault.pop().lastRestoreDiff)
+    }
     dirState.loadDirPermissions()
+    log.debug("Restored ${toRestore}: ${diff}")
+
+    return diff
   }
 
   private String key(File file) {
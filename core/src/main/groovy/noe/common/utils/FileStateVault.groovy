@@ -1,5 +1,10 @@
 package noe.common.utils
 
+import groovy.util.logging.Slf4j
+
+import java.util.zip.CRC32
+import java.util.zip.CheckedInputStream
+
 /**
  * Service class for storing and restoring of file states.
  * State means content or information whether file does not exist.
@@ -11,6 +16,11 @@ package noe.common.utils
  *
  * Symlinks do not have any special care.
  *
+ * On restore only files which differ from the stored state are rewritten. A file is considered unchanged when it has
+ * the same size and either the same modification time (trusted only if it is older than the push by more than
+ * the timestamp granularity) or the same CRC32 checksum as recorded on push. Changes done by the last restore are
+ * available in {@link #getLastRestoreDiff()}.
+ *
  * There is manipulation with access rights on items, if item is not accessible it's access rights are changed
  * temporalily for time if saving or restoring state, To enable this functionality NOE has to be executed with
  * -Drun.with.sudo=true.
@@ -30,8 +40,19 @@ package noe.common.utils
  * @see DirStateVault
  *
  */
+@Slf4j
 class FileStateVault implements StateVault<FileStateVault> {
+  /**
+   * Modification times younger than this at push time are not trusted, the file could be changed again
+   * within the same timestamp granule
+   */
+  private static final long MTIME_GRANULARITY = 2000
+
   Map<String, List<FileState>> vault = [:]
+  /**
+   * Changes done by the last pop / popAll
+   */
+  VaultDiff lastRestoreDiff = new VaultDiff()
   private boolean isWindows = new Platform().isWindows()
 
   class FileState {
@@ -42,6 +63,10 @@ class FileStateVault implements StateVault<FileStateVault> {
      * Attributes of files on Unix like OS only.
      */
     private JBFile.FilePermission permission
+    private long size
+    private long lastModified
+    private long checksum
+    private long pushTime
 
 
     FileState saveState(File file) {
@@ -50,19 +75,48 @@ class FileStateVault implements StateVault<FileStateVault> {
       }
 
       makeTheFileReadableIfItIsNot(file)
+      this.pushTime = System.currentTimeMillis()
+      this.lastModified = file.lastModified()
       this.state = file.getBytes()
+      this.size = state.length
+      CRC32 crc = new CRC32()
+      crc.update(state)
+      this.checksum = crc.getValue()
       returnOriginalPermissions(file)
 
       return this
     }
 
+    /**
+     * @return true if content of the file is the same as the stored one
+     */
+    boolean matches(File file) {
+      if (!file.isFile() || file.length() != size) {
+        return false
+      }
+      if (lastModified < pushTime - MTIME_GRANULARITY && file.lastModified() == lastModified) {
+        return true
+      }
+      if (!file.canRead()) {
+        return false
+      }
+      CRC32 crc = new CRC32()
+      new CheckedInputStream(new FileInputStream(file), crc).withStream { InputStream input ->
+        byte[] buffer = new byte[8192]
+        while (input.read(buffer) >= 0) {
+          // just reading, checksum is computed by the stream
+        }
+      }
+      return crc.getValue() == checksum
+    }
+
     private void makeTheFileReadableIfItIsNot(File file) {
       if (!isWindows && !file.canRead()) {
         JBFile.chmod('ugo+r', file)
       }
     }
 
-    private returnOriginalPermissions(File file) {
+    void returnOriginalPermissions(File file) {
       if (!isWindows) {
         JBFile.definePermissions(permission, file)
       }
@@ -133,11 +187,13 @@ class FileStateVault implements StateVault<FileStateVault> {
    */
   @Override
   FileStateVault pop() {
-    Set<String> keys = Collections.unmodifiableCollection(vault.keySet())
+    VaultDiff diff = new VaultDiff()
 
-    keys.each { String key ->
+    new ArrayList<String>(vault.keySet()).each { String key ->
       pop(new File(key))
+      diff.merge(lastRestoreDiff)
     }
+    lastRestoreDiff = diff
 
     return this
   }
@@ -155,7 +211,7 @@ class FileStateVault implements StateVault<FileStateVault> {
     }
 
     FileState fileStateToRestore = vault.get(key(toRestore)).last()
-    deleteIfDidNotExistsElseRestore(toRestore, fileStateToRestore)
+    lastRestoreDiff = deleteIfDidNotExistsElseRestore(toRestore, fileStateToRestore, new VaultDiff())
 
     vault.get(key(toRestore)).remove(fileStateToRestore)
     if (vault.get(key(toRestore)).size() == 0) {
@@ -169,16 +225,29 @@ class FileStateVault implements StateVault<FileStateVault> {
     return vault.containsKey(key(file))
   }
 
-  private void deleteIfDidNotExistsElseRestore(File toRestore, FileState fileState) {
+  private VaultDiff deleteIfDidNotExistsElseRestore(File toRestore, FileState fileState, VaultDiff diff) {
     if (fileState.didNotExists()) {
-      JBFile.delete(toRestore)
+      if (JBFile.delete(toRestore)) {
+        diff.deleted(toRestore)
+      }
+    } else if (fileState.matches(toRestore)) {
+      fileState.returnOriginalPermissions(toRestore)
+      diff.unchanged(toRestore)
     } else {
       if (!toRestore.exists()) {
         toRestore.getParentFile().mkdirs()
         toRestore.createNewFile()
+        diff.recreated(toRestore)
+      } else {
+        diff.rewritten(toRestore)
       }
       fileState.restoreState(toRestore)
     }
+    if (!diff.isEmpty()) {
+      log.debug("Restored ${toRestore}: ${diff}")
+    }
+
+    return diff
   }
 
   /**
@@ -194,7 +263,7 @@ class FileStateVault implements StateVault<FileStateVault> {
     }
 
     FileState fileStateToRestore = vault.get(key(toRestore)).first()
-    deleteIfDidNotExistsElseRestore(toRestore, fileStateToRestore)
+    lastRestoreDiff = deleteIfDidNotExistsElseRestore(toRestore, fileStateToRestore, new VaultDiff())
 
     vault.remove(key(toRestore))
 
@@ -209,10 +278,12 @@ class FileStateVault implements StateVault<FileStateVault> {
    */
   @Override
   FileStateVault popAll() {
+    VaultDiff diff = new VaultDiff()
     vault.each { String key, List<FileState> data ->
       FileState fileStateToRestore = data.first()
-      deleteIfDidNotExistsElseRestore(new File(key), fileStateToRestore)
+      deleteIfDidNotExistsElseRestore(new File(key), fileStateToRestore, diff)
     }
+    lastRestoreDiff = diff
 
     vault.clear()
 
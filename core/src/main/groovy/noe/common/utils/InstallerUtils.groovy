@@ -6,8 +6,6 @@ import noe.server.ServerAbstract
 import noe.workspace.WorkspaceAbstract
 
 import javax.xml.bind.DatatypeConverter
-import java.nio.file.Files
-import java.nio.file.Paths
 import java.security.MessageDigest
 
 /**
@@ -65,9 +63,10 @@ class InstallerUtils {
 
   /**
    * Install zip file to basedir
-   *        1. Copy zip file to basedir (fail if zip file not found)
-   *        2. Unzip file
-   *        3. Delete zip file if {@link DefaultProperties#isRemoveZipAfterUnzip()}
+   *        1. Unzip file directly from its location (zip is downloaded to basedir if it is located by URL), SHA-256 hash
+   *           of the zip file is computed while unzipping
+   *        2. Delete downloaded zip file if {@link DefaultProperties#isRemoveZipAfterUnzip()}, the zip file is copied
+   *           to basedir if it should not be removed
    * @param zipFileName
    */
   void installZipFile(String zipFileName) throws FileNotFoundException {
@@ -79,30 +78,38 @@ class InstallerUtils {
 
     File zipSource = new File(pathToSource, zipFileName)
     File zipDest = new File(basedir, zipFileName)
+    File zipFile = zipSource
 
     if (isStaticEnvVerifiedUrl) {
       String downloadZipUrl = "${pathToSource}/${zipFileName}"
       log.info ("Downloading ${downloadZipUrl} to ${zipDest}")
       Library.downloadFile(downloadZipUrl, zipDest)
+      zipFile = zipDest
     } else {
       if (!JBFile.isExistingFile(zipSource)) {
         throw new FileNotFoundException("Expected zip file ${zipSource} doesn't exist.")
       }
-      File dest = new File(basedir)
-      if (!JBFile.copy(zipSource, dest)) {
-        throw new FileNotFoundException("Something has gone wrong with copying file ${zipSource} to the targed directory ${dest}. Check debug log for more information.")
+      // zip not readable by the current user is copied with sudo, zip which should be kept is copied to basedir
+      if (!zipSource.canRead() || !DefaultProperties.isRemoveZipAfterUnzip()) {
+        File dest = new File(basedir)
+        if (!JBFile.copy(zipSource, dest)) {
+          throw new FileNotFoundException("Something has gone wrong with copying file ${zipSource} to the targed directory ${dest}. Check debug log for more information.")
+        }
+        log.info ("Copying ${zipSource} to ${dest.canonicalPath}")
+        zipFile = zipDest
       }
-      log.info ("Copying ${zipSource} to ${dest.canonicalPath}")
     }
 
-    if (!zipDest.exists()) {
+    if (!zipFile.exists()) {
       log.error('FAILED to Install zip file ' + zipSource + ' to ' + basedir)
       log.error("Zip file $zipSource, exist = ${zipSource.exists()}")
-      throw new FileNotFoundException("Zip installation failed, $zipDest doesn't exits")
+      throw new FileNotFoundException("Zip installation failed, $zipFile doesn't exits")
     }
-    logSha256Hash(zipDest)
-    JBFile.nativeUnzip(zipDest, new File(basedir))
-    if (DefaultProperties.isRemoveZipAfterUnzip()) {
+    log.info("Unzipping ${zipFile} to ${basedir}")
+    MessageDigest md = MessageDigest.getInstance("SHA-256")
+    JBFile.nativeUnzip(zipFile, new File(basedir), false, false, md)
+    logHash(zipFile, md)
+    if (zipFile == zipDest && DefaultProperties.isRemoveZipAfterUnzip()) {
       JBFile.delete(zipDest)
     }
   }
@@ -116,9 +123,13 @@ class InstallerUtils {
       throw new FileNotFoundException("Zip file ${zipFile} for computing SHA-256 doesn't exists.")
     }
     MessageDigest md = MessageDigest.getInstance("SHA-256")
-    md.update(Files.readAllBytes(Paths.get(zipFile.getAbsolutePath())))
+    ZipExtractor.digest(zipFile, md)
+    logHash(zipFile, md)
+  }
+
+  private static void logHash(File zipFile, MessageDigest md) {
     byte[] digest = md.digest()
     String digestInHex = DatatypeConverter.printHexBinary(digest).toUpperCase()
-    log.info("Zip file ${zipFile} SHA-256 hash is: ${digestInHex}")
+    log.info("Zip file ${zipFile} ${md.algorithm} hash is: ${digestInHex}")
   }
 }
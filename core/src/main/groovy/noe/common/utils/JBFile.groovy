@@ -1,11 +1,22 @@
 package noe.common.utils
 
 import groovy.util.logging.Slf4j
-import noe.common.Constants
 import noe.common.DefaultProperties
 import org.apache.commons.io.FileUtils
 
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.AccessDeniedException
+import java.nio.file.Files
+import java.nio.file.LinkOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.GroupPrincipal
+import java.nio.file.attribute.UserPrincipal
+import java.security.MessageDigest
 import java.util.concurrent.TimeUnit
+import java.util.regex.Matcher
+import java.util.regex.Pattern
 
 /**
  * @author Jan Stefl     <jstefl@redhat.com>
@@ -17,6 +28,8 @@ class JBFile {
   static Platform platform = new Platform()
   static int hasZip = -1
   static Boolean useAdminPrivileges = Boolean.valueOf(Library.getUniversalProperty('USE_ADMIN_PRIVILEGES', String.valueOf(DefaultProperties.RUN_WITH_SUDO)))
+  private static final int UNZIP_THREADS = Integer.parseInt(Library.getUniversalProperty('unzip.threads',
+      String.valueOf(Math.min(8, Runtime.getRuntime().availableProcessors()))))
 
   static {
     ant.project.buildListeners[0].messageOutputLevel = 1
@@ -423,109 +436,109 @@ class JBFile {
   /**
    * Performs regular expression string replacements in a text file.
    * First match is replaced. If byline is enabled, first match on every line is replaced.
-   * {@code AntBuilder.replaceregexp ( ... )} is used.
+   * The file is processed in-process by {@link TextReplace} with the same semantics as {@code AntBuilder.replaceregexp ( ... )}.
    * @param file existing text file to process
    * @param match regular expression to match
    * @param replace replacement expression string (using \1 to refer to first parenthesis match in {@code match})
    * @param byline if enabled every line is processed, otherwise whole text is taken at once, enabled by default
    * @param encoding encoding to use
    * @return false if file not exists or processing file fails (on non-windows platforms), true if processing was successful
-   * @throws Exception on windows when processing with AntBuilder fails
+   * @throws Exception on windows or without admin privileges when processing fails
    */
   static boolean replaceregexp(File file, String match, String replace, Boolean byline = true, Boolean trySudo = false, String encoding = "UTF-8") {
-    if (!file.exists()) return false
-    FilePermission permBackup = retrievePermissions(file) //ant is removing executable bit, backing up
-    def result = false
+    return replaceRegexpCount(file, match, replace, byline, trySudo, encoding) >= 0
+  }
+
+  /**
+   * The same as {@link #replaceregexp} but returns number of replaced matches, -1 if file not exists or processing
+   * file fails.
+   */
+  static int replaceRegexpCount(File file, String match, String replace, Boolean byline = true, Boolean trySudo = false, String encoding = "UTF-8") {
+    if (!file.exists()) return -1
     try {
-      ant.replaceregexp(file: file.absolutePath, match: match, replace: replace, byline: byline, encoding: encoding)
-      result = true
-    } catch (e) {
+      return TextReplace.replaceRegexp(file, match, replace, byline, encoding)
+    } catch (IOException e) {
       if (!platform.isWindows() && (useAdminPrivileges || trySudo)) {
-        def classpath = Library.groovyWithAntAsClasspath()
-
-        match = match.replaceAll(platform.nl, '\\\\n')
-        match = match.replaceAll("'", "\\\\'")
-        replace = replace.replaceAll(platform.nl, '\\\\n')
-        replace = replace.replaceAll("'", "\\\\'")
-
-        def escapedFilePath = file.absolutePath.replaceAll(Constants.TWO_DOUBLE_BACKSLASHES, Constants.FOUR_DOUBLE_BACKSLASHES)
-
-        def command = [
-            "java",
-            "-cp",
-            classpath,
-            "groovy.ui.GroovyMain",
-            "-e",
-            "new groovy.util.AntBuilder().replaceregexp(file: '${escapedFilePath}', match: '${match}', replace: '${replace}', byline: '${byline}', encoding: '${encoding}')"
-        ]
-
-        result = !Cmd.executeSudoCommand(command, new File("."))
-      } else {
-        throw e
-      }
-    } finally {
-      if (!platform.isWindows()) {
-        definePermissions(permBackup, file)
+        log.debug("Replacing in ${file.absolutePath} under root privileges: ${e}")
+        try {
+          return TextReplace.privileged().replaceRegexp(file, match, replace, byline, encoding)
+        } catch (IOException privilegedException) {
+          log.error("Unable to replace ${match} in ${file.absolutePath}", privilegedException)
+          return -1
+        }
       }
+      throw e
     }
-    return result
   }
 
   /**
-   * Performs string replacements in a text file. First match is replaced.
-   * {@code AntBuilder.replace ( ... )} is used.
+   * Performs string replacements in a text file. All occurrences of the token are replaced.
+   * The file is processed in-process by {@link TextReplace} with the same semantics as {@code AntBuilder.replace ( ... )}.
    * @param file existing text file to process
    * @param token string to find
    * @param value replacement
    * @param encoding encoding to use
    * @return false if file not exists or processing file fails (on non-windows platforms), true if processing was successful
-   * @throws Exception on windows when processing with AntBuilder fails
+   * @throws Exception on windows when processing fails
    */
   static boolean replace(File file, String token, String value, Boolean trySudo = false, String encoding = "UTF-8") {
-    if (!file.exists()) return false
-    FilePermission permBackup = retrievePermissions(file) //ant is removing executable bit, backing up
-    def result = false
+    return replaceCount(file, token, value, trySudo, encoding) >= 0
+  }
+
+  /**
+   * The same as {@link #replace} but returns number of replaced occurrences, -1 if file not exists or processing
+   * file fails.
+   */
+  static int replaceCount(File file, String token, String value, Boolean trySudo = false, String encoding = "UTF-8") {
+    if (!file.exists()) return -1
+    log.debug("Replacing ${token} in ${file.absolutePath} with ${value}")
     try {
-      log.debug("Replacing ${token} in ${file.absolutePath} with ${value}")
-      ant.replace(file: file.absolutePath, value: value, summary: true, encoding: encoding) {
-        replacefilter(token: token)
-      }
-      result = true
-    } catch (e) {
-      if (!platform.isWindows()) {
-        def classpath = Library.groovyWithAntAsClasspath()
-
-        token = token.replaceAll(platform.nl, '\\\\n')
-        //        token = token.replaceAll('"', '\\\\"')
-        value = value.replaceAll(platform.nl, '\\\\n')
-        //        value = value.replaceAll('"', '\\\\"')
-
-        def escapedFilePath = file.absolutePath.replaceAll(Constants.TWO_DOUBLE_BACKSLASHES, Constants.FOUR_DOUBLE_BACKSLASHES)
-
-        def command = [
-            "java",
-            "-cp",
-            classpath,
-            "groovy.ui.GroovyMain",
-            "-e",
-            "new groovy.util.AntBuilder().replace(file: '${escapedFilePath}', value: '${value}', summary: 'true', encoding: '${encoding}')" +
-                " { replacefilter(token: '${token}') }"
-        ]
-
-        if (useAdminPrivileges || trySudo) {
-          result = !Cmd.executeSudoCommand(command, new File("."))
-        } else {
-          result = !Cmd.executeCommand(command, new File("."))
-        }
-      } else {
+      return TextReplace.replace(file, token, value, encoding)
+    } catch (IOException e) {
+      if (platform.isWindows()) {
         throw e
       }
-    } finally {
-      if (!platform.isWindows()) {
-        definePermissions(permBackup, file)
+      if (!(useAdminPrivileges || trySudo)) {
+        log.error("Unable to replace ${token} in ${file.absolutePath}", e)
+        return -1
+      }
+      log.debug("Replacing in ${file.absolutePath} under root privileges: ${e}")
+      try {
+        return TextReplace.privileged().replace(file, token, value, encoding)
+      } catch (IOException privilegedException) {
+        log.error("Unable to replace ${token} in ${file.absolutePath}", privilegedException)
+        return -1
       }
     }
-    return result
+  }
+
+  /**
+   * Replaces content of an existing file by the text at once (temporary file and atomic rename), permissions, owner
+   * and group of the file are kept.
+   * @param file existing file to rewrite
+   * @param text new content
+   * @param encoding encoding to use
+   * @return false if file not exists or writing fails (on non-windows platforms), true if the file was rewritten
+   * @throws Exception on windows or without admin privileges when writing fails
+   */
+  static boolean rewrite(File file, String text, Boolean trySudo = false, String encoding = "UTF-8") {
+    if (!file.exists()) return false
+    try {
+      TextReplace.write(file, text, encoding)
+      return true
+    } catch (IOException e) {
+      if (!platform.isWindows() && (useAdminPrivileges || trySudo)) {
+        log.debug("Rewriting ${file.absolutePath} under root privileges: ${e}")
+        try {
+          TextReplace.privileged().write(file, text, encoding)
+          return true
+        } catch (IOException privilegedException) {
+          log.error("Unable to rewrite ${file.absolutePath}", privilegedException)
+          return false
+        }
+      }
+      throw e
+    }
   }
 
   /**
@@ -624,17 +637,33 @@ class JBFile {
 
   /**
    * Unzip file to destination directory.
-   * Native unzip command is used if present on current machine, otherwise falls back to Ant unzip.
+   * The file is extracted in-process by {@link ZipExtractor} with `unzip.threads` threads, permissions and symbolic
+   * links are preserved. If that fails (e.g. the destination is not writable by the current user), native unzip command
+   * is used if present on current machine, otherwise falls back to Ant unzip.
    *
    * @param file existing zip file
    * @param destDir destination directory
    * @param trySudo only for API backward compatibility, unused
    * @param makeAccessible whether to make destination directory accessible when unzip must be run under admin rights (non-windows platforms only)
+   * @param digest digest to update by all bytes of the zip file (e.g. for logging its hash), could be null
    * @throws RuntimeException when unzip fails even with admin rights on not-windows platform
    */
-  def static nativeUnzip(File file, File destDir, Boolean trySudo = false, Boolean makeAccessible = false) {
+  def static nativeUnzip(File file, File destDir, Boolean trySudo = false, Boolean makeAccessible = false, MessageDigest digest = null) {
     log.debug("Unzipping ${file.absolutePath} to ${destDir.absolutePath}, makeAccessible: ${makeAccessible}")
 
+    try {
+      ZipExtractor.extract(file, destDir, UNZIP_THREADS, digest)
+      return null
+    } catch (AccessDeniedException e) {
+      log.debug("Unable to unzip ${file.absolutePath} as the current user (${e.message}), using unzip command")
+    } catch (IOException e) {
+      log.warn("Unable to unzip ${file.absolutePath} in-process (${e.message}), using unzip command")
+    }
+    if (digest != null) {
+      digest.reset()
+      ZipExtractor.digest(file, digest)
+    }
+
     if (hasZip == -1) {
       try {
         def process = "unzip -h".execute()
@@ -901,6 +930,7 @@ class JBFile {
 
   /**
    * Checks whether the file contains line matching provided regexp
+   * The file is streamed line by line, memory use does not depend on the file size.
    * @param fileToCheck - file to check
    * @param regexp - regexp to match
    * @param firstLine - first line which is being checked, the line numbering starts with 1
@@ -908,16 +938,48 @@ class JBFile {
    */
   static boolean hasMatchingLine(File fileToCheck, regexp, int firstLine = 1) {
     log.debug("Scanning file " + fileToCheck.absoluteFile + " for value: " + regexp.toString())
+    return matchingLine(fileToCheck, regexp, 0L, firstLine)
+  }
 
-    String[] lines = JBFile.read(fileToCheck).split("\r\n|\n|\r")
-    for (int lineNumber = firstLine; lineNumber <= lines.length; lineNumber++) {
-      String line = lines[lineNumber-1]
-      if (line ==~ regexp) {
-        log.debug("Found matching line at ${lineNumber}: ${line} in ${fileToCheck.absolutePath}")
-        return true
+  /**
+   * Checks whether the file contains line matching provided regexp appended after the checkpoint
+   * @param fileToCheck - file to check
+   * @param regexp - regexp to match
+   * @param since - checkpoint, the whole file is checked if it is null or the file was rotated since then
+   * @return true if the file contains matching line after the checkpoint, false otherwise
+   */
+  static boolean hasMatchingLine(File fileToCheck, regexp, LogCheckpoint since) {
+    long offset = since?.offsetOf(fileToCheck) ?: 0L
+    if (offset == 0L) {
+      return hasMatchingLine(fileToCheck, regexp)
+    }
+    log.debug("Scanning file " + fileToCheck.absoluteFile + " from byte ${offset} for value: " + regexp.toString())
+    return matchingLine(fileToCheck, regexp, offset, 1)
+  }
+
+  private static boolean matchingLine(File fileToCheck, regexp, long offset, int firstLine) {
+    if (!fileToCheck.canRead()) {
+      // not readable by the current user, read through sudo
+      String[] lines = readSince(fileToCheck, offset).split("\r\n|\n|\r")
+      for (int lineNumber = firstLine; lineNumber <= lines.length; lineNumber++) {
+        String line = lines[lineNumber - 1]
+        if (line ==~ regexp) {
+          log.debug("Found matching line at ${lineNumber}: ${line} in ${fileToCheck.absolutePath}")
+          return true
+        }
       }
+      return false
     }
-    return false
+
+    Matcher matcher = toPattern(regexp).matcher('')
+    boolean found = !MappedLineReader.forEachLine(fileToCheck, offset, Charset.defaultCharset(), { CharSequence line, long lineNumber ->
+      if (lineNumber >= firstLine && matcher.reset(line).matches()) {
+        log.debug("Found matching line at ${lineNumber}: ${line} in ${fileToCheck.absolutePath}")
+        return false
+      }
+      return true
+    } as MappedLineReader.LineHandler)
+    return found
   }
 
   /**
@@ -954,12 +1016,15 @@ class JBFile {
 
   /**
    * Returns number of occurrences of words matching regexp in given file.
+   * The file is streamed line by line if no match of the regexp can span lines or be affected by them (no anchors,
+   * groups with flags or lookaround, line terminator matching escapes, negated classes or empty matches), otherwise
+   * whole text of the file is matched.
    * @param file - file to check
    * @param regexp - regexp to match
    */
   static int fileRegexpOccurrences(File file, regexp) {
     if (file.isFile()) {
-      def regexpOccurrences = (file.text =~ regexp).getCount()
+      int regexpOccurrences = occurrences(file, regexp, 0L)
       log.trace("Regexp Occurrences: regexp ${regexp} matches ${regexpOccurrences} times in file ${file}")
       return regexpOccurrences
     } else {
@@ -968,6 +1033,85 @@ class JBFile {
     }
   }
 
+  /**
+   * Returns number of occurrences of words matching regexp in given file, appended after the checkpoint.
+   * @param file - file to check
+   * @param regexp - regexp to match
+   * @param since - checkpoint, the whole file is checked if it is null or the file was rotated since then
+   */
+  static int fileRegexpOccurrences(File file, regexp, LogCheckpoint since) {
+    long offset = since?.offsetOf(file) ?: 0L
+    if (offset == 0L || !file.isFile()) {
+      return fileRegexpOccurrences(file, regexp)
+    }
+    int regexpOccurrences = occurrences(file, regexp, offset)
+    log.trace("Regexp Occurrences: regexp ${regexp} matches ${regexpOccurrences} times in file ${file} from byte ${offset}")
+    return regexpOccurrences
+  }
+
+  private static int occurrences(File file, regexp, long offset) {
+    Pattern pattern = toPattern(regexp)
+    if (!file.canRead() || !isLineLocal(pattern)) {
+      return (readSince(file, offset) =~ pattern).getCount()
+    }
+
+    Matcher matcher = pattern.matcher('')
+    int count = 0
+    MappedLineReader.forEachLine(file, offset, Charset.defaultCharset(), { CharSequence line, long lineNumber ->
+      matcher.reset(line)
+      while (matcher.find()) {
+        count++
+      }
+      return true
+    } as MappedLineReader.LineHandler)
+    return count
+  }
+
+  private static Pattern toPattern(regexp) {
+    return (regexp instanceof Pattern) ? (Pattern) regexp : Pattern.compile(regexp.toString())
+  }
+
+  /**
+   * @return true if matches of the pattern in a text are exactly matches of the pattern in separate lines of the text
+   */
+  private static boolean isLineLocal(Pattern pattern) {
+    int allowedFlags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS
+    if ((pattern.flags() & ~allowedFlags) != 0 || pattern.matcher('').find()) {
+      return false
+    }
+    String regexp = pattern.pattern()
+    for (int i = 0; i < regexp.length(); i++) {
+      char c = regexp.charAt(i)
+      if (c == (char) '\\') {
+        i++
+        if (i < regexp.length() && Character.isLetterOrDigit(regexp.charAt(i)) && "dwbt".indexOf((int) regexp.charAt(i)) < 0) {
+          return false
+        }
+      } else if (c == (char) '^' || c == (char) '$' || c == (char) '\n' || c == (char) '\r' ||
+          (c == (char) '(' && i + 1 < regexp.length() && regexp.charAt(i + 1) == (char) '?')) {
+        return false
+      }
+    }
+    return true
+  }
+
+  /**
+   * Reads text of the file starting at the byte offset
+   */
+  private static String readSince(File file, long offset) {
+    if (!file.canRead()) {
+      byte[] bytes = read(file).getBytes()
+      return new String(bytes, (int) Math.min(offset, bytes.length), (int) Math.max(0, bytes.length - offset))
+    }
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+    try {
+      channel.position(offset)
+      return Channels.newReader(channel, Charset.defaultCharset().name()).getText()
+    } finally {
+      channel.close()
+    }
+  }
+
   /**
    * Waiting for file or directory being removed (waiting in maximum for specified timeout)
    * @param file represents file or directory which is being checked for existence
@@ -1003,6 +1147,7 @@ class JBFile {
 
   /**
    * Read owner, group, permissions of file
+   * Attributes are read through NIO, `ls -ld` is forked only when that is not possible (e.g. access denied)
    * @param file to call upon
    * @return FilePermissions
    */
@@ -1010,6 +1155,10 @@ class JBFile {
     if (platform.isWindows()) {
       return null
     }
+    FilePermission nioPerm = readUnixPermissions(file)
+    if (nioPerm != null) {
+      return nioPerm
+    }
     FilePermission filePerm = new FilePermission()
     String output = callListLongDirectory(file)
     filePerm.setOwner(((String) (output).split()[2]))
@@ -1027,17 +1176,65 @@ class JBFile {
     if (!file || platform.isWindows()) {
       return
     }
-    if (filePerm.getOwner() && chown(filePerm.getOwner(), file) != 0) {
-      throw new RuntimeException("Setting owner ${filePerm.getOwner()} to ${file.absolutePath} went wrong")
+    // attributes which are already set are skipped, no process is forked for them
+    FilePermission current = readUnixPermissions(file)
+    if (filePerm.getOwner() && filePerm.getOwner() != current?.getOwner()) {
+      if (chown(filePerm.getOwner(), file) != 0) {
+        throw new RuntimeException("Setting owner ${filePerm.getOwner()} to ${file.absolutePath} went wrong")
+      }
+      current = null // change of owner could clear setuid and setgid bits
     }
-    if (filePerm.getGroup() && chgrp(filePerm.getGroup(), file) != 0) {
-      throw new RuntimeException("Setting group ${filePerm.getGroup()} to ${file.absolutePath} went wrong")
+    if (filePerm.getGroup() && filePerm.getGroup() != current?.getGroup()) {
+      if (chgrp(filePerm.getGroup(), file) != 0) {
+        throw new RuntimeException("Setting group ${filePerm.getGroup()} to ${file.absolutePath} went wrong")
+      }
+      current = null
     }
-    if (filePerm.getPerm() && chmod(filePerm.getPerm(), file) != 0) {
+    if (filePerm.getPerm() && !isSameOctalMode(filePerm.getPerm(), current?.getPerm())
+        && !setUnixMode(filePerm.getPerm(), file) && chmod(filePerm.getPerm(), file) != 0) {
       throw new RuntimeException("Setting permissions ${filePerm.getPerm()} to ${file.absolutePath} went wrong")
     }
   }
 
+  /**
+   * Reads owner, group and mode including setuid, setgid and sticky bits through `unix` file attribute view, the same
+   * as `ls -ld` shows them (symbolic link itself is read)
+   *
+   * @return permissions or null if they can't be read this way (access denied, attribute view not supported, ...)
+   */
+  private static FilePermission readUnixPermissions(File file) {
+    try {
+      Map<String, Object> attributes = Files.readAttributes(file.toPath(), 'unix:mode,owner,group', LinkOption.NOFOLLOW_LINKS)
+      return new FilePermission(((UserPrincipal) attributes.owner).getName(), ((GroupPrincipal) attributes.group).getName(),
+          String.format('%04o', ((Integer) attributes.mode) & 07777))
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      log.trace("Permissions of ${file.absolutePath} are not readable without ls: ${e}")
+      return null
+    }
+  }
+
+  /**
+   * Sets octal mode through `unix` file attribute view
+   *
+   * @return false if the mode was not set this way (not octal, access denied, ...)
+   */
+  private static boolean setUnixMode(String mode, File file) {
+    if (!(mode ==~ /[0-7]{1,4}/) || Files.isSymbolicLink(file.toPath())) {
+      return false
+    }
+    try {
+      Files.setAttribute(file.toPath(), 'unix:mode', Integer.parseInt(mode, 8))
+      return true
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      log.trace("Permissions of ${file.absolutePath} are not settable without chmod: ${e}")
+      return false
+    }
+  }
+
+  private static boolean isSameOctalMode(String mode, String currentMode) {
+    return currentMode != null && mode ==~ /[0-7]{1,4}/ && Integer.parseInt(mode, 8) == Integer.parseInt(currentMode, 8)
+  }
+
   /**
    * Call ls -ld on file
    * @param file to call upon
@@ -1065,10 +1262,15 @@ class JBFile {
    *          2. drwx------.
    *          3. rwx------
    *          4. 0700
+   * The `ls -ld` is used only when permissions are not readable through NIO
    * @param file, to read permissions of
    * @return octal permissions as String, empty string if used on windows
    */
   private static String readOctalPermissions(File file) {
+    FilePermission nioPerm = readUnixPermissions(file)
+    if (nioPerm != null) {
+      return nioPerm.getPerm()
+    }
     return readOctalPermissions(callListLongDirectory(file))
   }
 
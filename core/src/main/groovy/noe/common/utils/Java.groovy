@@ -2,6 +2,10 @@ package noe.common.utils
 
 import groovy.util.logging.Slf4j
 
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.regex.Matcher
+
 /**
  * Java class - gets information about currently running JVM
  * @author Libor Fuka <lfuka@redhat.com>
@@ -16,7 +20,15 @@ public class Java {
   public static String javaVmInfo = System.getProperty('java.vm.info')
   public static final String javaHome = System.getenv('JAVA_HOME')
   public static final String serverJavaHome = System.getenv('SERVER_JAVA_HOME')
+  // Properties of the JVM in SERVER_JAVA_HOME, null if it is not set
+  public static String serverJavaVersion
+  public static String serverJavaVendor
+  public static String serverJavaVmName
+  public static String serverJavaVmInfo
   private static final String javaHelperClassResource = "java/JavaVersion.java"
+  private static final List<String> PROBED_PROPERTIES = ['java.version', 'java.vendor', 'java.vm.name', 'java.vm.info']
+  private static final String PROBE_KEY = 'noe.probe.key'
+  private static final File PROBE_CACHE_DIR = new File(PathHelper.join(System.getProperty("java.io.tmpdir"), "noe", "java"))
   private static final List<String> JAVA_11_INDICATORS = ['jdk11', 'java-11', 'openjdk-11', 'jdk-11']
   private static final List<String> JAVA_17_INDICATORS = ['jdk17', 'java-17', 'openjdk-17', 'jdk-17']
 
@@ -27,18 +39,93 @@ public class Java {
       if (!new File(serverJavaHome, "bin").exists()) {
         return
       }
-      String serverJavac = PathHelper.join(serverJavaHome, "bin", "javac")
-      String serverJava = PathHelper.join(serverJavaHome, "bin", "java")
-      Library.copyResourceTo(javaHelperClassResource, new File("."))
-      Cmd.executeCommandConsumeStreams([serverJavac, "JavaVersion.java"])
-      def serverJavaVersion = Cmd.executeCommandConsumeStreams([serverJava, "JavaVersion", "-version"])["stdOut"].trim()
-      def serverJavaVendor = Cmd.executeCommandConsumeStreams([serverJava, "JavaVersion", "-vendor"])["stdOut"].trim()
-      def serverJavaVmName = Cmd.executeCommandConsumeStreams([serverJava, "JavaVersion", "-vmname"])["stdOut"].trim()
-      def serverJavaVmInfo = Cmd.executeCommandConsumeStreams([serverJava, "JavaVersion", "-vminfo"])["stdOut"].trim()
+      Map<String, String> serverJava = probe(serverJavaHome)
+      serverJavaVersion = serverJava['java.version']
+      serverJavaVendor = serverJava['java.vendor']
+      serverJavaVmName = serverJava['java.vm.name']
+      serverJavaVmInfo = serverJava['java.vm.info']
       initialized = true
     }
   }
 
+  /**
+   * Reads java.version, java.vendor, java.vm.name and java.vm.info of the JVM in javaHome by one launch of it.
+   * Results are cached on disk (`${java.io.tmpdir}/noe/java`) per java executable and its modification time,
+   * so the JVM is launched only once per JDK installation.
+   */
+  static Map<String, String> probe(String javaHome) {
+    File java = new File(PathHelper.join(javaHome, "bin", new Platform().isWindows() ? "java.exe" : "java")).getCanonicalFile()
+    String key = "${java.getPath()}:${java.lastModified()}"
+    File cache = new File(PROBE_CACHE_DIR, "${Integer.toHexString(key.hashCode())}.properties")
+
+    Properties cached = new Properties()
+    if (cache.isFile()) {
+      try {
+        cache.withInputStream { InputStream input -> cached.load(input) }
+      } catch (IOException e) {
+        log.debug("Unable to read cached properties of ${java}: ${e.message}")
+      }
+    }
+    if (cached.getProperty(PROBE_KEY) == key && PROBED_PROPERTIES.every { cached.getProperty(it) != null }) {
+      return PROBED_PROPERTIES.collectEntries { [(it): cached.getProperty(it)] }
+    }
+
+    Map<String, String> probed = probeBySettings(java) ?: probeByHelper(javaHome, java, cache)
+    // failed probe is not cached, it is tried again by the next JVM
+    if (PROBED_PROPERTIES.every { probed[it] != null }) {
+      storeProbe(cache, key, probed)
+    } else {
+      log.debug("Properties of ${java} were not probed completely: ${probed}")
+    }
+    return probed
+  }
+
+  /**
+   * All system properties are listed by -XshowSettings:properties, no class has to be compiled and run
+   */
+  private static Map<String, String> probeBySettings(File java) {
+    Map result = Cmd.executeCommandConsumeStreams([java.getPath(), "-XshowSettings:properties", "-version"])
+    Map<String, String> probed = [:]
+    "${result['stdErr']}\n${result['stdOut']}".eachLine { String line ->
+      Matcher property = (line =~ /^    ([\w.]+) = (.*)$/)
+      if (property.matches() && PROBED_PROPERTIES.contains(property.group(1))) {
+        probed[property.group(1)] = property.group(2).trim()
+      }
+    }
+    return probed.keySet().containsAll(PROBED_PROPERTIES) ? probed : null
+  }
+
+  /**
+   * For JVMs not supporting -XshowSettings, the helper class is compiled by javac of javaHome once
+   */
+  private static Map<String, String> probeByHelper(String javaHome, File java, File cache) {
+    File helperDir = new File(PROBE_CACHE_DIR, cache.getName() - '.properties')
+    if (!new File(helperDir, "JavaVersion.class").exists()) {
+      JBFile.mkdir(helperDir)
+      Library.copyResourceTo(javaHelperClassResource, helperDir)
+      Cmd.executeCommandConsumeStreams([PathHelper.join(javaHome, "bin", "javac"), "JavaVersion.java"], helperDir)
+    }
+    String output = Cmd.executeCommandConsumeStreams([java.getPath(), "-cp", helperDir.getPath(), "JavaVersion", "-all"])["stdOut"]
+    Properties properties = new Properties()
+    properties.load(new StringReader(output))
+    return PROBED_PROPERTIES.collectEntries { [(it): properties.getProperty(it)] }
+  }
+
+  private static void storeProbe(File cache, String key, Map<String, String> probed) {
+    Properties properties = new Properties()
+    properties.setProperty(PROBE_KEY, key)
+    probed.each { String name, String value -> properties.setProperty(name, value) }
+    try {
+      JBFile.mkdir(PROBE_CACHE_DIR)
+      // other JVMs could read the cache meanwhile
+      File tmp = File.createTempFile(cache.getName(), ".tmp", PROBE_CACHE_DIR)
+      tmp.withOutputStream { OutputStream output -> properties.store(output, "Properties of ${key}") }
+      Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } catch (IOException e) {
+      log.debug("Unable to cache properties of ${key}: ${e.message}")
+    }
+  }
+
   String toString() {
     "${javaVersion} ${javaVendor} ${javaVmName} ${javaVmInfo}"
   }
@@ -37,23 +37,10 @@ class Library {
    * * 'my_great_property' in environment variables
    * * 'MY_GREAT_PROPERTY' in environment variables
    * * 'myGreatProperty'   in system properties
+   * Aliases are memoised and environment variables indexed once, see {@link UniversalProperties}.
    */
   static String getUniversalProperty(String propName) {
-    def propName2 = propName.replaceAll('\\.', '_')
-    def propName3 = propName.replaceAll('\\.', '_').toUpperCase()
-    def propname4 = propName.replaceAll('_', '.').toLowerCase()
-    def propName5 = null
-    def sp = propName.split('\\.')
-    if (sp.length > 1) {
-      propName5 = sp[0] + sp[1..-1].collect { it.capitalize() }.join()
-    }
-
-    def val = System.getProperty(propName) ?: System.getenv(propName)
-    if (!val) val = System.getProperty(propName2) ?: System.getenv(propName2)
-    if (!val) val = System.getProperty(propName3) ?: System.getenv(propName3)
-    if (!val) val = System.getProperty(propname4) ?: System.getenv(propname4)
-    if (!val && propName5) val = System.getProperty(propName5) ?: System.getenv(propName5)
-    return val
+    return UniversalProperties.get(propName)
   }
 
   static String getUniversalProperty(String propName, Object defaultValue) {
@@ -186,9 +173,6 @@ class Library {
    */
   static boolean waitForTcp(String host, final int port, final int tsec, final int stimeout = 4000) {
     def address
-    def socket
-    def now = System.currentTimeMillis()
-    def startTime = now
     try {
       if (host == "0.0.0.0") host = "127.0.0.1"
       if (host == "::") host = "::1"
@@ -198,30 +182,20 @@ class Library {
       return false
     }
     def socketAddr = new java.net.InetSocketAddress(address, port)
-    while (now - startTime < 1000 * tsec) {
-      try {
-        socket = new java.net.Socket()
-        socket.connect(socketAddr, stimeout)
-        socket.shutdownInput()
-        socket.shutdownOutput()
-        return true
-      } catch (IOException e) {
-        log.trace("waitForTcp: TAGOTAG: host:port - ${host}:${port} is not ready", e)
-      } finally {
-        socket?.close()
-      }
-      Library.letsSleep(1000)
-      now = new Date().getTime()
+    Map<InetSocketAddress, Long> open = TcpProbe.waitForOpen([socketAddr], 1000L * tsec, stimeout)
+    if (open.isEmpty()) {
+      log.trace("waitForTcp: TAGOTAG: host:port - ${host}:${port} is not ready")
+      // still port not ready, failing
+      return false
     }
-    // still port not ready, failing
-    return false
+    log.trace("waitForTcp: ${host}:${port} ready after ${open[socketAddr]} ms")
+    return true
   }
 
   /**
-   * Waits for port to be closed. If the method can write to a socket, the socket is still open by some process.
-   * If we get an IOException, it means socket is not open by another process. Note that this does not necessarily
-   * mean that port is available for further use; it can be reserved by the system to ensure all communication has
-   * ceased properly.
+   * Waits for port to be closed. If a connection to the port is refused, the port is not open by another process.
+   * Note that this does not necessarily mean that port is available for further use; it can be reserved by the system
+   * to ensure all communication has ceased properly.
    * @param host The hostname of the port, e.g. 127.0.0.1
    * @param port The port you want to check
    * @param tsec How long you want to wait for the whole check to finish, in seconds
@@ -230,9 +204,6 @@ class Library {
    */
   static boolean waitForTcpClosed(String host, int port, final int tsec, int stimeout = 4000) {
     InetAddress address
-    Socket socket
-    long now = System.currentTimeMillis()
-    long startTime = now
     try {
       address = InetAddress.getByName(host)
     } catch (UnknownHostException e) {
@@ -240,28 +211,13 @@ class Library {
       return false
     }
     InetSocketAddress socketAddr = new InetSocketAddress(address, port)
-    while (now - startTime < 1000 * tsec) {
-      try {
-        socket = new Socket()
-        socket.connect(socketAddr, stimeout)
-        socket.setSendBufferSize(1)
-        socket << 1
-        socket.shutdownInput()
-        socket.shutdownOutput()
-        log.debug("Socket apparently still available? :-( host: ${host}, port: ${port}, tsec: ${tsec}, stimeout: ${stimeout}")
-      } catch (IOException e) {
-        //port closed
-        log.trace("Returning true, closed.")
-        return true
-      } finally {
-        socket?.close()
-      }
-      Library.letsSleep(1000)
-      now = new Date().getTime()
+    Map<InetSocketAddress, Long> closed = TcpProbe.waitForClosed([socketAddr], 1000L * tsec, stimeout)
+    if (closed.isEmpty()) {
+      log.debug("Socket apparently still available? :-( host: ${host}, port: ${port}, tsec: ${tsec}, stimeout: ${stimeout}")
+      return false
     }
-    // still port opened
-    log.trace("Returning, still opened :-(")
-    return false
+    log.trace("Returning true, closed after ${closed[socketAddr]} ms.")
+    return true
   }
 
   static boolean waitForPortsAvailable(Map params) {
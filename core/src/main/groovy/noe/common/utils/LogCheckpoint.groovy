@@ -0,0 +1,75 @@
+package noe.common.utils
+
+import java.nio.file.Files
+import java.nio.file.attribute.BasicFileAttributes
+
+/**
+ * Positions (file key / inode and size) of log files at some moment, scans of logs since the checkpoint read only
+ * bytes appended after it.
+ *
+ * A file which was replaced (rotated, detected by its file key) or truncated below the recorded size since the
+ * checkpoint, or which did not exist at the checkpoint, is scanned from the beginning.
+ *
+ * @see noe.server.ServerAbstract#markLogs()
+ */
+class LogCheckpoint {
+
+  private final Map<String, Position> positions = [:]
+  final long time = System.currentTimeMillis()
+
+  private static class Position {
+    Object fileKey
+    long offset
+  }
+
+  /**
+   * Records current positions of the files, directories and non existing files are ignored
+   */
+  static LogCheckpoint mark(Collection<File> files) {
+    LogCheckpoint checkpoint = new LogCheckpoint()
+    files.each { File file ->
+      BasicFileAttributes attributes = attributes(file)
+      if (attributes != null && attributes.isRegularFile()) {
+        checkpoint.positions[key(file)] = new Position(fileKey: attributes.fileKey(), offset: attributes.size())
+      }
+    }
+    return checkpoint
+  }
+
+  /**
+   * @return offset in bytes the file should be scanned from, 0 if the file has to be scanned whole
+   */
+  long offsetOf(File file) {
+    Position position = positions[key(file)]
+    if (position == null) {
+      return 0
+    }
+    BasicFileAttributes attributes = attributes(file)
+    if (attributes == null || attributes.size() < position.offset ||
+        (position.fileKey != null && attributes.fileKey() != position.fileKey)) {
+      return 0
+    }
+    return position.offset
+  }
+
+  boolean contains(File file) {
+    return positions.containsKey(key(file))
+  }
+
+  private static BasicFileAttributes attributes(File file) {
+    try {
+      return Files.readAttributes(file.toPath(), BasicFileAttributes)
+    } catch (IOException ignored) {
+      return null
+    }
+  }
+
+  private static String key(File file) {
+    return file.getAbsoluteFile().toPath().normalize().toString()
+  }
+
+  @Override
+  String toString() {
+    return "LogCheckpoint(${new Date(time)}, ${positions.collect { path, position -> "${path}@${position.offset}" }.join(', ')})"
+  }
+}
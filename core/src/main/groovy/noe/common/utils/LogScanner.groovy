@@ -0,0 +1,180 @@
+package noe.common.utils
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import groovy.util.logging.Slf4j
+
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.charset.CodingErrorAction
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.regex.Pattern
+
+/**
+ * Scans log files for lines matching one compiled pattern.
+ *
+ * Every file is read once as a stream through a large buffer, the files are scanned in parallel by
+ * `log.scanner.threads` threads (number of processors up to 4 by default). Exclusion filters are combined into one
+ * pattern and are applied to the reported form of the line (`<absolute path of the file> <line>`) as
+ * {@code ServerAbstract.verifyLogs} always did. {@link #containsAny} stops all the scanning on the first matching line.
+ * With a {@link LogCheckpoint} only bytes appended after the checkpoint are scanned.
+ */
+@Slf4j
+class LogScanner {
+
+  private static final int BUFFER_SIZE = 1024 * 1024
+  private static final int THREADS = Integer.parseInt(Library.getUniversalProperty('log.scanner.threads',
+      String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors()))))
+  private static ExecutorService scanners
+
+  private final Pattern pattern
+  private final boolean wholeLine
+  private List<Pattern> exclusions = []
+  private LogCheckpoint checkpoint
+
+  /**
+   * @param pattern pattern to look for
+   * @param wholeLine whether the whole line has to match (as `==~` does) or a match anywhere in the line (as `=~` does) is enough
+   */
+  LogScanner(Pattern pattern, boolean wholeLine = false) {
+    this.pattern = pattern
+    this.wholeLine = wholeLine
+  }
+
+  /**
+   * Matching line of a file
+   */
+  static class Match {
+    final File file
+    final long lineNumber
+    final String line
+
+    Match(File file, long lineNumber, String line) {
+      this.file = file
+      this.lineNumber = lineNumber
+      this.line = line
+    }
+
+    @Override
+    String toString() {
+      return file.getAbsolutePath() + " " + line
+    }
+  }
+
+  /**
+   * Lines whose reported form contains a match of any of the filters are left out
+   */
+  LogScanner excluding(Collection filters) {
+    List<String> regexps = filters.collect { it.toString() }
+    if (regexps.isEmpty()) {
+      exclusions = []
+    } else if (regexps.any { it =~ /\\[1-9]/ }) {
+      // back references would be renumbered by combining
+      exclusions = regexps.collect { Pattern.compile(it) }
+    } else {
+      exclusions = [Pattern.compile(regexps.collect { "(?:${it})" }.join('|'))]
+    }
+    return this
+  }
+
+  /**
+   * Scans only bytes appended after the checkpoint, line numbers of matches are counted from the checkpoint then
+   *
+   * @param checkpoint null to scan whole files
+   */
+  LogScanner since(LogCheckpoint checkpoint) {
+    this.checkpoint = checkpoint
+    return this
+  }
+
+  /**
+   * @return all matching lines of all the files, in the order of the files
+   */
+  List<Match> findAll(Collection<File> files) {
+    List<Match> matches = []
+    scanAll(files, false).each { matches.addAll(it) }
+    return matches
+  }
+
+  /**
+   * @return true if any of the files has a matching line, scanning stops on the first one
+   */
+  boolean containsAny(Collection<File> files) {
+    return scanAll(files, true).any { !it.isEmpty() }
+  }
+
+  private List<List<Match>> scanAll(Collection<File> files, boolean firstOnly) {
+    AtomicBoolean found = new AtomicBoolean(false)
+    if (files.size() <= 1 || THREADS <= 1) {
+      return files.collect { scan(it, firstOnly, found) }
+    }
+    List<Future<List<Match>>> futures = files.collect { File file ->
+      getScanners().submit({ scan(file, firstOnly, found) } as Callable<List<Match>>)
+    }
+    return futures.collect { Future<List<Match>> future ->
+      try {
+        return future.get()
+      } catch (ExecutionException e) {
+        throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause())
+      }
+    }
+  }
+
+  private List<Match> scan(File file, boolean firstOnly, AtomicBoolean found) {
+    List<Match> matches = []
+    log.debug("Scanning log file {} for {}", file.getAbsolutePath(), pattern)
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+    try {
+      channel.position(checkpoint?.offsetOf(file) ?: 0L)
+      BufferedReader reader = new BufferedReader(Channels.newReader(channel, Charset.defaultCharset().newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE), BUFFER_SIZE)
+      String line
+      long lineNumber = 0
+      while ((line = reader.readLine()) != null) {
+        lineNumber++
+        if (firstOnly && found.get()) {
+          break
+        }
+        if (!(wholeLine ? pattern.matcher(line).matches() : pattern.matcher(line).find())) {
+          continue
+        }
+        Match match = new Match(file, lineNumber, line)
+        if (isExcluded(match)) {
+          log.debug("Filtered: ${match}")
+          continue
+        }
+        log.trace("Found: ${match}")
+        matches.add(match)
+        if (firstOnly) {
+          found.set(true)
+          break
+        }
+      }
+    } finally {
+      channel.close()
+    }
+    return matches
+  }
+
+  private boolean isExcluded(Match match) {
+    if (exclusions.isEmpty()) {
+      return false
+    }
+    String reported = match.toString()
+    return exclusions.any { it.matcher(reported).find() }
+  }
+
+  private static synchronized ExecutorService getScanners() {
+    if (scanners == null) {
+      scanners = Executors.newFixedThreadPool(THREADS, new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat('noe-log-scanner-%d').build())
+    }
+    return scanners
+  }
+}
@@ -0,0 +1,221 @@
+package noe.common.utils
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import groovy.util.logging.Slf4j
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.regex.Pattern
+
+/**
+ * Follows a growing (log) file and reads only newly appended lines.
+ *
+ * The tailer remembers byte offset in the file. When the file is replaced (rotation, detected by its file key / inode)
+ * or truncated below the offset, it starts again from the beginning. The file does not need to exist when the tailer
+ * is created. Lines are terminated by `\n`, `\r\n` is accepted as well; the last unterminated line is kept pending
+ * until it is completed but it is considered by {@link #await}.
+ *
+ * New lines could be waited for by {@link #await} or passed to listeners registered by {@link #onLine} either when
+ * {@link #poll()} is called or periodically after {@link #start()}.
+ */
+@Slf4j
+class LogTailer implements Closeable {
+
+  private static final long INTERVAL = Long.parseLong(Library.getUniversalProperty('log.tailer.interval', '100'))
+  private static final byte NEW_LINE = 10
+  private static ScheduledExecutorService followers
+
+  final File file
+  private final Charset charset = Charset.defaultCharset()
+  private final List<Closure> listeners = []
+  private final ByteArrayOutputStream pendingLine = new ByteArrayOutputStream()
+  private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024)
+  private long offset = 0
+  private Object fileKey
+  private ScheduledFuture following
+
+  LogTailer(File file) {
+    this.file = file
+  }
+
+  /**
+   * Starts tailing from the current end of the file, only lines appended from now on are read
+   */
+  static LogTailer fromEnd(File file) {
+    LogTailer tailer = new LogTailer(file)
+    BasicFileAttributes attributes = tailer.attributes()
+    if (attributes != null) {
+      tailer.offset = attributes.size()
+      tailer.fileKey = attributes.fileKey()
+    }
+    return tailer
+  }
+
+  /**
+   * Starts tailing from the position of the file recorded by the checkpoint, from the beginning if the file was
+   * not recorded or was rotated since then
+   */
+  static LogTailer since(File file, LogCheckpoint checkpoint) {
+    LogTailer tailer = new LogTailer(file)
+    BasicFileAttributes attributes = tailer.attributes()
+    if (checkpoint != null && attributes != null) {
+      tailer.offset = checkpoint.offsetOf(file)
+      tailer.fileKey = attributes.fileKey()
+    }
+    return tailer
+  }
+
+  /**
+   * Registers closure called with every new complete line
+   */
+  synchronized LogTailer onLine(Closure listener) {
+    listeners.add(listener)
+    return this
+  }
+
+  /**
+   * Polls the file every `log.tailer.interval` ms (100 by default) on a shared daemon thread until closed
+   */
+  synchronized LogTailer start() {
+    if (following == null) {
+      following = getFollowers().scheduleWithFixedDelay({
+        try {
+          poll()
+        } catch (Exception e) {
+          log.debug("Tailing of ${file} failed", e)
+        }
+      } as Runnable, 0, INTERVAL, TimeUnit.MILLISECONDS)
+    }
+    return this
+  }
+
+  @Override
+  synchronized void close() {
+    following?.cancel(false)
+    following = null
+  }
+
+  /**
+   * Reads lines appended since the last poll
+   *
+   * @return new complete lines
+   */
+  synchronized List<String> poll() {
+    List<String> lines = []
+    BasicFileAttributes attributes = attributes()
+    if (attributes == null) {
+      return lines
+    }
+    if ((fileKey != null && attributes.fileKey() != fileKey) || attributes.size() < offset) {
+      log.debug("File ${file} was rotated or truncated, reading it from the beginning")
+      offset = 0
+      pendingLine.reset()
+    }
+    fileKey = attributes.fileKey()
+    if (attributes.size() == offset) {
+      return lines
+    }
+
+    try {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+      try {
+        channel.position(offset)
+        buffer.clear()
+        int read
+        while ((read = channel.read(buffer)) > 0) {
+          byte[] bytes = buffer.array()
+          int lineStart = 0
+          for (int i = 0; i < read; i++) {
+            if (bytes[i] == NEW_LINE) {
+              pendingLine.write(bytes, lineStart, i - lineStart)
+              lines.add(takePendingLine())
+              lineStart = i + 1
+            }
+          }
+          pendingLine.write(bytes, lineStart, read - lineStart)
+          offset += read
+          buffer.clear()
+        }
+      } finally {
+        channel.close()
+      }
+    } catch (NoSuchFileException ignored) {
+      // rotated away in the meantime, the new one is read by the next poll
+    }
+
+    lines.each { String line ->
+      listeners.each { it.call(line) }
+    }
+    return lines
+  }
+
+  /**
+   * Waits until a newly read line matches (the whole line, as `==~` does) the regexp
+   *
+   * @param regexp String or Pattern
+   * @return true if the matching line was found before timeout
+   */
+  boolean await(regexp, long timeout, TimeUnit timeUnit = TimeUnit.MILLISECONDS) {
+    Pattern pattern = (regexp instanceof Pattern) ? (Pattern) regexp : Pattern.compile(regexp.toString())
+    long endTime = System.currentTimeMillis() + timeUnit.toMillis(timeout)
+    while (true) {
+      if (containsNew(pattern)) {
+        return true
+      }
+      if (System.currentTimeMillis() >= endTime) {
+        return false
+      }
+      sleep(Math.max(1L, Math.min(INTERVAL, endTime - System.currentTimeMillis())))
+    }
+  }
+
+  /**
+   * Checks lines appended since the last poll and the pending unterminated line
+   */
+  synchronized boolean containsNew(Pattern pattern) {
+    String matching = poll().find { pattern.matcher(it).matches() }
+    if (matching == null && pendingLine.size() > 0 && pattern.matcher(stripCarriageReturn(pendingLine.toString(charset.name()))).matches()) {
+      matching = pendingLine.toString(charset.name())
+    }
+    if (matching != null) {
+      log.debug("Found matching line: ${matching} in ${file.absolutePath}")
+      return true
+    }
+    return false
+  }
+
+  private String takePendingLine() {
+    String line = stripCarriageReturn(pendingLine.toString(charset.name()))
+    pendingLine.reset()
+    return line
+  }
+
+  private static String stripCarriageReturn(String line) {
+    return line.endsWith('\r') ? line.substring(0, line.length() - 1) : line
+  }
+
+  private BasicFileAttributes attributes() {
+    try {
+      return Files.readAttributes(file.toPath(), BasicFileAttributes)
+    } catch (IOException ignored) {
+      return null
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getFollowers() {
+    if (followers == null) {
+      followers = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat('noe-log-tailer').build())
+    }
+    return followers
+  }
+}
@@ -0,0 +1,133 @@
+package noe.common.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads lines of a (possibly huge) file with memory use independent of the file size.
+ *
+ * The file is memory mapped in regions of 64 MB and decoded to one reusable {@link CharBuffer}, lines are passed to the
+ * handler in one reusable {@link StringBuilder} (the handler must not keep it). Lines are terminated by `\n`, `\r\n`
+ * or `\r`. On Windows the file is read to a reusable buffer instead of mapping, mapped files can't be deleted there
+ * until the mapping is garbage collected.
+ */
+public final class MappedLineReader {
+
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final boolean MAP = !System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    /**
+     * Handler of lines
+     */
+    public interface LineHandler {
+        /**
+         * @param line content of the line without the terminator, valid only during the call
+         * @param lineNumber number of the line, the first line read has number 1
+         * @return false to stop reading
+         */
+        boolean handle(CharSequence line, long lineNumber);
+    }
+
+    private final LineHandler handler;
+    private final StringBuilder line = new StringBuilder();
+    private long lineNumber = 0;
+    private boolean pendingCarriageReturn = false;
+
+    private MappedLineReader(LineHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Passes lines of the file starting at the byte offset to the handler until it returns false
+     *
+     * @return false if reading was stopped by the handler
+     */
+    public static boolean forEachLine(File file, long offset, Charset charset, LineHandler handler) throws IOException {
+        return new MappedLineReader(handler).read(file, offset, charset);
+    }
+
+    private boolean read(File file, long offset, Charset charset) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer readBuffer = MAP ? null : ByteBuffer.allocate(BUFFER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = offset;
+            while (position < size) {
+                ByteBuffer bytes;
+                if (MAP) {
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position));
+                } else {
+                    readBuffer.clear();
+                    if (channel.read(readBuffer, position) < 0) {
+                        break;
+                    }
+                    readBuffer.flip();
+                    bytes = readBuffer;
+                }
+                int start = bytes.position();
+                boolean endOfInput = position + bytes.remaining() >= size;
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, endOfInput);
+                    if (!drain(chars)) {
+                        return false;
+                    }
+                } while (result.isOverflow());
+                if (bytes.position() == start) {
+                    // nothing could be decoded, the rest of the file is an incomplete character
+                    break;
+                }
+                position += bytes.position() - start;
+            }
+            // the decoder has to see the end of input before flushing, also when nothing was read (empty file, offset at the end)
+            decoder.decode(ByteBuffer.allocate(0), chars, true);
+            decoder.flush(chars);
+            if (!drain(chars)) {
+                return false;
+            }
+        }
+        if (line.length() > 0) {
+            return handler.handle(line, ++lineNumber);
+        }
+        return true;
+    }
+
+    private boolean drain(CharBuffer chars) {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                pendingCarriageReturn = (c == '\r');
+                boolean proceed = handler.handle(line, ++lineNumber);
+                line.setLength(0);
+                if (!proceed) {
+                    chars.clear();
+                    return false;
+                }
+            } else {
+                line.append(c);
+            }
+        }
+        chars.clear();
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+package noe.common.utils
+
+import groovy.util.logging.Slf4j
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+/**
+ * In-JVM index of command lines of running processes read from `/proc/[pid]/cmdline` (Linux only).
+ *
+ * The index is updated incrementally, command lines are read just for processes which were not seen yet.
+ * Every match found in the index is verified against actual `/proc` content (the process could have exited
+ * or exec'd in the meantime) and when nothing matches, the whole index is rebuilt and searched again.
+ * No process is forked.
+ */
+@Slf4j
+class ProcessCommandLines {
+
+  private static final File PROC = new File('/proc')
+  private static final Platform platform = new Platform()
+  private static final Map<Long, String> index = new TreeMap<Long, String>()
+
+  private ProcessCommandLines() {}
+
+  static boolean isAvailable() {
+    return platform.isLinux() && new File(PROC, 'self/cmdline').canRead()
+  }
+
+  /**
+   * Finds processes which command line satisfies the condition
+   *
+   * @param condition closure taking command line as parameter
+   * @return pids of matching processes in ascending order
+   */
+  static synchronized List<Long> findPids(Closure<Boolean> condition) {
+    update(false)
+    List<Long> pids = verified(index.findAll { pid, cmdline -> condition(cmdline) }.keySet(), condition)
+    if (pids.isEmpty()) {
+      update(true)
+      pids = verified(index.findAll { pid, cmdline -> condition(cmdline) }.keySet(), condition)
+    }
+    return pids
+  }
+
+  /**
+   * Descendants of the process (children, grandchildren, ...) in ascending order of pid
+   */
+  static synchronized List<Long> findDescendants(long pid) {
+    update(false)
+    Map<Long, Long> parents = [:]
+    index.keySet().each { Long candidate ->
+      Long parent = readParentPid(candidate)
+      if (parent != null) {
+        parents[candidate] = parent
+      }
+    }
+
+    Set<Long> descendants = new TreeSet<Long>()
+    Set<Long> toCheck = [pid] as Set<Long>
+    while (!toCheck.isEmpty()) {
+      Set<Long> children = parents.findAll { child, parent -> toCheck.contains(parent) && !descendants.contains(child) }.keySet()
+      descendants.addAll(children)
+      toCheck = new HashSet<Long>(children)
+    }
+    return new ArrayList<Long>(descendants)
+  }
+
+  /**
+   * @return command line with arguments separated by spaces or null if the process does not exist
+   */
+  static String readCmdline(long pid) {
+    try {
+      byte[] content = Files.readAllBytes(new File(PROC, "${pid}/cmdline").toPath())
+      return new String(content, StandardCharsets.UTF_8).replace('\0' as char, ' ' as char).trim()
+    } catch (IOException ignored) {
+      return null
+    }
+  }
+
+  private static Long readParentPid(long pid) {
+    try {
+      String stat = new String(Files.readAllBytes(new File(PROC, "${pid}/stat").toPath()), StandardCharsets.UTF_8)
+      // pid (comm) state ppid ..., comm could contain spaces and parentheses
+      return Long.parseLong(stat.substring(stat.lastIndexOf(')') + 2).split(' ')[1])
+    } catch (IOException | RuntimeException ignored) {
+      return null
+    }
+  }
+
+  private static List<Long> verified(Collection<Long> pids, Closure<Boolean> condition) {
+    List<Long> matching = new ArrayList<Long>(pids).findAll { Long pid ->
+      String cmdline = readCmdline(pid)
+      if (cmdline == null) {
+        index.remove(pid)
+        return false
+      }
+      index[pid] = cmdline
+      return condition(cmdline)
+    }
+    Collections.sort(matching)
+    return matching
+  }
+
+  private static void update(boolean rebuild) {
+    Set<Long> running = new HashSet<Long>()
+    PROC.list()?.each { String name ->
+      if (name.isLong()) {
+        running.add(name.toLong())
+      }
+    }
+    index.keySet().retainAll(running)
+    running.each { Long pid ->
+      if (rebuild || !index.containsKey(pid)) {
+        String cmdline = readCmdline(pid)
+        if (cmdline != null) {
+          index[pid] = cmdline
+        }
+      }
+    }
+    log.trace("Process command line index updated (rebuild: {}), {} processes", rebuild, index.size())
+  }
+}
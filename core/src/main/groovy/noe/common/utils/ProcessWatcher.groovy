@@ -0,0 +1,145 @@
+package noe.common.utils
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import groovy.util.logging.Slf4j
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * Watching for processes to exit without forking `ps` for every check.
+ *
+ * On Linux process existence is checked by presence of `/proc/[pid]` which costs one stat call.
+ * On other platforms one snapshot of process list ({@link Cmd#getPidList()}) is taken per check
+ * interval and shared by all the watched processes and all the callers.
+ *
+ * All watched processes are checked by one daemon thread, callers get a future which is completed when
+ * the process disappears from the system, see {@link #onExit(long)} and {@link #waitForExit}. Every caller gets its
+ * own future, a cancelled one is not watched any more.
+ */
+@Slf4j
+class ProcessWatcher {
+
+  private static final Platform platform = new Platform()
+  private static final File PROC = new File('/proc')
+  // how often are watched processes checked, in ms
+  private static final long CHECK_INTERVAL = Long.parseLong(Library.getUniversalProperty('process.watcher.interval', '50'))
+
+  private static final Map<Long, Set<CompletableFuture<Long>>> watched = new ConcurrentHashMap<Long, Set<CompletableFuture<Long>>>()
+  private static ScheduledExecutorService checker
+  private static Set<Long> snapshot = Collections.emptySet()
+  private static long snapshotTime = 0
+
+  private ProcessWatcher() {}
+
+  /**
+   * Check if process exists in the system
+   */
+  static boolean isAlive(long pid) {
+    if (isProcAvailable()) {
+      return new File(PROC, String.valueOf(pid)).exists()
+    }
+    return getSnapshot(false).contains(pid)
+  }
+
+  /**
+   * Returns those of pids which exist in the system, at most one process listing is done for all of them
+   */
+  static Set<Long> aliveOf(Collection pids) {
+    Set<Long> requested = toPids(pids)
+    if (isProcAvailable()) {
+      return requested.findAll { isAlive(it) } as Set<Long>
+    }
+    return requested.intersect(getSnapshot(false)) as Set<Long>
+  }
+
+  /**
+   * Future which is completed with the pid when the process is not present in the system anymore,
+   * cancel it when the exit is not awaited any more
+   */
+  static synchronized CompletableFuture<Long> onExit(long pid) {
+    CompletableFuture<Long> future = new CompletableFuture<Long>()
+    Set<CompletableFuture<Long>> futures = watched.get(pid)
+    if (futures == null) {
+      futures = ConcurrentHashMap.newKeySet()
+      watched.put(pid, futures)
+    }
+    futures.add(future)
+    if (checker == null) {
+      checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat('noe-process-watcher').build())
+      checker.scheduleWithFixedDelay({ check() } as Runnable, 0, CHECK_INTERVAL, TimeUnit.MILLISECONDS)
+    }
+    return future
+  }
+
+  /**
+   * Waits until none of the pids exists in the system
+   *
+   * @return true if all the processes exited before timeout, false otherwise
+   */
+  static boolean waitForExit(Collection pids, long timeout, TimeUnit timeUnit) {
+    List<CompletableFuture<Long>> futures = toPids(pids).collect { onExit(it) }
+    try {
+      CompletableFuture.allOf(futures as CompletableFuture[]).get(timeout, timeUnit)
+      return true
+    } catch (TimeoutException ignored) {
+      futures.each { it.cancel(false) }
+      pruneCancelled()
+      return false
+    }
+  }
+
+  private static void check() {
+    if (watched.isEmpty()) {
+      return
+    }
+    try {
+      pruneCancelled()
+      // the same pids are checked and completed, pids registered meanwhile wait for the next check
+      Set<Long> pids = new HashSet<Long>(watched.keySet())
+      Set<Long> alive = isProcAvailable() ? aliveOf(pids) : pids.intersect(getSnapshot(true)) as Set<Long>
+      pids.each { Long pid ->
+        if (!alive.contains(pid)) {
+          log.trace("Process {} exited", pid)
+          exited(pid)?.each { it.complete(pid) }
+        }
+      }
+    } catch (Exception e) {
+      log.debug("Checking of watched processes ${watched.keySet()} failed", e)
+    }
+  }
+
+  private static synchronized Set<CompletableFuture<Long>> exited(long pid) {
+    return watched.remove(pid)
+  }
+
+  private static synchronized void pruneCancelled() {
+    watched.values().each { Set<CompletableFuture<Long>> futures -> futures.removeAll { it.isCancelled() } }
+    watched.values().removeAll { it.isEmpty() }
+  }
+
+  /**
+   * Shared process list snapshot, it is refreshed at most once per check interval unless forced
+   */
+  private static synchronized Set<Long> getSnapshot(boolean refresh) {
+    long now = System.currentTimeMillis()
+    if (refresh || now - snapshotTime > CHECK_INTERVAL) {
+      snapshot = new HashSet<Long>(Cmd.getPidList())
+      snapshotTime = now
+    }
+    return snapshot
+  }
+
+  private static boolean isProcAvailable() {
+    return platform.isLinux() && PROC.isDirectory()
+  }
+
+  private static Set<Long> toPids(Collection pids) {
+    return pids.findAll { it != null }.collect { it as Long } as Set<Long>
+  }
+}
@@ -0,0 +1,235 @@
+package noe.common.utils
+
+import com.google.common.util.concurrent.RateLimiter
+import groovy.util.logging.Slf4j
+import noe.common.DefaultProperties
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Archive of logs and configuration of servers after a test, stored to `target/jboss-reports/<kind>/<test name>`.
+ *
+ * Files are streamed in-process, {@link #copy} could be called by several threads at once. Format 'dir' keeps the
+ * directory layout copying with {@link JBFile#copy} always produced, format 'zip' stores everything into one zip
+ * `<test name>.zip` (entries are written one at a time). With skipping of unchanged files, a file is left out if it has
+ * not changed since it was archived last time (size and modification time) or a log with nothing appended since the
+ * log checkpoint, left out files are listed in `unchanged-files.txt` of the archive. Reading of all archives together
+ * is capped by `archive.bandwidth.limit`.
+ *
+ * @see DefaultProperties#ARCHIVE_FORMAT
+ */
+@Slf4j
+class ReportArchive implements Closeable {
+
+  static final String FORMAT_DIR = 'dir'
+  static final String FORMAT_ZIP = 'zip'
+  static final String LOGS = 'logs-archive'
+  static final String CONFS = 'confs-archive'
+  static final String UNCHANGED_LIST = 'unchanged-files.txt'
+
+  private static final int BUFFER_SIZE = 64 * 1024
+  private static final RateLimiter throttle = (DefaultProperties.ARCHIVE_BANDWIDTH_LIMIT > 0) ?
+      RateLimiter.create(DefaultProperties.ARCHIVE_BANDWIDTH_LIMIT * 1024d * 1024d) : null
+  // absolute path -> state of the file when it was archived last time
+  private static final Map<String, Archived> archived = new ConcurrentHashMap<String, Archived>()
+
+  final File target
+  final String format
+  private final boolean skipUnchanged
+  private final Platform platform = new Platform()
+  private final ZipOutputStream zip
+  private final Set<String> zipEntries = new HashSet<String>()
+  private final List<String> unchanged = Collections.synchronizedList(new ArrayList<String>())
+
+  private static class Archived {
+    long size
+    long lastModified
+    String location
+  }
+
+  /**
+   * @param location directory of the archive, for format 'zip' the archive is `<location>.zip`
+   */
+  ReportArchive(File location, String format = DefaultProperties.ARCHIVE_FORMAT, boolean skipUnchanged = DefaultProperties.ARCHIVE_SKIP_UNCHANGED) {
+    this.format = format
+    this.skipUnchanged = skipUnchanged
+    if (format == FORMAT_ZIP) {
+      target = freeZipFile(location)
+      target.getParentFile().mkdirs()
+      zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE))
+      // archiving should not hold the tests up, logs compress well anyway
+      zip.setLevel(Deflater.BEST_SPEED)
+    } else if (format == FORMAT_DIR) {
+      target = location
+      zip = null
+    } else {
+      throw new IllegalArgumentException("Unknown archive format ${format}, expected ${FORMAT_DIR} or ${FORMAT_ZIP}")
+    }
+    log.debug("Archiving to ${target.absolutePath}")
+  }
+
+  /**
+   * @param kind {@link #LOGS} or {@link #CONFS}
+   */
+  static ReportArchive forTest(String kind, String testName) {
+    String s = File.separator
+    return new ReportArchive(new File(Library.getRootPath(), "target${s}jboss-reports${s}${kind}${s}${testName}"))
+  }
+
+  /**
+   * Copies the file or directory into the directory of the archive as {@link JBFile#copy} does
+   *
+   * @param source file or directory to archive, nothing is done if it does not exist
+   * @param destDir directory relative to the archive, separated by / or platform separator
+   * @param checkpoint logs with nothing appended since the checkpoint are unchanged
+   */
+  void copy(File source, String destDir, LogCheckpoint checkpoint = null) {
+    String entry = entryPath(destDir, source.name)
+    if (source.isDirectory()) {
+      File[] children = source.listFiles()
+      if (children == null) {
+        copyUnreadable(source, entry)
+      } else {
+        if (format == FORMAT_DIR) {
+          new File(target, entry).mkdirs()
+        }
+        children.each { File child -> copy(child, entry, checkpoint) }
+      }
+    } else if (source.exists()) {
+      copyFile(source, entry, checkpoint)
+    } else {
+      log.trace("Nothing to archive, ${source.absolutePath} does not exist")
+    }
+  }
+
+  /**
+   * Writes the list of unchanged files and finishes the archive
+   */
+  @Override
+  void close() {
+    if (!unchanged.isEmpty()) {
+      List<String> lines = new ArrayList<String>(unchanged)
+      Collections.sort(lines)
+      byte[] list = (lines.join(platform.nl) + platform.nl).getBytes('UTF-8')
+      if (format == FORMAT_ZIP) {
+        synchronized (zip) {
+          zip.putNextEntry(new ZipEntry(UNCHANGED_LIST))
+          zip.write(list)
+          zip.closeEntry()
+        }
+      } else {
+        target.mkdirs()
+        new File(target, UNCHANGED_LIST).setBytes(list)
+      }
+    }
+    zip?.close()
+    log.debug("Archive ${target.absolutePath} done, ${unchanged.size()} unchanged file(s) left out")
+  }
+
+  private void copyFile(File file, String entry, LogCheckpoint checkpoint) {
+    long size = file.length()
+    long lastModified = file.lastModified()
+    if (skipUnchanged) {
+      String reason = unchangedReason(file, size, lastModified, checkpoint)
+      if (reason != null) {
+        log.trace("Not archiving ${file.absolutePath}, it ${reason}")
+        unchanged.add("${entry} ${reason}".toString())
+        return
+      }
+    }
+
+    try {
+      if (!file.canRead()) {
+        copyUnreadable(file, entry)
+      } else if (format == FORMAT_ZIP) {
+        synchronized (zip) {
+          if (putEntry(entry, lastModified)) {
+            file.withInputStream { InputStream input -> stream(input, zip) }
+            zip.closeEntry()
+          }
+        }
+      } else {
+        File destination = new File(target, entry)
+        destination.getParentFile().mkdirs()
+        destination.withOutputStream { OutputStream output ->
+          file.withInputStream { InputStream input -> stream(input, output) }
+        }
+        destination.setLastModified(lastModified)
+      }
+      archived[file.absolutePath] = new Archived(size: size, lastModified: lastModified, location: "${target.path}:${entry}")
+    } catch (IOException e) {
+      log.warn("Archiving of ${file.absolutePath} failed: ${e.message}")
+    }
+  }
+
+  /**
+   * Files not readable by the current user (server run with sudo) are copied with sudo
+   */
+  private void copyUnreadable(File file, String entry) {
+    if (format == FORMAT_DIR) {
+      File destDir = new File(target, entry).getParentFile()
+      JBFile.copy(file, destDir, true)
+      if (JBFile.useAdminPrivileges) {
+        JBFile.makeAccessible(destDir)
+      }
+    } else if (file.isFile() && JBFile.useAdminPrivileges && !platform.isWindows()) {
+      synchronized (zip) {
+        if (putEntry(entry, file.lastModified())) {
+          Cmd.executeCommandRedirectIO(['sudo', 'cat', file.absolutePath], null, null, zip, System.err)
+          zip.closeEntry()
+        }
+      }
+    } else {
+      log.warn("Unable to archive ${file.absolutePath}, it is not readable")
+    }
+  }
+
+  private boolean putEntry(String entry, long lastModified) {
+    if (!zipEntries.add(entry)) {
+      log.debug("${entry} is archived already")
+      return false
+    }
+    ZipEntry zipEntry = new ZipEntry(entry)
+    zipEntry.setTime(lastModified)
+    zip.putNextEntry(zipEntry)
+    return true
+  }
+
+  private static String unchangedReason(File file, long size, long lastModified, LogCheckpoint checkpoint) {
+    if (checkpoint != null && checkpoint.contains(file) && checkpoint.offsetOf(file) == size) {
+      return 'has nothing appended since the log checkpoint'
+    }
+    Archived previous = archived[file.absolutePath]
+    if (previous != null && previous.size == size && previous.lastModified == lastModified) {
+      return "is unchanged since archived to ${previous.location}"
+    }
+    return null
+  }
+
+  private static void stream(InputStream input, OutputStream output) {
+    byte[] buffer = new byte[BUFFER_SIZE]
+    int read
+    while ((read = input.read(buffer)) > 0) {
+      throttle?.acquire(read)
+      output.write(buffer, 0, read)
+    }
+  }
+
+  private static String entryPath(String dir, String name) {
+    List<String> segments = (dir.split(/[\/\\]/) as List<String>).findAll { !it.isEmpty() }
+    segments.add(name)
+    return segments.join('/')
+  }
+
+  private static File freeZipFile(File location) {
+    File zipFile = new File(location.path + '.zip')
+    // the same test archived again (another archiving call or rerun) must not overwrite the previous archive
+    for (int i = 1; zipFile.exists(); i++) {
+      zipFile = new File("${location.path}-${i}.zip")
+    }
+    return zipFile
+  }
+}
@@ -0,0 +1,151 @@
+package noe.common.utils
+
+import groovy.util.logging.Slf4j
+
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.SocketChannel
+
+/**
+ * Readiness probe watching any number of TCP addresses at once.
+ *
+ * Connections are attempted by non-blocking NIO connects on one selector. Failed attempts are repeated with exponential
+ * backoff starting at `tcp.probe.interval.initial` ms (20 by default) up to `tcp.probe.interval.max` ms (1000 by default,
+ * scaled by `machine.speed.factor` as {@link Library#letsSleep} is), so a port opened shortly after the probe started
+ * is detected within tens of milliseconds.
+ *
+ * Results are maps of addresses which reached the requested state to milliseconds it took since the probe started.
+ */
+@Slf4j
+class TcpProbe {
+
+  private static final long INITIAL_INTERVAL = Long.parseLong(Library.getUniversalProperty('tcp.probe.interval.initial', '20'))
+  private static final long MAX_INTERVAL = (long) (Long.parseLong(Library.getUniversalProperty('tcp.probe.interval.max', '1000')) *
+      Double.valueOf(Library.getUniversalProperty('machine.speed.factor', '1')))
+
+  private TcpProbe() {}
+
+  /**
+   * Waits until the addresses accept connections
+   *
+   * @param timeout how long to wait for all the addresses, in ms
+   * @param connectTimeout how long to wait for one connection attempt, in ms
+   * @return addresses which are open mapped to time in ms they took to open
+   */
+  static Map<InetSocketAddress, Long> waitForOpen(Collection<InetSocketAddress> addresses, long timeout, long connectTimeout = 4000) {
+    return probe(addresses, timeout, connectTimeout, true)
+  }
+
+  /**
+   * Waits until the addresses refuse connections (or do not respond within the connect timeout)
+   *
+   * @param timeout how long to wait for all the addresses, in ms
+   * @param connectTimeout how long to wait for one connection attempt, in ms
+   * @return addresses which are closed mapped to time in ms they took to close
+   */
+  static Map<InetSocketAddress, Long> waitForClosed(Collection<InetSocketAddress> addresses, long timeout, long connectTimeout = 4000) {
+    return probe(addresses, timeout, connectTimeout, false)
+  }
+
+  private static Map<InetSocketAddress, Long> probe(Collection<InetSocketAddress> addresses, long timeout, long connectTimeout, boolean open) {
+    long startTime = System.currentTimeMillis()
+    long deadline = startTime + timeout
+    Map<InetSocketAddress, Long> done = new LinkedHashMap<InetSocketAddress, Long>()
+    List<Attempt> waiting = addresses.unique(false).collect { new Attempt(address: it, nextTry: startTime) }
+    Selector selector = Selector.open()
+    try {
+      while (!waiting.isEmpty()) {
+        long now = System.currentTimeMillis()
+        waiting.findAll { it.channel == null && it.nextTry <= now }.each { it.connect(selector, now + connectTimeout) }
+
+        // connections refused right away or connected immediately (typical for loopback)
+        selector.selectNow()
+        handleSelected(selector)
+        now = System.currentTimeMillis()
+        waiting.findAll { it.channel != null && it.result == null && it.connectDeadline <= now }.each { it.finish(Boolean.FALSE) }
+
+        waiting.findAll { it.result != null }.each { Attempt attempt ->
+          if (attempt.result == open) {
+            done[attempt.address] = now - startTime
+            log.trace("TcpProbe: ${attempt.address} is ${open ? 'open' : 'closed'} after ${now - startTime} ms")
+            waiting.remove(attempt)
+          } else {
+            attempt.retry(now)
+          }
+        }
+
+        if (waiting.isEmpty() || now >= deadline) {
+          break
+        }
+        long wakeUp = (waiting.collect { it.channel != null ? it.connectDeadline : it.nextTry } + [deadline]).min()
+        if (wakeUp > now) {
+          selector.select(wakeUp - now)
+        }
+      }
+    } finally {
+      waiting.each { it.close() }
+      selector.close()
+    }
+    return done
+  }
+
+  private static void handleSelected(Selector selector) {
+    selector.selectedKeys().each { SelectionKey key ->
+      Attempt attempt = (Attempt) key.attachment()
+      try {
+        attempt.finish(((SocketChannel) key.channel()).finishConnect())
+      } catch (IOException e) {
+        log.trace("TcpProbe: ${attempt.address} refused: ${e.message}")
+        attempt.finish(Boolean.FALSE)
+      }
+    }
+    selector.selectedKeys().clear()
+  }
+
+  private static class Attempt {
+    InetSocketAddress address
+    SocketChannel channel
+    long nextTry
+    long connectDeadline
+    long interval = INITIAL_INTERVAL
+    // null while the attempt is in progress, true when connected, false when refused or timed out
+    Boolean result
+
+    void connect(Selector selector, long deadline) {
+      result = null
+      connectDeadline = deadline
+      try {
+        channel = SocketChannel.open()
+        channel.configureBlocking(false)
+        if (channel.connect(address)) {
+          finish(Boolean.TRUE)
+        } else {
+          channel.register(selector, SelectionKey.OP_CONNECT, this)
+        }
+      } catch (IOException e) {
+        log.trace("TcpProbe: ${address} refused: ${e.message}")
+        finish(Boolean.FALSE)
+      }
+    }
+
+    void finish(Boolean connected) {
+      result = connected
+      close()
+    }
+
+    void retry(long now) {
+      result = null
+      nextTry = now + interval
+      interval = Math.min(interval * 2, Math.max(MAX_INTERVAL, INITIAL_INTERVAL))
+    }
+
+    void close() {
+      try {
+        channel?.close()
+      } catch (IOException ignored) {
+        // nothing to do
+      }
+      channel = null
+    }
+  }
+}
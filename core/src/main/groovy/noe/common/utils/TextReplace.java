@@ -0,0 +1,483 @@
+package noe.common.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process text replace engine used by {@link JBFile#replaceregexp} and {@link JBFile#replace}.
+ *
+ * Files are processed as a stream (line by line or in chunks), the result is written to a temporary file which
+ * replaces the original by an atomic rename. Permissions, owner and group of the original file are kept. When the
+ * file could not be replaced by rename (directory is not writable or the owner could not be kept), the content is
+ * written to the original file in place. Nothing is written when there is nothing to replace.
+ * Characters which could not be decoded or encoded in the given encoding are replaced as AntBuilder tasks do
+ * (e.g. Latin-1 bytes in a UTF-8 file), they do not fail the replace.
+ *
+ * Files which are not accessible to the current user are processed by {@link #privileged()}, a helper JVM started
+ * once under sudo which serves all further requests over its standard input and output.
+ *
+ * The class depends on JDK only, it is the main class of the privileged helper.
+ */
+public final class TextReplace {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String OP_REGEXP = "regexp";
+    private static final String OP_TOKEN = "token";
+    private static final String OP_WRITE = "write";
+
+    private static PrivilegedHelper privilegedHelper;
+
+    private TextReplace() {
+    }
+
+    /**
+     * Replaces the first match of the regular expression, the first match on every line when byline is set.
+     * Replacement refers to groups as {@code \1} the same way as {@code AntBuilder.replaceregexp} does.
+     *
+     * @return number of replaced matches
+     */
+    public static int replaceRegexp(File file, String match, String replace, boolean byline, String encoding) throws IOException {
+        Pattern pattern = Pattern.compile(match);
+        String replacement = toMatcherReplacement(replace);
+        Charset charset = Charset.forName(encoding);
+        Path source = file.toPath();
+        Path temp = createTemp(source);
+        try {
+            int count;
+            try (BufferedReader reader = newReader(source, charset);
+                 Writer writer = newWriter(temp, charset)) {
+                count = replaceRegexp(reader, writer, pattern, replacement, byline);
+            }
+            if (count > 0) {
+                commit(temp, source);
+            }
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The same as {@link #replaceRegexp(File, String, String, boolean, String)} applied to text in memory
+     *
+     * @return number of replaced matches
+     */
+    public static int replaceRegexp(StringBuilder text, String match, String replace, boolean byline) {
+        StringWriter writer = new StringWriter(text.length());
+        try {
+            int count = replaceRegexp(new BufferedReader(new StringReader(text.toString())), writer, Pattern.compile(match), toMatcherReplacement(replace), byline);
+            if (count > 0) {
+                text.setLength(0);
+                text.append(writer.getBuffer());
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected failure of in memory replace", e);
+        }
+    }
+
+    private static int replaceRegexp(BufferedReader reader, Writer writer, Pattern pattern, String replacement, boolean byline) throws IOException {
+        int count = 0;
+        if (byline) {
+            StringBuilder line = new StringBuilder();
+            String terminator;
+            do {
+                line.setLength(0);
+                terminator = readLine(reader, line);
+                if (terminator != null || line.length() > 0) {
+                    count += replaceFirst(pattern, replacement, line, writer);
+                }
+                if (terminator != null) {
+                    writer.write(terminator);
+                }
+            } while (terminator != null);
+        } else {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                text.append(buffer, 0, read);
+            }
+            count += replaceFirst(pattern, replacement, text, writer);
+        }
+        return count;
+    }
+
+    /**
+     * Replaces all occurrences of the token, the same way as {@code AntBuilder.replace} does.
+     *
+     * @return number of replaced occurrences
+     */
+    public static int replace(File file, String token, String value, String encoding) throws IOException {
+        Charset charset = Charset.forName(encoding);
+        Path source = file.toPath();
+        Path temp = createTemp(source);
+        try {
+            int count;
+            try (Reader reader = newReader(source, charset);
+                 Writer writer = newWriter(temp, charset)) {
+                count = replace(reader, writer, token, value);
+            }
+            if (count > 0) {
+                commit(temp, source);
+            }
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The same as {@link #replace(File, String, String, String)} applied to text in memory
+     *
+     * @return number of replaced occurrences
+     */
+    public static int replace(StringBuilder text, String token, String value) {
+        StringWriter writer = new StringWriter(text.length());
+        try {
+            int count = replace(new StringReader(text.toString()), writer, token, value);
+            if (count > 0) {
+                text.setLength(0);
+                text.append(writer.getBuffer());
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected failure of in memory replace", e);
+        }
+    }
+
+    private static int replace(Reader reader, Writer writer, String token, String value) throws IOException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("Token to replace must not be empty");
+        }
+        int count = 0;
+        StringBuilder window = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            window.append(buffer, 0, read);
+            int from = 0;
+            int index;
+            while ((index = window.indexOf(token, from)) >= 0) {
+                writer.append(window, from, index).write(value);
+                count++;
+                from = index + token.length();
+            }
+            // the end of the window could be a beginning of the token continuing in the next chunk
+            int keep = Math.max(from, window.length() - token.length() + 1);
+            writer.append(window, from, keep);
+            window.delete(0, keep);
+        }
+        writer.append(window);
+        return count;
+    }
+
+    /**
+     * Replaces content of the file by the text, atomically the same way as replaces do
+     */
+    public static void write(File file, String text, String encoding) throws IOException {
+        Path source = file.toPath();
+        Path temp = createTemp(source);
+        try {
+            try (Writer writer = newWriter(temp, Charset.forName(encoding))) {
+                writer.write(text);
+            }
+            commit(temp, source);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static BufferedReader newReader(Path path, Charset charset) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)), BUFFER_SIZE);
+    }
+
+    private static Writer newWriter(Path path, Charset charset) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)), BUFFER_SIZE);
+    }
+
+    /**
+     * Helper JVM running under sudo, started on the first use and kept until this JVM exits
+     */
+    public static synchronized PrivilegedHelper privileged() {
+        if (privilegedHelper == null) {
+            privilegedHelper = new PrivilegedHelper();
+        }
+        return privilegedHelper;
+    }
+
+    /**
+     * Serves replace requests of {@link PrivilegedHelper} read from standard input until it is closed
+     */
+    public static void main(String[] args) throws IOException {
+        DataInputStream input = new DataInputStream(System.in);
+        DataOutputStream output = new DataOutputStream(System.out);
+        while (true) {
+            String operation;
+            try {
+                operation = readString(input);
+            } catch (EOFException e) {
+                return;
+            }
+            File file = new File(readString(input));
+            String match = readString(input);
+            String replace = readString(input);
+            boolean byline = input.readBoolean();
+            String encoding = readString(input);
+            try {
+                int count;
+                if (OP_REGEXP.equals(operation)) {
+                    count = replaceRegexp(file, match, replace, byline, encoding);
+                } else if (OP_TOKEN.equals(operation)) {
+                    count = replace(file, match, replace, encoding);
+                } else {
+                    write(file, match, encoding);
+                    count = 0;
+                }
+                output.writeInt(count);
+            } catch (Exception e) {
+                output.writeInt(-1);
+                writeString(output, e.toString());
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Client of the helper JVM, requests are served one by one
+     */
+    public static final class PrivilegedHelper {
+        private Process process;
+        private DataOutputStream requests;
+        private DataInputStream responses;
+
+        private PrivilegedHelper() {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "noe-text-replace-helper-stop"));
+        }
+
+        public int replaceRegexp(File file, String match, String replace, boolean byline, String encoding) throws IOException {
+            return request(OP_REGEXP, file, match, replace, byline, encoding);
+        }
+
+        public int replace(File file, String token, String value, String encoding) throws IOException {
+            return request(OP_TOKEN, file, token, value, false, encoding);
+        }
+
+        public void write(File file, String text, String encoding) throws IOException {
+            request(OP_WRITE, file, text, "", false, encoding);
+        }
+
+        private synchronized int request(String operation, File file, String match, String replace, boolean byline, String encoding) throws IOException {
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+            writeString(requests, operation);
+            writeString(requests, file.getAbsolutePath());
+            writeString(requests, match);
+            writeString(requests, replace);
+            requests.writeBoolean(byline);
+            writeString(requests, encoding);
+            requests.flush();
+
+            int count = responses.readInt();
+            if (count < 0) {
+                throw new IOException("Privileged replace in " + file + " failed: " + readString(responses));
+            }
+            return count;
+        }
+
+        private void start() throws IOException {
+            String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+            String classpath;
+            try {
+                classpath = new File(TextReplace.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+            } catch (Exception e) {
+                throw new IOException("Location of " + TextReplace.class.getName() + " is not known", e);
+            }
+            List<String> command = new ArrayList<>();
+            command.add("sudo");
+            command.add(java);
+            command.add("-cp");
+            command.add(classpath);
+            command.add(TextReplace.class.getName());
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            requests = new DataOutputStream(process.getOutputStream());
+            responses = new DataInputStream(process.getInputStream());
+        }
+
+        private synchronized void stop() {
+            if (process != null) {
+                try {
+                    requests.close();
+                } catch (IOException ignored) {
+                    // helper exits on its own
+                }
+                process = null;
+            }
+        }
+    }
+
+    /**
+     * Reads one line to the builder
+     *
+     * @return line terminator, null at the end of the stream
+     */
+    private static String readLine(BufferedReader reader, StringBuilder line) throws IOException {
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (c == '\n') {
+                return "\n";
+            }
+            if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() == '\n') {
+                    return "\r\n";
+                }
+                reader.reset();
+                return "\r";
+            }
+            line.append((char) c);
+        }
+        return null;
+    }
+
+    private static int replaceFirst(Pattern pattern, String replacement, CharSequence text, Writer writer) throws IOException {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            writer.append(text);
+            return 0;
+        }
+        StringBuffer result = new StringBuffer(text.length() + replacement.length());
+        matcher.appendReplacement(result, replacement);
+        matcher.appendTail(result);
+        writer.append(result);
+        return 1;
+    }
+
+    /**
+     * Converts Ant style replacement ({@code \1} refers to a group) to {@link Matcher} one
+     */
+    static String toMatcherReplacement(String replace) {
+        StringBuilder result = new StringBuilder(replace.length());
+        for (int i = 0; i < replace.length(); i++) {
+            char c = replace.charAt(i);
+            if (c == '\\' && i + 1 < replace.length()) {
+                char next = replace.charAt(++i);
+                if (Character.isDigit(next)) {
+                    result.append('$').append(next);
+                } else {
+                    result.append(Matcher.quoteReplacement(String.valueOf(next)));
+                }
+            } else {
+                result.append(Matcher.quoteReplacement(String.valueOf(c)));
+            }
+        }
+        return result.toString();
+    }
+
+    private static Path createTemp(Path source) throws IOException {
+        Path dir = source.toAbsolutePath().getParent();
+        try {
+            return Files.createTempFile(dir, "." + source.getFileName(), ".tmp");
+        } catch (AccessDeniedException e) {
+            // directory is not writable, result is written in place
+            return Files.createTempFile("noe-replace", ".tmp");
+        }
+    }
+
+    /**
+     * Replaces source by temp, atomically if attributes of the source could be kept
+     */
+    private static void commit(Path temp, Path source) throws IOException {
+        if (!Files.isWritable(source)) {
+            throw new AccessDeniedException(source.toString());
+        }
+        if (temp.getParent().equals(source.toAbsolutePath().getParent()) && !Files.isSymbolicLink(source) && copyAttributes(source, temp)) {
+            Files.move(temp, source, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        try (InputStream input = Files.newInputStream(temp);
+             OutputStream output = Files.newOutputStream(source, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * @return true if the target has the same permissions, owner and group as the source (always on non POSIX systems)
+     */
+    private static boolean copyAttributes(Path source, Path target) {
+        PosixFileAttributeView view = Files.getFileAttributeView(source, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view == null) {
+            return true;
+        }
+        try {
+            PosixFileAttributes original = view.readAttributes();
+            PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            PosixFileAttributes current = targetView.readAttributes();
+            if (!original.owner().equals(current.owner())) {
+                targetView.setOwner(original.owner());
+            }
+            if (!original.group().equals(current.group())) {
+                targetView.setGroup(original.group());
+            }
+            targetView.setPermissions(original.permissions());
+            try {
+                // keeps setuid, setgid and sticky bits as well
+                Files.setAttribute(target, "unix:mode", Files.getAttribute(source, "unix:mode", LinkOption.NOFOLLOW_LINKS));
+            } catch (UnsupportedOperationException | IllegalArgumentException ignored) {
+                // POSIX permissions are set already
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
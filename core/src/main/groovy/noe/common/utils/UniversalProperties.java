@@ -0,0 +1,88 @@
+package noe.common.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolution of properties for {@link Library#getUniversalProperty(String)}.
+ *
+ * Aliases of a property name are computed once per name and memoised. Environment variables are indexed once, the
+ * environment of the JVM does not change while it runs (Cmd.setGlobalEnvVar changes environment of started commands
+ * only). System properties are not indexed, they are looked up on every call, so that properties set at runtime
+ * (System.setProperty, property files loaded by tests, ...) are seen immediately as before.
+ *
+ * No dependencies on other noe classes, it is used during their static initialization.
+ */
+final class UniversalProperties {
+
+    private static final ConcurrentMap<String, String[]> ALIASES = new ConcurrentHashMap<>();
+    private static final Map<String, String> ENVIRONMENT = indexEnvironment();
+
+    private UniversalProperties() {
+    }
+
+    /**
+     * @return value of the first alias set in system properties or environment variables, see
+     * {@link Library#getUniversalProperty(String)} for aliases and their order
+     */
+    static String get(String propName) {
+        String[] aliases = ALIASES.get(propName);
+        if (aliases == null) {
+            aliases = aliases(propName);
+            ALIASES.putIfAbsent(propName, aliases);
+        }
+
+        String value = null;
+        for (String alias : aliases) {
+            value = System.getProperty(alias);
+            if (value == null || value.isEmpty()) {
+                value = ENVIRONMENT.get(alias);
+            }
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        // as the Groovy truth of the previous implementation, an empty value of the last alias is returned
+        return value;
+    }
+
+    /**
+     * 'my.great_property' gives 'my.great_property', 'my_great_property', 'MY_GREAT_PROPERTY', 'my.great.property'
+     * and 'myGreat_property'
+     */
+    static String[] aliases(String propName) {
+        String[] parts = propName.split("\\.");
+        int count = (parts.length > 1) ? 5 : 4;
+        String[] aliases = new String[count];
+        aliases[0] = propName;
+        aliases[1] = propName.replace('.', '_');
+        aliases[2] = aliases[1].toUpperCase();
+        aliases[3] = propName.replace('_', '.').toLowerCase();
+        if (count == 5) {
+            StringBuilder camelCase = new StringBuilder(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                if (!parts[i].isEmpty()) {
+                    camelCase.append(Character.toUpperCase(parts[i].charAt(0))).append(parts[i], 1, parts[i].length());
+                }
+            }
+            aliases[4] = camelCase.toString();
+        }
+        return aliases;
+    }
+
+    private static Map<String, String> indexEnvironment() {
+        Map<String, String> environment;
+        if (System.getProperty("os.name", "").startsWith("Windows")) {
+            // System.getenv(name) ignores case on Windows
+            environment = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        } else {
+            environment = new HashMap<>();
+        }
+        environment.putAll(System.getenv());
+        return Collections.unmodifiableMap(environment);
+    }
+}
@@ -0,0 +1,47 @@
+package noe.common.utils
+
+/**
+ * Changes done by one restore (pop) of {@link FileStateVault} or {@link DirStateVault}, for diagnostics.
+ * Paths are absolute, unchanged items are just counted.
+ */
+class VaultDiff {
+  final List<String> rewritten = []
+  final List<String> recreated = []
+  final List<String> deleted = []
+  int unchanged = 0
+
+  void rewritten(File file) {
+    rewritten.add(file.getAbsolutePath())
+  }
+
+  void recreated(File file) {
+    recreated.add(file.getAbsolutePath())
+  }
+
+  void deleted(File file) {
+    deleted.add(file.getAbsolutePath())
+  }
+
+  void unchanged(File file) {
+    unchanged++
+  }
+
+  VaultDiff merge(VaultDiff other) {
+    if (other != null) {
+      rewritten.addAll(other.rewritten)
+      recreated.addAll(other.recreated)
+      deleted.addAll(other.deleted)
+      unchanged += other.unchanged
+    }
+    return this
+  }
+
+  boolean isEmpty() {
+    return rewritten.isEmpty() && recreated.isEmpty() && deleted.isEmpty()
+  }
+
+  @Override
+  String toString() {
+    return "rewritten: ${rewritten}, recreated: ${recreated}, deleted: ${deleted}, unchanged: ${unchanged}"
+  }
+}
@@ -0,0 +1,226 @@
+package noe.common.utils;
+
+import org.apache.tools.zip.UnixStat;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts zip archives in-process by a pool of threads, restoring unix permissions, symbolic links and modification
+ * times as the unzip command does.
+ *
+ * Entries are read directly from the archive, directories are created first, then files are extracted in parallel,
+ * then symbolic links are created and permissions of directories are set. Existing files are replaced. Archives with
+ * entries pointing outside of the destination directory are refused.
+ */
+public final class ZipExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipExtractor.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static final PosixFilePermission[] PERMISSIONS = {
+        PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+        PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+    };
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private ZipExtractor() {
+    }
+
+    /**
+     * @param threads number of threads extracting files
+     * @param digest digest to update by all bytes of the archive, the archive is read for it alongside the extraction,
+     *               could be null
+     */
+    public static void extract(File zip, File destDir, int threads, MessageDigest digest) throws IOException {
+        Path dest = destDir.toPath().toAbsolutePath().normalize();
+        String poolName = "noe-unzip-" + POOL_NUMBER.incrementAndGet() + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads) + (digest != null ? 1 : 0), runnable -> {
+            Thread thread = new Thread(runnable, poolName + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ZipFile zipFile = new ZipFile(zip, "UTF8", true)) {
+            List<Future<Void>> tasks = new ArrayList<>();
+            if (digest != null) {
+                tasks.add(pool.submit(() -> {
+                    digest(zip, digest);
+                    return null;
+                }));
+            }
+
+            List<ZipEntry> directories = new ArrayList<>();
+            List<ZipEntry> links = new ArrayList<>();
+            List<ZipEntry> files = new ArrayList<>();
+            for (Enumeration<ZipEntry> entries = zipFile.getEntriesInPhysicalOrder(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                resolve(dest, entry);
+                if (entry.isDirectory()) {
+                    directories.add(entry);
+                } else if ((entry.getUnixMode() & 0170000) == UnixStat.LINK_FLAG) {
+                    links.add(entry);
+                } else {
+                    files.add(entry);
+                }
+            }
+            log.debug("Extracting {} files, {} directories and {} links of {} to {} by {} threads",
+                files.size(), directories.size(), links.size(), zip.getAbsolutePath(), dest, threads);
+
+            Files.createDirectories(dest);
+            for (ZipEntry entry : directories) {
+                Files.createDirectories(resolve(dest, entry));
+            }
+            for (ZipEntry entry : files) {
+                tasks.add(pool.submit(() -> {
+                    extractFile(zipFile, entry, resolve(dest, entry));
+                    return null;
+                }));
+            }
+            await(tasks);
+
+            for (ZipEntry entry : links) {
+                createLink(zipFile, entry, resolve(dest, entry));
+            }
+            // deepest first, a directory could be made read only
+            Collections.reverse(directories);
+            for (ZipEntry entry : directories) {
+                Path directory = resolve(dest, entry);
+                setMode(directory, entry);
+                Files.setLastModifiedTime(directory, FileTime.fromMillis(entry.getTime()));
+            }
+        } finally {
+            pool.shutdownNow();
+            try {
+                // the digest must not be updated after returning
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Updates the digest by all bytes of the file, the file is streamed
+     */
+    public static void digest(File file, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static void extractFile(ZipFile zipFile, ZipEntry entry, Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        // replaced as unzip does it, also read only files and links
+        Files.deleteIfExists(path);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = zipFile.getInputStream(entry); OutputStream output = Files.newOutputStream(path)) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                output.write(buffer, 0, read);
+            }
+        }
+        setMode(path, entry);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getTime()));
+    }
+
+    private static void createLink(ZipFile zipFile, ZipEntry entry, Path path) throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                target.write(buffer, 0, read);
+            }
+        }
+        Files.createDirectories(path.getParent());
+        Files.deleteIfExists(path);
+        try {
+            Files.createSymbolicLink(path, Paths.get(new String(target.toByteArray(), StandardCharsets.UTF_8)));
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // e.g. Windows without the privilege to create links, the link is stored as file as Ant does it
+            log.warn("Unable to create symbolic link {}, storing the link target as file: {}", path, e.getMessage());
+            Files.write(path, target.toByteArray());
+        }
+    }
+
+    private static void setMode(Path path, ZipEntry entry) throws IOException {
+        int mode = entry.getUnixMode() & 0777;
+        if (!POSIX || mode == 0) {
+            return;
+        }
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < PERMISSIONS.length; i++) {
+            if ((mode & (1 << i)) != 0) {
+                permissions.add(PERMISSIONS[i]);
+            }
+        }
+        Files.setPosixFilePermissions(path, permissions);
+    }
+
+    private static Path resolve(Path dest, ZipEntry entry) throws IOException {
+        Path path = dest.resolve(entry.getName()).normalize();
+        if (!path.startsWith(dest)) {
+            throw new IOException("Entry " + entry.getName() + " points outside of " + dest);
+        }
+        return path;
+    }
+
+    private static void await(List<Future<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
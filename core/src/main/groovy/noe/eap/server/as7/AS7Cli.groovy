@@ -20,6 +20,7 @@ class AS7Cli {
   private File cliClient
   private int timeout // timeout for cli in ms
   private final Platform platform = new Platform() // OMG, Platform should be static.
+  private AS7CliBatch batch // modifying operations collected by CLILib.batch
 
   AS7Cli(Version eapVersion, String cfgHost, int managementPort, File cliClient, int timeout = DEFAULT_CLI_TIMEOUT) {
     this.eapVersion = eapVersion
@@ -65,6 +66,72 @@ class AS7Cli {
     return myArbitraryCommand
   }
 
+  /**
+   * Generates CLI command which stays connected and reads commands from its standard input,
+   * used by {@link AS7CliSession}
+   */
+  public List<String> generateCmdForCliSession() {
+    List<String> sessionCommand = [
+        "${cliClient.absolutePath}".toString(),
+        "--connect",
+        "--controller=${cfgHost}:${managementPort}".toString()
+    ]
+    if (eapVersion >= new Version("6.1.0")) {
+      sessionCommand.add("--timeout=${timeout}".toString())
+    }
+    return sessionCommand
+  }
+
+  /**
+   * Closes persistent CLI session of this server if there is any, see {@link DefaultProperties#EAP_CLI_PERSISTENT_SESSION}
+   */
+  public void closeSession() {
+    AS7CliSession.close(cfgHost, managementPort)
+  }
+
+  /**
+   * Starts collecting modifying operations and reload requests instead of executing them,
+   * see {@link CLILib#batch}
+   */
+  public void beginBatch() {
+    if (batch != null) {
+      throw new IllegalStateException("CLI batch is already active for ${cfgHost}:${managementPort}")
+    }
+    batch = new AS7CliBatch()
+  }
+
+  /**
+   * Stops collecting and returns what was collected, nothing is executed here
+   */
+  public AS7CliBatch endBatch() {
+    AS7CliBatch collected = batch
+    batch = null
+    return collected
+  }
+
+  public boolean isBatchActive() {
+    return batch != null
+  }
+
+  /**
+   * Reload request is remembered by the active batch, returns false if there is no batch
+   */
+  public boolean deferReload(boolean adminOnly) {
+    if (batch == null) {
+      return false
+    }
+    batch.requestReload(adminOnly)
+    return true
+  }
+
+  /**
+   * Persistent session is used only on Unix-like systems, Windows quoting of commands is tailored to
+   * the command line of the forked jboss-cli, see {@link CLILib#escapeQuotes}
+   */
+  private boolean isPersistentSessionEnabled() {
+    return DefaultProperties.EAP_CLI_PERSISTENT_SESSION && !platform.isWindows()
+  }
+
   /**
    * This string will be passed directly to the --commands="your string"
    *
@@ -76,7 +143,42 @@ class AS7Cli {
    * @return the command to run
    */
   public Map runArbitraryCommand(final String command, int timeout = this.timeout) {
+    if (batch != null) {
+      if (batch.record(command)) {
+        log.debug("Deferring CLI command {} to batch", command)
+        return [stdOut: '', stdErr: '', exitValue: 0]
+      }
+      if (!AS7CliBatch.isReadOnly(command)) {
+        String collected = batch.takeOperations()
+        if (collected != null) {
+          log.debug("Executing operations collected by batch before CLI command {}", command)
+          Map result = execute(collected, timeout)
+          if (result.exitValue != 0) {
+            log.error("Failure: ${collected}${DefaultProperties.NL}${result.stdOut}${result.stdErr}")
+            return result
+          }
+        }
+      }
+    }
+    return execute(command, timeout)
+  }
+
+  private Map execute(final String command, int timeout) {
     log.debug("Executing CLI command {}", command)
+    if (isPersistentSessionEnabled()) {
+      Map result = null
+      try {
+        result = AS7CliSession.forController(cfgHost, managementPort, generateCmdForCliSession(), cliClient.parentFile)
+            .run(command, timeout + 1000)
+      } catch (IOException e) {
+        log.debug("Persistent CLI session could not be started", e)
+      }
+      // null only when nothing reached the server, so the commands are not run twice
+      if (result != null) {
+        return result
+      }
+      log.debug("Persistent CLI session unusable, falling back to one-shot jboss-cli for {}", command)
+    }
     final List myArbitraryCommand = generateCmdForArbitraryCliCommand(command)
     return Cmd.executeCommandConsumeStreams(
         myArbitraryCommand,
@@ -0,0 +1,121 @@
+package noe.eap.server.as7
+
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * Modifying operations and reload requests collected by {@link noe.eap.utils.CLILib#batch}.
+ *
+ * Operations are run as one jboss-cli `batch`/`run-batch` (one composite management operation), all
+ * requested reloads collapse into a single reload at the end. Full reload wins over admin-only one.
+ * Reading operations and commands are not recorded, they are executed immediately and therefore see
+ * the state from before the batch. Other commands which could not be part of a composite operation
+ * (e.g. `deploy`, `module add`, `:shutdown`) are not recorded either, operations collected so far are
+ * executed before them to keep the order, see {@link #takeOperations()}.
+ */
+class AS7CliBatch {
+
+  private static final Pattern OPERATION = ~/^([^(]*):([\w-]+)/
+  private static final Pattern READ_ONLY_OPERATION = ~/^(read-[\w-]*|whoami|query|resolve-expression|validate-[\w-]*|product-info)$/
+  // operations which are not allowed in a composite operation
+  private static final Pattern LIFECYCLE_OPERATION = ~/^((shutdown|reload|restart|suspend|resume|start|stop|kill|destroy)(-servers)?|reload-enhanced)$/
+  private static final Pattern READ_ONLY_COMMAND = ~/^(ls|cd|cn|pwd|echo|help|version|history|connection-info|read-attribute|read-operation|deployment-info)(\s.*)?$/
+  private static final Pattern RELOAD = ~/^reload(\s+.*)?$/
+
+  private final List<String> collected = []
+  private boolean reloadRequested = false
+  private boolean adminOnlyReload = true
+
+  /**
+   * Records the comma separated command list when all of its commands can be deferred (modifying operations
+   * and reloads).
+   *
+   * @return true if the commands were recorded, false if they have to be executed right away
+   */
+  boolean record(String command) {
+    List<String> commands = AS7CliSession.splitCommands(command)
+    if (commands.isEmpty() || !commands.every { isModifyingOperation(it) || RELOAD.matcher(it).matches() }) {
+      return false
+    }
+
+    commands.each { String cmd ->
+      if (RELOAD.matcher(cmd).matches()) {
+        requestReload(cmd.contains('--admin-only'))
+      } else {
+        collected.add(cmd)
+      }
+    }
+    return true
+  }
+
+  void requestReload(boolean adminOnly) {
+    reloadRequested = true
+    adminOnlyReload &= adminOnly
+  }
+
+  List<String> getOperations() {
+    return Collections.unmodifiableList(collected)
+  }
+
+  boolean isReloadRequested() {
+    return reloadRequested
+  }
+
+  boolean isAdminOnlyReload() {
+    return reloadRequested && adminOnlyReload
+  }
+
+  boolean isEmpty() {
+    return collected.isEmpty() && !reloadRequested
+  }
+
+  /**
+   * Returns value for jboss-cli `--commands` with operations collected so far (see {@link #compile()}) and forgets
+   * them, requested reload is kept. It is used to execute collected operations before a command which could not
+   * be recorded, so that the command sees their result.
+   *
+   * @return null if there is nothing collected
+   */
+  String takeOperations() {
+    if (collected.isEmpty()) {
+      return null
+    }
+    String operations = compile()
+    collected.clear()
+    return operations
+  }
+
+  /**
+   * @return value for jboss-cli `--commands`, single operation is not wrapped into batch
+   */
+  String compile() {
+    if (collected.size() == 1) {
+      return collected.first()
+    }
+    return (['batch'] + collected + ['run-batch']).join(',')
+  }
+
+  static boolean isModifyingOperation(String command) {
+    String operation = operationName(command)
+    return operation != null && !READ_ONLY_OPERATION.matcher(operation).matches() && !LIFECYCLE_OPERATION.matcher(operation).matches()
+  }
+
+  /**
+   * Whether all commands of the comma separated command list only read, they need not to wait for collected operations
+   */
+  static boolean isReadOnly(String command) {
+    return AS7CliSession.splitCommands(command).every { String cmd ->
+      String operation = operationName(cmd)
+      return (operation != null) ? READ_ONLY_OPERATION.matcher(operation).matches() : READ_ONLY_COMMAND.matcher(cmd).matches()
+    }
+  }
+
+  private static String operationName(String command) {
+    if (!command.startsWith('/') && !command.startsWith(':')) {
+      return null
+    }
+    Matcher matcher = OPERATION.matcher(command)
+    return matcher.find() ? matcher.group(2) : null
+  }
+
+}
@@ -0,0 +1,247 @@
+package noe.eap.server.as7
+
+import groovy.util.logging.Slf4j
+import noe.common.utils.Cmd
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.regex.Pattern
+
+/**
+ * Long-lived jboss-cli process connected to one management endpoint and driven over its stdin.
+ *
+ * Sessions are pooled per `cfgHost:managementPort`, see {@link #forController}. Each command of the
+ * `--commands` list is written as a separate line followed by an `echo` marker, the output is collected
+ * until the marker shows up. As in the forked mode, processing stops at the first failing command.
+ *
+ * The interactive CLI does not report an exit code per command, failures are recognized from the output
+ * (see {@link #FAILURE_PATTERNS}). Session which dies, times out or loses the connection (server restart)
+ * is evicted from the pool. Batch left open by a failed command is discarded, as if the CLI process exited.
+ * The caller is expected to fall back to the one-shot mode only when nothing reached the server (nothing was sent or
+ * the CLI refused the first command as not connected), commands already sent could have been executed and they
+ * must not run twice.
+ */
+@Slf4j
+class AS7CliSession {
+
+  private static final Map<String, AS7CliSession> sessions = new ConcurrentHashMap<String, AS7CliSession>()
+  private static final AtomicLong markerCounter = new AtomicLong()
+  private static final Pattern PROMPT = ~/^\[[^\]]*\]\s*/
+  private static final long DISCARD_BATCH_TIMEOUT = 10000L
+  private static final List<Pattern> FAILURE_PATTERNS = [
+      ~/"outcome"\s*=>\s*"failed"/,
+      ~/^(Failed|Unexpected|Unrecognized|Unknown|The batch failed)\b/,
+      ~/^(WFLY[A-Z]+|JBAS)\d+:/
+  ]
+  // errors printed by jboss-cli itself, not by the server or an operation
+  private static final Pattern CONNECTION_LOST = ~/^(The controller is not available at |You are disconnected at the moment|Failed to connect to the controller)/
+
+  static {
+    addShutdownHook {
+      closeAll()
+    }
+  }
+
+  private final String controller
+  private final Process process
+  private final Writer stdIn
+  private final LinkedBlockingQueue<String> lines = new LinkedBlockingQueue<String>()
+  private final Thread reader
+
+  private AS7CliSession(List<String> connectCmd, File workDir, String controller) {
+    this.controller = controller
+    ProcessBuilder builder = new ProcessBuilder(connectCmd).directory(workDir).redirectErrorStream(true)
+    builder.environment().putAll(Cmd.createCopyOfCmdProps().collectEntries { k, v -> [(k.toString()): v.toString()] })
+    this.process = builder.start()
+    this.stdIn = new OutputStreamWriter(process.getOutputStream())
+    this.reader = Thread.startDaemon("jboss-cli-session-${controller}") {
+      process.getInputStream().newReader().eachLine { String line -> lines.put(line) }
+    }
+  }
+
+  /**
+   * Returns pooled session for the given management endpoint, starts a new one if there is none alive.
+   *
+   * @param connectCmd jboss-cli command without `--commands`, i.e. `jboss-cli.sh --connect --controller=...`
+   */
+  static AS7CliSession forController(String cfgHost, int managementPort, List<String> connectCmd, File workDir) {
+    String key = "${cfgHost}:${managementPort}"
+    synchronized (sessions) {
+      AS7CliSession session = sessions.get(key)
+      if (session != null && !session.isAlive()) {
+        session.terminate()
+        session = null
+      }
+      if (session == null) {
+        log.debug("Starting persistent jboss-cli session for {}", key)
+        session = new AS7CliSession(connectCmd, workDir, key)
+        sessions.put(key, session)
+      }
+      return session
+    }
+  }
+
+  /**
+   * Closes session of the given management endpoint, e.g. when the server is going down.
+   */
+  static void close(String cfgHost, int managementPort) {
+    sessions.remove("${cfgHost}:${managementPort}".toString())?.terminate()
+  }
+
+  static void closeAll() {
+    synchronized (sessions) {
+      sessions.values().each { it.terminate() }
+      sessions.clear()
+    }
+  }
+
+  boolean isAlive() {
+    try {
+      process.exitValue()
+      return false
+    } catch (IllegalThreadStateException ignored) {
+      return true
+    }
+  }
+
+  /**
+   * Runs the comma separated command list the same way `jboss-cli --commands=...` would.
+   *
+   * @param timeout timeout for the whole command list in ms
+   * @return [stdOut:String, stdErr:String, exitValue:Integer] or null when the session is broken and nothing reached
+   * the server,
+   * a broken session after commands were sent gives failed result with the output collected so far
+   */
+  synchronized Map run(String commands, long timeout) {
+    long deadline = System.currentTimeMillis() + timeout
+    StringBuilder out = new StringBuilder()
+    boolean sent = false
+    boolean batchMode = false
+    boolean first = true
+
+    for (String command : splitCommands(commands)) {
+      String marker = "__noe_cli_eoc_${markerCounter.incrementAndGet()}__"
+      String name = command.split(/\s+/)[0]
+      boolean failed = false
+      // also a failed `batch` (another batch is open) leaves the session in the batch mode
+      batchMode |= (name == 'batch')
+      try {
+        stdIn.write(command + '\n' + 'echo ' + marker + '\n')
+        stdIn.flush()
+        sent = true
+
+        while (true) {
+          String line = lines.poll(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+          if (line == null) {
+            log.warn("jboss-cli session {} timed out on command {}", controller, command)
+            evict()
+            return brokenResult(out, "Timed out on command ${command}")
+          }
+          line = line.replaceFirst(PROMPT, '')
+          if (line.contains(marker)) {
+            break
+          }
+          if (CONNECTION_LOST.matcher(line).find()) {
+            log.debug("jboss-cli session {} lost its connection: {}", controller, line)
+            evict()
+            // the CLI did not execute the first command, nothing reached the server
+            return (first && out.length() == 0) ? null : brokenResult(out, line)
+          }
+          out.append(line).append('\n')
+          failed |= FAILURE_PATTERNS.any { it.matcher(line).find() }
+        }
+      } catch (IOException e) {
+        log.warn("jboss-cli session ${controller} is broken", e)
+        evict()
+        return (sent) ? brokenResult(out, e.toString()) : null
+      }
+
+      if (failed) {
+        if (batchMode) {
+          discardBatch()
+        }
+        return [stdOut: out.toString(), stdErr: '', exitValue: 1]
+      }
+      if (name == 'run-batch' || name == 'discard-batch') {
+        batchMode = false
+      }
+      first = false
+    }
+
+    return [stdOut: out.toString(), stdErr: '', exitValue: 0]
+  }
+
+  /**
+   * The following command lists must not be added to the batch which failed, e.g. by `run-batch`
+   */
+  private void discardBatch() {
+    String marker = "__noe_cli_eoc_${markerCounter.incrementAndGet()}__"
+    long deadline = System.currentTimeMillis() + DISCARD_BATCH_TIMEOUT
+    try {
+      stdIn.write('discard-batch\n' + 'echo ' + marker + '\n')
+      stdIn.flush()
+      String line
+      while ((line = lines.poll(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) != null) {
+        if (line.contains(marker)) {
+          return
+        }
+      }
+      log.warn("jboss-cli session {} timed out on discarding of the failed batch", controller)
+    } catch (IOException e) {
+      log.warn("jboss-cli session ${controller} is broken", e)
+    }
+    evict()
+  }
+
+  private static Map brokenResult(StringBuilder out, String reason) {
+    return [stdOut: out.toString(), stdErr: "jboss-cli session is broken: ${reason}".toString(), exitValue: 1]
+  }
+
+  private void evict() {
+    sessions.remove(controller, this)
+    terminate()
+  }
+
+  private void terminate() {
+    try {
+      stdIn.write('quit\n')
+      stdIn.flush()
+    } catch (IOException ignored) {
+      // process is already gone
+    }
+    process.waitForOrKill(3000)
+  }
+
+  /**
+   * Splits `--commands` value by commas which are not nested in parentheses, brackets, braces or quotes.
+   */
+  static List<String> splitCommands(String commands) {
+    List<String> result = []
+    StringBuilder current = new StringBuilder()
+    int depth = 0
+    boolean quoted = false
+
+    for (char c : commands.toCharArray()) {
+      if (c == '"' as char) {
+        quoted = !quoted
+      } else if (!quoted && (c == '(' as char || c == '[' as char || c == '{' as char)) {
+        depth++
+      } else if (!quoted && (c == ')' as char || c == ']' as char || c == '}' as char)) {
+        depth--
+      } else if (!quoted && depth == 0 && c == ',' as char) {
+        result.add(current.toString().trim())
+        current.setLength(0)
+        continue
+      }
+      current.append(c)
+    }
+    if (current.toString().trim()) {
+      result.add(current.toString().trim())
+    }
+
+    return result.findAll { it }
+  }
+
+}
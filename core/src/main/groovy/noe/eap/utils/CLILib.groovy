@@ -6,6 +6,8 @@ import noe.common.utils.Platform
 import noe.common.utils.Version
 import noe.eap.creaper.ManagementClientProvider
 import noe.eap.creaper.ServerVerProvider
+import noe.eap.server.as7.AS7Cli
+import noe.eap.server.as7.AS7CliBatch
 import noe.server.AS7
 import org.apache.commons.collections4.CollectionUtils
 import org.apache.commons.lang3.StringUtils
@@ -3223,6 +3225,54 @@ class CLILib {
     }
   }
 
+  /**
+   * Runs builders in the closure as one transaction. Their modifying operations are collected and sent to the server
+   * as one jboss-cli `batch`/`run-batch` when the closure finishes, all their reloads are replaced by a single reload
+   * at the end (full reload if any of them asked for it, admin-only otherwise).
+   *
+   * Reading operations (e.g. existence checks of builders) are executed immediately, so they see the configuration
+   * from before the batch. Commands which could not be collected (e.g. `deploy`, `module add`, `:shutdown`) are
+   * executed immediately too, after the operations collected before them. Nested batch joins the outer one.
+   * If the closure throws, nothing collected (since the last such command) is executed.
+   *
+   * <pre>
+   * CLILib.batch(as7) {
+   *   CLILib.UndertowHandlerBuilder.build { ... }
+   *   CLILib.HttpConnectorBuilder.build { ... }
+   * }
+   * </pre>
+   *
+   * @return 0 for OK, > 0 if the batch failed, -1 if management API hasn't been ready after reload
+   */
+  static int batch(AS7 as7serverInstance, Closure block) {
+    AS7Cli cli = as7serverInstance.as7Cli
+    if (cli.isBatchActive()) {
+      block.call()
+      return 0
+    }
+
+    AS7CliBatch batch
+    cli.beginBatch()
+    try {
+      block.call()
+    } finally {
+      batch = cli.endBatch()
+    }
+
+    if (!batch.operations.isEmpty()) {
+      String cmdStr = batch.compile()
+      Map output = cli.runArbitraryCommand(cmdStr)
+      if (output.exitValue > 0) {
+        log.error("Failure: ${cmdStr}${DefaultProperties.NL}${output.stdOut}${output.stdErr}")
+        return output.exitValue
+      }
+    }
+    if (batch.isReloadRequested()) {
+      return reload(as7serverInstance, batch.isAdminOnlyReload())
+    }
+    return 0
+  }
+
   /**
    * Reloads server, than waits for management api to become ready, as reload command don't block
    * for whole server start
@@ -3231,6 +3281,10 @@ class CLILib {
    * @return reload command return code, 0 for OK, > 0 Fail, -1 if managementApi hasn't been ready before timeout
    */
   static int reload(AS7 as7serverInstance, boolean adminOnly = false) {
+    if (as7serverInstance.as7Cli.deferReload(adminOnly)) {
+      log.debug("Reload deferred to the end of CLI batch")
+      return 0
+    }
     String argument = adminOnly ? "--admin-only" : ""
     int ret = as7serverInstance.as7Cli.runArbitraryCommand('reload ' + argument).exitValue
     if (ret == 0) {
@@ -9,6 +9,7 @@ import noe.common.utils.Cmd
 import noe.common.utils.IO
 import noe.common.utils.JBFile
 import noe.common.utils.Library
+import noe.common.utils.ReportArchive
 import noe.common.utils.XmlUtils
 import noe.eap.server.as5.AS5Properties
 import noe.eap.server.as5.AS5Rhel
@@ -187,24 +188,18 @@ class AS5 extends ServerAbstract {
   }
 
   @Override
-  void archiveConfs(String testName, String serverId = '') {
-    super.archiveConfs(testName, serverId)
+  void archiveConfs(ReportArchive archive, String serverId = '') {
+    super.archiveConfs(archive, serverId)
     IO.handleOutput '--- Starting archiving of all deploy conf dir files ---'
 
     def s = platform.sep
-    def targetDir
     def simpleServerName = this.getClass().name + '-' + version + "${s}${serverId}"
-    def simpleConfDir
-    def reportDir = new File(Library.getRootPath(), "${s}target${s}jboss-reports${s}confs-archive")
 
     deployConfigDirs.each { confDir ->
       File confDirAsFile = new File(confDir)
       if (confDirAsFile.exists() && confDirAsFile.isDirectory()) {
         simpleServerName = simpleServerName.substring(simpleServerName.lastIndexOf('.') + 1)
-        targetDir = new File(reportDir, "${testName}${s}${simpleServerName}${s}${confDirAsFile.name}")
-        // Creates a directory. Also non-existent parent directories are created, when necessary. Does nothing if the directory already exist.
-        ant.mkdir(dir: targetDir.getAbsolutePath())
-        JBFile.copy(new File(confDir), targetDir, false)
+        archive.copy(confDirAsFile, "${simpleServerName}${s}${confDirAsFile.name}")
       }
     }
 
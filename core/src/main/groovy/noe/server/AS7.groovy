@@ -243,6 +243,7 @@ class AS7 extends ServerAbstract implements WorkerServer {
   @Override
   public long stop(Map conf = [:]) {
     log.debug('Stopping server {} with PROCESSCODE: {}', serverId, processCode)
+    as7Cli?.closeSession()
     if (!isRunning()) {
       log.warn("Server is already down.")
       return 0
@@ -258,6 +259,12 @@ class AS7 extends ServerAbstract implements WorkerServer {
     }
   }
 
+  @Override
+  boolean kill() {
+    as7Cli?.closeSession()
+    return super.kill()
+  }
+
   void killAllInSystem() {
     Cmd.killAllInSystem(["jboss-modules.jar", "standalone.bat", "jboss-cli.bat", ServerEap.prefix])
   }
@@ -371,6 +378,12 @@ class AS7 extends ServerAbstract implements WorkerServer {
     return new ServerInstanceCreatorHelper(this).createNewServerInstancePhysicalCopy(offset)
   }
 
+  @Override
+  List<File> getMutableDirs() {
+    String s = platform.sep
+    return super.getMutableDirs() + ["standalone${s}data", "standalone${s}tmp"].collect { new File(getServerRoot(), it) }
+  }
+
   /**
    * Physical removing of the actual server instance.
    */
@@ -155,6 +155,7 @@ class AS7Domain extends ServerAbstract {
   @Override
   long stop(Map conf = [:]) {
     log.debug("Stopping server ${serverId}")
+    as7Cli?.closeSession()
     if (!isRunning()) {
       log.debug("Server is already down.")
       return 0
@@ -181,6 +182,7 @@ class AS7Domain extends ServerAbstract {
   @Override
   boolean kill() {
     log.debug("Killing server ${serverId}")
+    as7Cli?.closeSession()
     if (process) {
       if (Cmd.destroyProcess(process)) {
         pid = null
@@ -245,6 +247,12 @@ class AS7Domain extends ServerAbstract {
     return new ServerInstanceCreatorHelper(this).createNewServerInstancePhysicalCopy(offset)
   }
 
+  @Override
+  List<File> getMutableDirs() {
+    String s = platform.sep
+    return super.getMutableDirs() + ["domain${s}data", "domain${s}tmp", "domain${s}servers"].collect { new File(getServerRoot(), it) }
+  }
+
   /**
    * Physical removing of the actual server instance.
    */
@@ -258,8 +266,10 @@ class AS7Domain extends ServerAbstract {
       IO.handleOutput ' --- ERROR: Server is running, change request for bound IP address is IGNORED!'
       return
     }
-    updateConfReplaceRegExp(configFile, 'jboss.bind.address.management:[^}]*', 'jboss.bind.address.management:' + address)
-    updateConfReplaceRegExp(configFile, 'jboss.bind.address:[^}]*', 'jboss.bind.address:' + address)
+    editConfig()
+        .replaceInConf(configFile, 'jboss.bind.address.management:[^}]*', 'jboss.bind.address.management:' + address)
+        .replaceInConf(configFile, 'jboss.bind.address:[^}]*', 'jboss.bind.address:' + address)
+        .commit()
     cfgHost = host = address
     configureCliClient()
     configureJBossCliStop()
@@ -280,8 +290,9 @@ class AS7Domain extends ServerAbstract {
     this.managementNativePort += offset
     this.mainHttpPort = this.managementHttpPort
     this.mainHttpsPort = this.managementHttpsPort
-    updateConfReplaceRegExp(configFile, 'jboss.management.native.port:[^}]*', 'jboss.management.native.port:' + this.managementNativePort)
-    updateConfReplaceRegExp(configFile, 'jboss.management.http.port:[^}]*', 'jboss.management.http.port:' + this.managementHttpPort)
+    ConfigEditSession session = editConfig()
+        .replaceInConf(configFile, 'jboss.management.native.port:[^}]*', 'jboss.management.native.port:' + this.managementNativePort)
+        .replaceInConf(configFile, 'jboss.management.http.port:[^}]*', 'jboss.management.http.port:' + this.managementHttpPort)
 
     // update socket-bindings for domain managed servers
     // we have three servers configured by default
@@ -294,9 +305,10 @@ class AS7Domain extends ServerAbstract {
         stringToReplace = '<server name="server-one" group="main-server-group"/>'
         newString = "<server name=\"server-one\" group=\"main-server-group\">${newString}</server>"
       }
-      updateConfReplaceRegExp(configFile, stringToReplace, newString)
+      session.replaceInConf(configFile, stringToReplace, newString)
       serverOffsets[key] += offset
     }
+    session.commit()
     IO.handleOutput("portOffset: $portOffset", IO.LOG_LEVEL_FINEST)
     IO.handleOutput("mainHttpPort: $mainHttpPort", IO.LOG_LEVEL_FINEST)
     IO.handleOutput("mainHttpsPort: $mainHttpsPort", IO.LOG_LEVEL_FINEST)
@@ -0,0 +1,275 @@
+package noe.server
+
+import groovy.util.logging.Slf4j
+import noe.common.utils.JBFile
+import noe.common.utils.Platform
+import noe.common.utils.TextReplace
+
+/**
+ * Batch of edits of server configuration and bin files.
+ *
+ * Edits are queued and applied by {@link #commit()}: every touched file is read once, all its edits are applied in
+ * memory in the order they were queued (each edit sees results of the previous ones) and the file is written once,
+ * atomically, only if some edit changed it. Semantics of the edits are the same as of the corresponding single edit
+ * methods of {@link ServerAbstract}, results of the edits are reported in the same way as those methods return them.
+ *
+ * <pre>
+ *   ConfigEditSession.Report report = server.editConfig()
+ *       .replaceInConf('server.xml', match1, replace1)
+ *       .replaceInConf('server.xml', match2, replace2)
+ *       .insertInBin('catalina.sh', 'JAVA_OPTS="$JAVA_OPTS -Dfoo=bar"', 2)
+ *       .commit()
+ *   assert report.allApplied
+ * </pre>
+ *
+ * @see ServerAbstract#editConfig()
+ */
+@Slf4j
+class ConfigEditSession {
+
+  private final ServerAbstract server
+  private final String encoding
+  private final Platform platform = new Platform()
+  private final List<Edit> edits = []
+
+  ConfigEditSession(ServerAbstract server, String encoding = 'UTF-8') {
+    this.server = server
+    this.encoding = encoding
+  }
+
+  /**
+   * Result of one edit
+   */
+  static class EditResult {
+    final String description
+    /**
+     * Files changed by the edit
+     */
+    final List<File> files = []
+    boolean applied
+
+    EditResult(String description) {
+      this.description = description
+    }
+
+    @Override
+    String toString() {
+      return "${applied ? 'APPLIED' : 'NOT APPLIED'}: ${description}"
+    }
+  }
+
+  /**
+   * Results of all edits of one commit, in the order the edits were queued
+   */
+  static class Report {
+    final List<EditResult> results = []
+
+    /**
+     * @return result of i-th edit, the same value the corresponding single edit method of {@link ServerAbstract} returns
+     */
+    boolean getAt(int i) {
+      return results[i].applied
+    }
+
+    boolean isAllApplied() {
+      return results.every { it.applied }
+    }
+
+    List<EditResult> getNotApplied() {
+      return results.findAll { !it.applied }
+    }
+
+    @Override
+    String toString() {
+      return results.join('\n')
+    }
+  }
+
+  private static class Edit {
+    String description
+    List<File> files
+    // edit is applied to the first file it succeeds in only
+    boolean firstOnly
+    Closure<Boolean> apply
+  }
+
+  /**
+   * Queues the same edit as {@link ServerAbstract#updateConfReplaceRegExp} does
+   */
+  ConfigEditSession replaceInConf(String file, String match, String replace, boolean byline = false, boolean useSimpleReplace = false) {
+    return queueReplace(confFiles(file), true, match, replace, byline, useSimpleReplace)
+  }
+
+  /**
+   * Queues the same edit as {@link ServerAbstract#updateBinReplaceRegExp} does
+   */
+  ConfigEditSession replaceInBin(String file, String match, String replace, boolean byline = false, boolean useSimpleReplace = false) {
+    return queueReplace([binFile(file)], true, match, replace, byline, useSimpleReplace)
+  }
+
+  /**
+   * Queues the same edit as {@link ServerAbstract#updateFileReplaceRegExp} does
+   */
+  ConfigEditSession replaceInFile(String path, String match, String replace, boolean byline = false, boolean useSimpleReplace = false) {
+    return queueReplace([new File(path)], true, match, replace, byline, useSimpleReplace)
+  }
+
+  /**
+   * Queues the same edit as {@link ServerAbstract#updateConfByInsertingTextToPositionInFile} does
+   */
+  ConfigEditSession insertInConf(String file, String textToInsert, int position) {
+    return queueInsert(confFiles(file), textToInsert, position)
+  }
+
+  /**
+   * Queues the same edit as {@link ServerAbstract#updateBinByInsertingTextToPositionInFile} does
+   */
+  ConfigEditSession insertInBin(String file, String textToInsert, int position) {
+    return queueInsert([binFile(file)], textToInsert, position)
+  }
+
+  /**
+   * Queues the same edit as {@link JBFile#insertTextToSpecifiedPositionInFile} does
+   */
+  ConfigEditSession insertInFile(String path, String textToInsert, int position) {
+    return queueInsert([new File(path)], textToInsert, position)
+  }
+
+  /**
+   * Queues a custom edit of the whole text of the file, the closure gets the text as StringBuilder, changes it in place
+   * and returns true if it changed it
+   */
+  ConfigEditSession editInFile(String path, String description, Closure<Boolean> edit) {
+    edits.add(new Edit(
+        description: "${description} in ${new File(path).name}",
+        files: [new File(path)],
+        firstOnly: true,
+        apply: { StringBuilder text, File file -> edit(text) as boolean }))
+    return this
+  }
+
+  /**
+   * Applies all queued edits, each changed file is written once. The session could be reused afterwards.
+   */
+  Report commit() {
+    Report report = new Report()
+    Map<File, StringBuilder> texts = [:]
+    Set<File> changed = new LinkedHashSet<File>()
+
+    edits.each { Edit edit ->
+      EditResult result = new EditResult(edit.description)
+      for (File file : edit.files) {
+        StringBuilder text = load(file, texts)
+        if (text != null && edit.apply(text, file)) {
+          result.applied = true
+          result.files.add(file)
+          changed.add(file)
+          if (edit.firstOnly) {
+            break
+          }
+        }
+      }
+      report.results.add(result)
+    }
+    edits.clear()
+
+    changed.each { File file ->
+      log.debug("Writing ${file.absolutePath} changed by ${report.results.count { it.files.contains(file) }} edit(s)")
+      if (!JBFile.rewrite(file, texts[file].toString(), false, encoding)) {
+        log.warn("Writing of ${file.absolutePath} failed, its edits are not applied")
+        report.results.findAll { it.files.contains(file) }.each { it.applied = false }
+      }
+    }
+    log.debug("Config edit session of server ${server.getServerId()} committed:\n${report}")
+
+    return report
+  }
+
+  private ConfigEditSession queueReplace(List<File> files, boolean firstOnly, String match, String replace, boolean byline, boolean useSimpleReplace) {
+    edits.add(new Edit(
+        description: "replace ${match} with ${replace} in ${files*.name.unique()}",
+        files: files,
+        firstOnly: firstOnly,
+        apply: { StringBuilder text, File file ->
+          int replaced = (useSimpleReplace) ? TextReplace.replace(text, match, replace) : TextReplace.replaceRegexp(text, match, replace, byline)
+          if (replaced == 0) {
+            if (text.indexOf(replace) >= 0) {
+              log.warn('ALREADY UPDATED - skipping {}', file.absolutePath)
+            } else {
+              log.warn('NOTHING TO UPDATE - File ' + file.absolutePath + ' does not contain string:\n' + match)
+            }
+          }
+          return replaced > 0
+        }))
+    return this
+  }
+
+  private ConfigEditSession queueInsert(List<File> files, String textToInsert, int position) {
+    edits.add(new Edit(
+        description: "insert ${textToInsert} on row ${position} of ${files*.name.unique()}",
+        files: files,
+        firstOnly: false,
+        apply: { StringBuilder text, File file ->
+          if (position == -1) {
+            // newline at the start to be sure that we are appending on the empty line
+            text.append(platform.nl).append(textToInsert).append(platform.nl)
+            return true
+          }
+          int lineStart = lineStart(text, position)
+          if (lineStart < 0) {
+            log.warn("File ${file.absolutePath} has less than ${position} rows, nothing inserted")
+            return false
+          }
+          text.insert(lineStart, textToInsert + platform.nl)
+          return true
+        }))
+    return this
+  }
+
+  /**
+   * @return index of the first character of the row (numbered from 1), -1 if there is no such row
+   */
+  private static int lineStart(StringBuilder text, int row) {
+    if (row < 1) {
+      return -1
+    }
+    int index = 0
+    for (int i = 1; i < row; i++) {
+      index = text.indexOf('\n', index)
+      if (index < 0) {
+        return -1
+      }
+      index++
+    }
+    return (index < text.length()) ? index : -1
+  }
+
+  private StringBuilder load(File file, Map<File, StringBuilder> texts) {
+    if (!texts.containsKey(file)) {
+      if (file.exists()) {
+        String text
+        try {
+          text = file.getText(encoding)
+        } catch (IOException ignored) {
+          // not readable by the current user
+          text = JBFile.read(file)
+        }
+        texts[file] = new StringBuilder(text)
+      } else {
+        log.debug('Unable to update file ' + file.absolutePath + ' as it does not exist')
+        texts[file] = null
+      }
+    }
+    return texts[file]
+  }
+
+  private List<File> confFiles(String file) {
+    return server.configDirs.collect { confDir ->
+      new File(server.getServerRoot() + platform.sep + confDir + platform.sep + file)
+    }
+  }
+
+  private File binFile(String file) {
+    return new File(server.binDir + platform.sep + file)
+  }
+}
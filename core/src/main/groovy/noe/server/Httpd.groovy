@@ -130,6 +130,11 @@ abstract class Httpd extends ServerAbstract {
     return new ServerInstanceCreatorHelper(this).createNewServerInstancePhysicalCopy(offset)
   }
 
+  @Override
+  List<File> getMutableDirs() {
+    return super.getMutableDirs() + ['run', 'cache', 'var'].collect { new File(getServerRoot(), it) }
+  }
+
   /**
    * Kill the server based on parent pid
    * @exception RuntimeException, when pid is not defined and server is running
@@ -291,14 +296,17 @@ abstract class Httpd extends ServerAbstract {
       return
     }
 
+    // every file is read and written once
+    ConfigEditSession session = editConfig()
+
     // HTTP
     log.debug("mainHttpPort:${mainHttpPort}, offset:${offset}")
     int port = offset + mainHttpPort
     def listen = 'Listen ' + ((host.contains(':') && !host.contains(']')) ? '[' + host + ']' : host) + ':' + port
     log.debug('New Listen: ' + listen)
-    updateConfReplaceRegExp('httpd.conf', 'Listen (.*)', listen, true)
+    session.replaceInConf('httpd.conf', 'Listen (.*)', listen, true)
     def serverName = 'ServerName ' + ((DefaultProperties.HTTPD_SERVER_NAME.contains(':') && !DefaultProperties.HTTPD_SERVER_NAME.contains(']')) ? '[' + DefaultProperties.HTTPD_SERVER_NAME + ']' : DefaultProperties.HTTPD_SERVER_NAME) + ':' + port
-    updateConfReplaceRegExp('httpd.conf', 'ServerName (.*)', serverName, true)
+    session.replaceInConf('httpd.conf', 'ServerName (.*)', serverName, true)
     mainHttpPort = port
 
     // HTTPS
@@ -306,10 +314,10 @@ abstract class Httpd extends ServerAbstract {
     port = offset + mainHttpsPort
     listen = 'Listen ' + ((host.contains(':') && !host.contains(']')) ? '[' + host + ']' : host) + ':' + port
     log.debug('New Listen: ' + listen)
-    updateConfReplaceRegExp('ssl.conf', 'Listen (.*)', listen, true)
-    updateConfReplaceRegExp('ssl.conf', '<VirtualHost _default_:(.*)', "<VirtualHost _default_:${port}>", true)
+    session.replaceInConf('ssl.conf', 'Listen (.*)', listen, true)
+    session.replaceInConf('ssl.conf', '<VirtualHost _default_:(.*)', "<VirtualHost _default_:${port}>", true)
     serverName = 'ServerName ' + ((DefaultProperties.HTTPD_SERVER_NAME.contains(':') && !DefaultProperties.HTTPD_SERVER_NAME.contains(']')) ? '[' + DefaultProperties.HTTPD_SERVER_NAME + ']' : DefaultProperties.HTTPD_SERVER_NAME) + ':' + port
-    updateConfReplaceRegExp('ssl.conf', 'ServerName (.*)', serverName, true)
+    session.replaceInConf('ssl.conf', 'ServerName (.*)', serverName, true)
     mainHttpsPort = port
 
     // CLUSTER MANAGER
@@ -317,12 +325,13 @@ abstract class Httpd extends ServerAbstract {
     port = offset + mainClusterManagementPort
     listen = 'Listen ' + ((host.contains(':') && !host.contains(']')) ? '[' + host + ']' : host) + ':' + port
     log.debug('New Listen: ' + listen)
-    updateConfReplaceRegExp(DefaultProperties.MOD_CLUSTER_CONFIG_FILE, 'Listen (.*)', listen, true)
-    updateConfReplaceRegExp(DefaultProperties.MOD_PROXY_CLUSTER_CONFIG_FILE, 'Listen (.*)', listen, true)
-    updateConfReplaceRegExp(DefaultProperties.MOD_CLUSTER_CONFIG_FILE, /<VirtualHost [*]:(.*)>/, /<VirtualHost *:${port}>/, true)
-    updateConfReplaceRegExp(DefaultProperties.MOD_PROXY_CLUSTER_CONFIG_FILE, /<VirtualHost [*]:(.*)>/, /<VirtualHost *:${port}>/, true)
+    session.replaceInConf(DefaultProperties.MOD_CLUSTER_CONFIG_FILE, 'Listen (.*)', listen, true)
+    session.replaceInConf(DefaultProperties.MOD_PROXY_CLUSTER_CONFIG_FILE, 'Listen (.*)', listen, true)
+    session.replaceInConf(DefaultProperties.MOD_CLUSTER_CONFIG_FILE, /<VirtualHost [*]:(.*)>/, /<VirtualHost *:${port}>/, true)
+    session.replaceInConf(DefaultProperties.MOD_PROXY_CLUSTER_CONFIG_FILE, /<VirtualHost [*]:(.*)>/, /<VirtualHost *:${port}>/, true)
     mainClusterManagementPort = port
 
+    session.commit()
   }
 
   void modJkSetSticky(value, boolean restart = true) {
@@ -8,7 +8,11 @@ import noe.common.utils.Cmd
 import noe.common.utils.JBFile
 import noe.common.utils.Java
 import noe.common.utils.Library
+import noe.common.utils.LogCheckpoint
+import noe.common.utils.LogScanner
+import noe.common.utils.LogTailer
 import noe.common.utils.Platform
+import noe.common.utils.ReportArchive
 import noe.common.utils.Version
 import noe.common.utils.processid.ProcessUtils
 
@@ -18,6 +22,8 @@ import java.util.regex.Pattern
 
 @Slf4j
 abstract class ServerAbstract implements IApp {
+  private static final Pattern SEVERITY_WARN = Pattern.compile('ERROR|WARN|SEVERE', Pattern.CASE_INSENSITIVE)
+  private static final Pattern SEVERITY_ERROR = Pattern.compile('ERROR|SEVERE', Pattern.CASE_INSENSITIVE)
   private String serverId /// This is serverId which is supposed to be the same as in serverController, by default is same as basedir name
   static AntBuilder ant /// Instance of class AntBuilder
   String basedir /// Absolute path where server is
@@ -44,6 +50,7 @@ abstract class ServerAbstract implements IApp {
   String confMainPath // common for tomcat and httpd (conf)
   String serverRoot // Root path to basedir from which is counted path to server instance specific for each platform
   String refBasedir // from what path create another server nodes
+  LogCheckpoint logCheckpoint // log queries scan only what was appended after it, whole logs if null (see markLogs())
 
   // process management
   Process process // running server process (if was started on background)
@@ -66,6 +73,9 @@ abstract class ServerAbstract implements IApp {
 
   // start stop timeout
   int startStopTimeout = DefaultProperties.START_STOP_TIMEOUT
+  // how long it took in ms to open / close the main port in the last waitForStartComplete / waitForShutdownComplete, -1 if unknown
+  long timeToReady = -1
+  long timeToShutdown = -1
 
   protected backupProps = [:] /// backuped instance properties
 
@@ -418,7 +428,12 @@ abstract class ServerAbstract implements IApp {
    */
   // TODO: Try to kill it if it started in a wrong way...
   void waitForStartComplete(int timeout = startStopTimeout, int port = mainHttpPort) {
-    if (!Library.waitForTcp(host, port, timeout)) {
+    long waitStart = System.currentTimeMillis()
+    timeToReady = -1
+    if (Library.waitForTcp(host, port, timeout)) {
+      timeToReady = System.currentTimeMillis() - waitStart
+      log.debug("Server ${serverId} ${host}:${port} ready after ${timeToReady} ms")
+    } else {
       stop()
       kill()
       throw new RuntimeException("Server ${serverId} start problem - ${host}:${port} is not opened.")
@@ -429,7 +444,12 @@ abstract class ServerAbstract implements IApp {
    * Wait until the server is stopped.
    */
   void waitForShutdownComplete(int timeout = startStopTimeout, int port = mainHttpPort) {
-    if (!Library.waitForTcpClosed(host, port, timeout)) {
+    long waitStart = System.currentTimeMillis()
+    timeToShutdown = -1
+    if (Library.waitForTcpClosed(host, port, timeout)) {
+      timeToShutdown = System.currentTimeMillis() - waitStart
+      log.debug("Server ${serverId} ${host}:${port} closed after ${timeToShutdown} ms")
+    } else {
       def message = "Server ${serverId} stop problem - ${host}:${port} is not closed."
       log.error(message)
       Library.logRunningProcessesAndPorts()
@@ -532,6 +552,13 @@ abstract class ServerAbstract implements IApp {
     return confFiles
   }
 
+  /**
+   * Starts a batch of config and bin file edits, each file is read and written once on commit
+   */
+  ConfigEditSession editConfig() {
+    return new ConfigEditSession(this)
+  }
+
   /**
    * Replace config file reg. expression.
    */
@@ -578,15 +605,6 @@ abstract class ServerAbstract implements IApp {
     File file = new File(path)
 
     if (file.exists()) {
-      String fileText = JBFile.read(file)
-      if (fileText.contains(replace) && !((fileText =~ match).find())) {
-        log.warn('ALREADY UPDATED - skipping {}', file.absolutePath)
-        return false
-      }
-      if (!fileText.contains(match) && useSimpleReplace) {
-        log.warn('NOTHING TO UPDATE - File ' + file.absolutePath + ' does not contain string:\n' + match)
-        return false
-      }
       log.debug('Updating file ' + file.absolutePath)
       log.trace('BEFORE UPDATE:')
       log.trace('-----------------------------------------------')
@@ -594,22 +612,25 @@ abstract class ServerAbstract implements IApp {
       log.trace(match)
       log.trace('-----------------------------------------------')
 
-      if (useSimpleReplace) JBFile.replace(file, match, replace)
-      else JBFile.replaceregexp(file, match, replace, byline)
-
-      fileText = JBFile.read(file)
+      // the file is read once by the replace, it is read again only if nothing was replaced
+      int replaced = (useSimpleReplace) ? JBFile.replaceCount(file, match, replace) : JBFile.replaceRegexpCount(file, match, replace, byline)
 
-      // in theory the condition should be "(usesSimpleReplace && (fileText.contains(replace)) || fileText.find(replace)"
-      // but often replace is an illegal regex, so checking por any of those conditions works better
-      if ( fileText.contains(replace) || fileText.find(replace)) {
+      if (replaced < 0) {
+        // the cause is logged by JBFile
+        log.warn('UPDATE FAILED - Replace in file ' + file.absolutePath + ' failed, the file was not updated')
+        return false
+      } else if (replaced > 0) {
         log.trace('AFTER UPDATE:')
         log.trace('-----------------------------------------------')
         // show only text after change
         log.trace(replace)
         log.trace('-----------------------------------------------')
         return true
+      } else if (replaced == 0 && JBFile.read(file).contains(replace)) {
+        log.warn('ALREADY UPDATED - skipping {}', file.absolutePath)
+        return false
       } else {
-        log.warn('PROBABLY ERROR AFTER UPDATE - File ' + file.absolutePath + ' does not contain string ' + replace)
+        log.warn('NOTHING TO UPDATE - File ' + file.absolutePath + ' does not contain string:\n' + match)
         return false
       }
     } else {
@@ -618,64 +639,78 @@ abstract class ServerAbstract implements IApp {
     }
   }
 
+  /**
+   * Records current positions of all log files, from now on all log queries of the server (verifyLogs, logsContains,
+   * logContains, returnMatchingLines, countOccurrencesInLog, waitUntilLogContains) scan only lines appended after
+   * this moment. Rotated or truncated logs are scanned whole. Set {@link #setLogCheckpoint} to null to scan whole
+   * logs again.
+   *
+   * @return the checkpoint, it could be used by verifyLogsSince and countOccurrencesInLogSince later as well
+   */
+  LogCheckpoint markLogs() {
+    List<File> logFiles = []
+    logDirs.each { logDir ->
+      File dir = new File(getServerRoot() + platform.sep + logDir)
+      if (dir.isDirectory()) {
+        logFiles.addAll(dir.listFiles().findAll { it.isFile() })
+      }
+    }
+    logCheckpoint = LogCheckpoint.mark(logFiles)
+    log.debug("Logs of server {} marked: {}", serverId, logCheckpoint)
+    return logCheckpoint
+  }
+
   /**
    * Check log files for ERRORS and WARNINGS, ignoring a list of patterns, empty by default
-   * TODO add offsets for logs (or delete logs before each test - replace symlinks)
+   * With `logs.skip.warnings=true` only ERRORS are reported.
+   * Log files are scanned in parallel by {@link LogScanner}, only since the {@link #markLogs()} if it was called.
+   *
+   * @param filtered regexps, lines (in form `<log file path> <line>`) containing their match are not reported
+   * @return affected lines prefixed by path to the log file
    */
   List<String> verifyLogs( List<String>filtered=[]) {
-    def affectedLines = []
-
-    logDirs.each { logDir ->
-      new File(getServerRoot() + platform.sep + logDir).eachFile { File logFile ->
-        log.debug("Scanning log file {}", logFile.absoluteFile)
-        if (!logFile.canRead()) JBFile.makeAccessible(logFile)
-        logFile.eachLine { line, number ->
-          log.trace(line)
-
-          if (Boolean.valueOf(Library.getUniversalProperty('logs.skip.warnings', false))) {
-            if (line ==~ /(?i)(.*)ERROR(.*)|(.*)SEVERE(.*)/) {
-              affectedLines << logFile.getAbsolutePath() + " " + line
-            }
-          } else {
-            if (line ==~ /(?i)(.*)ERROR(.*)|(.*)WARN(.*)|(.*)SEVERE(.*)/) {
-              affectedLines << logFile.getAbsolutePath() + " " + line
-            }
-          }
+    return verifyLogsSince(logCheckpoint, filtered)
+  }
 
-        }
-        affectedLines.removeIf { line-> filtered.any {
-          pat -> if(line =~ pat) {
-            log.debug("Filtered Warning: ${line}")
-            return true
-            }
-          }
-        }
-      }
+  /**
+   * The same as {@link #verifyLogs} but only lines appended after the checkpoint are checked
+   *
+   * @param mark checkpoint returned by {@link #markLogs()}, null to check whole logs
+   */
+  List<String> verifyLogsSince(LogCheckpoint mark, List<String> filtered = []) {
+    Pattern severity = Boolean.valueOf(Library.getUniversalProperty('logs.skip.warnings', false)) ? SEVERITY_ERROR : SEVERITY_WARN
+    List<File> logFiles = filesInLogDirs()
+    logFiles.each { File logFile ->
+      if (!logFile.canRead()) JBFile.makeAccessible(logFile)
     }
-    return affectedLines
+
+    return new LogScanner(severity).excluding(filtered).since(mark).findAll(logFiles)*.toString()
   }
 
   /**
-   * Check if logs files contains value
-   * TODO add offsets for logs (or delete logs before each test - replace symlinks)
+   * Check if logs files contains value, scanning stops on the first matching line
    */
   boolean logsContains(regexp) {
-    def res = false
-    def partRes = false
+    Pattern pattern = (regexp instanceof Pattern) ? regexp : Pattern.compile(regexp.toString())
+    boolean res = new LogScanner(pattern, true).since(logCheckpoint).containsAny(filesInLogDirs())
+    if (res) log.debug('Found')
 
+    return res
+  }
+
+  /**
+   * Files (no directories) in all log dirs
+   */
+  private List<File> filesInLogDirs() {
+    List<File> files = []
     logDirs.each { logDir ->
       new File(getServerRoot() + platform.sep + logDir).eachFile { File logFile ->
-        log.debug("Scanning log file " + logFile.absoluteFile + " for value: " + regexp.toString())
-        logFile.eachLine { line ->
-          partRes = (line ==~ regexp)
-          res = res || partRes
-          log.trace(line)
-          if (partRes) log.debug('Found')
+        if (logFile.isFile()) {
+          files.add(logFile)
         }
       }
     }
-
-    return res
+    return files
   }
 
   boolean logExists(logFileNeedle) {
@@ -694,13 +729,8 @@ abstract class ServerAbstract implements IApp {
   }
 
   List<String> returnMatchingLines(regexp) {
-    List result = []
-    logDirs.each { logDir ->
-      new File(getServerRoot() + platform.sep + logDir).eachFile { File logFile ->
-        result.addAll(logFile.readLines().findAll { it =~ regexp })
-      }
-    }
-    return result
+    Pattern pattern = (regexp instanceof Pattern) ? regexp : Pattern.compile(regexp.toString())
+    return new LogScanner(pattern).since(logCheckpoint).findAll(filesInLogDirs())*.line
   }
 
   Boolean logContains(regexp) {
@@ -716,7 +746,7 @@ abstract class ServerAbstract implements IApp {
           log.debug("Log file ${logFile.getAbsolutePath()} does not exist.")
           continue
         }
-        if (JBFile.hasMatchingLine(logFile, regexp)) {
+        if (JBFile.hasMatchingLine(logFile, regexp, logCheckpoint)) {
           return true
         }
       }
@@ -732,7 +762,7 @@ abstract class ServerAbstract implements IApp {
         log.debug("Log file ${logFile.getAbsolutePath()} does not exist.")
         continue
       }
-      if (JBFile.hasMatchingLine(logFile, regexp)) {
+      if (JBFile.hasMatchingLine(logFile, regexp, logCheckpoint)) {
         return true
       }
     }
@@ -741,6 +771,7 @@ abstract class ServerAbstract implements IApp {
 
   /**
    * Waits for log file to emerge and contain provided regexp. It waits in maximum for specified timeout.
+   * Log files are followed by {@link LogTailer}, each check reads just the lines appended since the previous one.
    *
    * It returns TRUE if the expected regexp was found in specified timeout, false otherwise.
    */
@@ -749,55 +780,88 @@ abstract class ServerAbstract implements IApp {
     final long endTime = System.currentTimeMillis() + timeUnit.toMillis(timeout)
     // sleep is from interval <100,1000>
     final sleep = Math.min(1000, Math.max(100,timeUnit.toMillis(timeout).intdiv(60)))
+    final Pattern pattern = (regexp instanceof Pattern) ? regexp : Pattern.compile(regexp.toString())
+    final List<LogTailer> tailers = logDirs.collect { logDir ->
+      LogTailer.since(new File(getServerRoot() + platform.sep + logDir + platform.sep + logFileName), logCheckpoint)
+    }
 
     //  Wait until the existing log file is found
     while (System.currentTimeMillis() < endTime ) {
-      if (logContains(logFileName, regexp)) {
-        return true
+      for (LogTailer tailer : tailers) {
+        if (tailer.file.canRead() ? tailer.containsNew(pattern) : wholeLogContains(tailer.file, pattern)) {
+          return true
+        }
       }
       Library.sleep(sleep)
     }
     return false
   }
 
+  /**
+   * Unreadable (e.g. root owned) log file is checked whole
+   */
+  private boolean wholeLogContains(File logFile, Pattern pattern) {
+    if (!JBFile.isExistingFile(logFile)) {
+      log.debug("Log file ${logFile.getAbsolutePath()} does not exist.")
+      return false
+    }
+    return JBFile.hasMatchingLine(logFile, pattern, logCheckpoint)
+  }
+
   /**
    * Returns number of regexp matches in a log file. 
    */
   int countOccurrencesInLog(logFileNeedle, regexp) {
+    return countOccurrencesInLogSince(logCheckpoint, logFileNeedle, regexp)
+  }
+
+  /**
+   * Returns number of regexp matches in a log file appended after the checkpoint
+   *
+   * @param mark checkpoint returned by {@link #markLogs()}, null to count in whole logs
+   */
+  int countOccurrencesInLogSince(LogCheckpoint mark, logFileNeedle, regexp) {
     int occurrences = 0
 
     logDirs.each { logDir ->
       new File(getServerRoot() + platform.sep + logDir).eachFileMatch(~logFileNeedle) { File logFile ->
         log.debug("Searching log file ${logFile} check for ${regexp} match")
-        occurrences += JBFile.fileRegexpOccurrences(logFile, regexp)
+        occurrences += JBFile.fileRegexpOccurrences(logFile, regexp, mark)
       }
     }
 
     return occurrences
   }
 
+  /**
+   * Archives log files of the server to `target/jboss-reports/logs-archive/<testName>`, see {@link ReportArchive}
+   */
   void archiveLogs(String testName, String serverId = '') {
+    ReportArchive archive = ReportArchive.forTest(ReportArchive.LOGS, testName)
+    try {
+      archiveLogs(archive, serverId)
+    } finally {
+      archive.close()
+    }
+  }
+
+  /**
+   * Archives log files of the server into the archive shared with other servers
+   */
+  void archiveLogs(ReportArchive archive, String serverId = '') {
     log.debug('Archiving of all log files of server {}', serverId)
 
     def s = platform.sep
-    def targetDir
     def simpleServerName = this.getClass().getSimpleName() + '-' + version + "${s}${serverId}"
-    def simpleLogDir
-    def reportDir = new File(Library.getRootPath(), "${s}target${s}jboss-reports${s}logs-archive")
 
     logDirs.each { logDir ->
       File logDirAsFile = new File(getServerRoot() + "${s}${logDir}")
       log.trace("Gonna backup:${logDirAsFile.getAbsolutePath()}, does it exist? ${logDirAsFile.exists()} Is it a directory? ${logDirAsFile.isDirectory()}")
       if (logDirAsFile.exists() && logDirAsFile.isDirectory()) {
+        String simpleLogDir = logDirAsFile.getAbsoluteFile().getName()
         logDirAsFile.eachFile { File logFile ->
-          simpleLogDir = new File(getServerRoot() + "${s}${logDir}").getAbsolutePath().substring(new File(getServerRoot() + "${s}${logDir}").getAbsolutePath().lastIndexOf(s) + 1)
-          targetDir = new File(reportDir.getAbsolutePath(), "${s}${testName}${s}${simpleServerName}${s}${simpleLogDir}")
-          log.trace("Gonna backup: simpleLogDir: ${simpleLogDir} to targetDir: ${targetDir}")
-          // Creates a directory. Also non-existent parent directories are created, when necessary. Does nothing if the directory already exist.
-          JBFile.copy(logFile, targetDir)
-          if (JBFile.useAdminPrivileges) { //If run with sudo there is possibility that logs won't be accessible to user
-            JBFile.makeAccessible(targetDir)
-          }
+          log.trace("Gonna backup: ${logFile} to ${simpleServerName}${s}${simpleLogDir}")
+          archive.copy(logFile, "${simpleServerName}${s}${simpleLogDir}", logCheckpoint)
         }
       }
     }
@@ -805,23 +869,33 @@ abstract class ServerAbstract implements IApp {
     log.trace('Archiving of all log files successfully done')
   }
 
+  /**
+   * Archives configuration files of the server to `target/jboss-reports/confs-archive/<testName>`, see {@link ReportArchive}
+   */
   void archiveConfs(String testName, String serverId = '') {
+    ReportArchive archive = ReportArchive.forTest(ReportArchive.CONFS, testName)
+    try {
+      archiveConfs(archive, serverId)
+    } finally {
+      archive.close()
+    }
+  }
+
+  /**
+   * Archives configuration files of the server into the archive shared with other servers
+   */
+  void archiveConfs(ReportArchive archive, String serverId = '') {
     log.debug('Archiving of all conf files of server {}', serverId)
 
     def s = platform.sep
-    def targetDir
     def simpleServerName = this.getClass().getSimpleName() + '-' + version + "${s}${serverId}"
-    def simpleConfDir
-    def reportDir = new File(Library.getRootPath(), "${s}target${s}jboss-reports${s}confs-archive")
 
     configDirs.each { confDir ->
       File confDirAsFile = new File(getServerRoot() + "${s}${confDir}")
       if (confDirAsFile.exists() && confDirAsFile.isDirectory()) {
         confDirAsFile.eachFile { File confFile ->
-          simpleConfDir = new File(getServerRoot() + "${s}${confFile}").getAbsolutePath().substring(new File(getServerRoot() + "${s}${confFile}").getAbsolutePath().lastIndexOf(s) + 1)
-          targetDir = new File(reportDir.getAbsolutePath(), "${s}${testName}${s}${simpleServerName}${s}${simpleConfDir}")
-          // Creates a directory. Also non-existent parent directories are created, when necessary. Does nothing if the directory already exist.
-          JBFile.copy(confFile, targetDir, false)
+          // every file goes to its own directory named after the file
+          archive.copy(confFile, "${simpleServerName}${s}${confFile.name}")
         }
       }
     }
@@ -853,6 +927,18 @@ abstract class ServerAbstract implements IApp {
     return basedir
   }
 
+  /**
+   * Directories written by the server or by tests, a clone of the server instance made by
+   * {@link ServerInstanceCreatorHelper} always gets its own copy of them
+   */
+  List<File> getMutableDirs() {
+    List<File> dirs = (configDirs + logDirs).collect { new File(getServerRoot() + it) }
+    if (deploymentPath) {
+      dirs.add(new File(deploymentPath))
+    }
+    return dirs
+  }
+
   Boolean checkmainHttpPort() {
     return Library.checkTcpPort(host, mainHttpPort)
   }
@@ -1,11 +1,19 @@
 package noe.server
 
 import groovy.util.logging.Slf4j
+import noe.common.DefaultProperties
 import noe.common.NoeContext
 import noe.common.utils.Platform
+import noe.common.utils.ProcessWatcher
+import noe.common.utils.ReportArchive
 
 import noe.ews.server.tomcat.TomcatProperties
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
 /**
  * Global class for management of servers
  * It is a singleton.
@@ -21,6 +29,9 @@ class ServerController {
   static AntBuilder ant
 
   protected Map<String, ServerAbstract> servers // all server instances, map[id: server]
+  protected Map<String, Set<String>> dependencies = [:] // map[id: ids of servers which have to be started before it]
+  int lifecycleParallelism = DefaultProperties.SERVER_LIFECYCLE_PARALLELISM // see ServerLifecycleExecutor
+  int archiveParallelism = DefaultProperties.ARCHIVE_PARALLELISM
 
   boolean refreshServersForEachTest = true
 
@@ -44,6 +55,7 @@ class ServerController {
 
   void clean() {
     servers.clear()
+    dependencies.clear()
   }
 
   ServerAbstract addServer(String id, ServerAbstract server, Map props = [:]) {
@@ -55,9 +67,30 @@ class ServerController {
   }
 
   ServerAbstract removeServer(String id) {
+    dependencies.remove(id)
+    dependencies.values().each { it.remove(id) }
     return servers.remove(id)
   }
 
+  /**
+   * Declares that server `id` has to be started after (and stopped before) the servers `dependsOn`,
+   * e.g. the balancer depends on its backends.
+   */
+  void addServerDependency(String id, String... dependsOn) {
+    if (!dependencies.containsKey(id)) {
+      dependencies[id] = new LinkedHashSet<String>()
+    }
+    dependencies[id].addAll(dependsOn)
+  }
+
+  /**
+   * Runs the action for all servers by {@link ServerLifecycleExecutor} honoring {@link #lifecycleParallelism}
+   * and server dependencies.
+   */
+  protected void forAllServers(String operation, boolean reverse = false, Closure action) {
+    new ServerLifecycleExecutor(lifecycleParallelism, dependencies).execute(operation, servers, reverse, action)
+  }
+
   @Deprecated
   void startServer(String id, Map conf = [:]) {
     if (servers.containsKey(id)) {
@@ -68,7 +101,7 @@ class ServerController {
   }
 
   void startAllServers(Map conf = [:]) {
-    servers.each { id, server ->
+    forAllServers('start') { id, server ->
       server.start(conf)
     }
   }
@@ -82,19 +115,34 @@ class ServerController {
   }
 
   void stopAllServers(Map conf = [:]) {
-    servers.each { id, server ->
+    forAllServers('stop', true) { id, server ->
       server.stop(conf)
     }
   }
 
   void killAll() {
-    servers.each { id, server ->
+    Map<String, CompletableFuture<Long>> exits = new ConcurrentHashMap<String, CompletableFuture<Long>>()
+    forAllServers('kill', true) { id, server ->
       try {
+        Long pid = server.pid
         server.kill()
+        if (pid) {
+          exits[id] = ProcessWatcher.onExit(pid)
+        }
       } catch (e) {
         log.debug("[$id] Server was probaly stopped earlier.")
       }
     }
+
+    // processes which survived the kill are awaited all at once
+    try {
+      CompletableFuture.allOf(exits.values() as CompletableFuture[]).get(DefaultProperties.START_STOP_TIMEOUT, TimeUnit.SECONDS)
+    } catch (TimeoutException ignored) {
+      exits.findAll { id, exit -> !exit.isDone() }.each { id, exit ->
+        log.warn("[$id] Server process is still present in the system after kill.")
+        exit.cancel(false)
+      }
+    }
   }
 
   void killTreeAll() {
@@ -158,32 +206,49 @@ class ServerController {
   }
 
   void backupConfsAll() {
-    servers.each { id, server ->
+    forAllServers('backupConfs') { id, server ->
       log.trace("Backing up configuration files of ${id}")
       server.backupConfs()
     }
   }
 
   void restoreConfsAll() {
-    servers.each { id, server ->
+    forAllServers('restoreConfs') { id, server ->
       server.restoreConfs()
     }
   }
 
+  /**
+   * Archives logs of all servers at once (up to {@link #archiveParallelism}) into one archive of the test
+   */
   void archiveLogsAll(testName) {
-    servers.each { id, server ->
-      server.archiveLogs(testName, id)
+    archiveAll('archiveLogs', ReportArchive.forTest(ReportArchive.LOGS, testName.toString())) { ReportArchive archive, id, server ->
+      server.archiveLogs(archive, id)
     }
   }
 
+  /**
+   * Archives configuration of all servers at once (up to {@link #archiveParallelism}) into one archive of the test
+   */
   void archiveConfsAll(testName) {
-    servers.each { id, server ->
-      server.archiveConfs(testName, id)
+    archiveAll('archiveConfs', ReportArchive.forTest(ReportArchive.CONFS, testName.toString())) { ReportArchive archive, id, server ->
+      server.archiveConfs(archive, id)
+    }
+  }
+
+  private void archiveAll(String operation, ReportArchive archive, Closure action) {
+    try {
+      // archiving does not depend on order of servers
+      new ServerLifecycleExecutor(archiveParallelism).execute(operation, servers) { id, server ->
+        action.call(archive, id, server)
+      }
+    } finally {
+      archive.close()
     }
   }
 
   void cleanLogsAll() {
-    servers.each { id, server ->
+    forAllServers('cleanLogs') { id, server ->
       server.cleanLogs()
     }
   }
@@ -249,13 +314,13 @@ class ServerController {
   }
 
   void backup() {
-    servers.each { id, server ->
+    forAllServers('backup') { id, server ->
       server.backup()
     }
   }
 
   void restore() {
-    servers.each { id, server ->
+    forAllServers('restore') { id, server ->
       server.restore()
     }
   }
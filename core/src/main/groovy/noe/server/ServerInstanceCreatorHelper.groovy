@@ -3,18 +3,40 @@ package noe.server
 import groovy.util.logging.Slf4j
 import noe.common.DefaultProperties
 import noe.common.utils.JBFile
+import noe.common.utils.Platform
+
+import java.nio.file.FileSystemException
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.LinkOption
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.regex.Pattern
 
 
 /**
  * Helper class for creating server instances based on ref basedir
+ *
+ * With `server.clone.mode=link` binaries (jars, native libraries, ...) outside of {@link ServerAbstract#getMutableDirs()}
+ * are hard linked to the reference installation instead of copying, everything else is copied with its attributes.
+ * Beware that a linked file shares content and permissions with the reference installation and all other instances,
+ * it must be replaced (deleted and created again) and never rewritten in place or changed by chmod / chown.
+ * Files are copied when linking is not possible (e.g. different file systems).
  */
 @Slf4j
 class ServerInstanceCreatorHelper {
 
+  static final String CLONE_MODE_COPY = 'copy'
+  static final String CLONE_MODE_LINK = 'link'
+
   private final ServerAbstract server
+  private final String cloneMode
 
-  ServerInstanceCreatorHelper(ServerAbstract server) {
+  ServerInstanceCreatorHelper(ServerAbstract server, String cloneMode = DefaultProperties.SERVER_CLONE_MODE) {
     this.server = server
+    this.cloneMode = cloneMode
   }
 
   /**
@@ -23,11 +45,122 @@ class ServerInstanceCreatorHelper {
   ServerAbstract createNewServerInstancePhysicalCopy(int offset = DefaultProperties.DEFAULT_SHIFT_PORT_OFFSET) {
     if (!(new File(server.basedir).exists())) {
       log.trace("createNewServerInstance: refBasedir:${server.refBasedir}, basedir:${server.basedir}")
-      if (!JBFile.copyDirectoryContent(new File(server.refBasedir), new File(server.basedir))) {
+      if (!cloneByLinks() && !JBFile.copyDirectoryContent(new File(server.refBasedir), new File(server.basedir))) {
         throw new RuntimeException("Failed to create new server instance ${server.serverId} based on ${server.refBasedir}")
       }
     }
     server.shiftPorts(offset)
     return server
   }
+
+  /**
+   * @return true if the instance was cloned, false if it has to be copied
+   */
+  private boolean cloneByLinks() {
+    if (cloneMode != CLONE_MODE_LINK) {
+      return false
+    }
+    if (JBFile.useAdminPrivileges) {
+      // files have to be copied with sudo to keep their owners
+      log.debug("Server instance ${server.serverId} is copied, linking is not supported with admin privileges")
+      return false
+    }
+
+    Path source = new File(server.refBasedir).toPath().toAbsolutePath().normalize()
+    Path target = new File(server.basedir).toPath().toAbsolutePath().normalize()
+    Set<Path> mutable = server.getMutableDirs().collect { File dir ->
+      source.resolve(target.relativize(dir.toPath().toAbsolutePath().normalize())).normalize()
+    } as Set<Path>
+    Cloner cloner = new Cloner(source, target, mutable)
+    try {
+      Files.walkFileTree(source, cloner)
+      if (cloner.linkFailure) {
+        log.debug("Unable to link ${cloner.linkFailure}, the rest of files was copied")
+      }
+      log.debug("Server instance ${server.serverId} cloned from ${source}: ${cloner.linked} files linked, ${cloner.copied} copied")
+      return true
+    } catch (IOException e) {
+      log.warn("Cloning of ${source} to ${target} failed (${e.message}), copying it")
+      // partially cloned files could be links, copying over them would rewrite the reference installation
+      JBFile.delete(target.toFile())
+      return false
+    }
+  }
+
+  private static class Cloner extends SimpleFileVisitor<Path> {
+    static final Pattern BINARY = ~/(?i).*\.(jar|war|ear|rar|sar|zip|class|so(\.\d+)*|dll|exe|dylib)/
+
+    final Path source
+    final Path target
+    final Set<Path> mutable
+    final boolean posix = !new Platform().isWindows()
+    // depth of the walk in mutable directories, 0 outside of them
+    int mutableDepth = 0
+    boolean linkable = true
+    String linkFailure
+    int linked = 0
+    int copied = 0
+
+    Cloner(Path source, Path target, Set<Path> mutable) {
+      this.source = source
+      this.target = target
+      this.mutable = mutable
+    }
+
+    @Override
+    FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+      if (mutableDepth > 0 || mutable.contains(dir)) {
+        mutableDepth++
+      }
+      Files.createDirectories(targetOf(dir))
+      return FileVisitResult.CONTINUE
+    }
+
+    @Override
+    FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      Path destination = targetOf(file)
+      if (attrs.isSymbolicLink()) {
+        Files.createSymbolicLink(destination, Files.readSymbolicLink(file))
+      } else if (linkable && mutableDepth == 0 && BINARY.matcher(file.getFileName().toString()).matches()) {
+        try {
+          Files.createLink(destination, file)
+          linked++
+          return FileVisitResult.CONTINUE
+        } catch (UnsupportedOperationException | FileSystemException e) {
+          linkFailure = "${file}: ${e.message}"
+          linkable = false
+          copy(file, destination)
+        }
+      } else {
+        copy(file, destination)
+      }
+      return FileVisitResult.CONTINUE
+    }
+
+    @Override
+    FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+      if (e != null) {
+        throw e
+      }
+      if (mutableDepth > 0) {
+        mutableDepth--
+      }
+      // after the content as the directory could be read only
+      Path destination = targetOf(dir)
+      if (posix) {
+        Files.setPosixFilePermissions(destination, Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS))
+      }
+      Files.setLastModifiedTime(destination, Files.getLastModifiedTime(dir))
+      return FileVisitResult.CONTINUE
+    }
+
+    private void copy(Path file, Path destination) {
+      Files.copy(file, destination, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS)
+      copied++
+    }
+
+    private Path targetOf(Path path) {
+      return target.resolve(source.relativize(path).toString())
+    }
+  }
 }
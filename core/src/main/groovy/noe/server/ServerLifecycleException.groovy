@@ -0,0 +1,17 @@
+package noe.server
+
+/**
+ * Failure of a lifecycle operation run for several servers by {@link ServerLifecycleExecutor}.
+ * Failures are kept per server id, the first one is the cause, the others are suppressed.
+ */
+class ServerLifecycleException extends RuntimeException {
+
+  final Map<String, Throwable> failures
+
+  ServerLifecycleException(String operation, Map<String, Throwable> failures) {
+    super("Operation ${operation} failed for servers ${failures.keySet()}: " +
+        failures.collect { id, failure -> "[${id}] ${failure}" }.join(', '), failures.values().first())
+    this.failures = Collections.unmodifiableMap(new LinkedHashMap<String, Throwable>(failures))
+    failures.values().drop(1).each { addSuppressed(it) }
+  }
+}
@@ -0,0 +1,130 @@
+package noe.server
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import groovy.util.logging.Slf4j
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Runs a lifecycle operation (start, stop, backup, ...) for several servers at once.
+ *
+ * At most `parallelism` servers are processed concurrently, a server is processed only when all servers it depends on
+ * are done (or, for operations run in reverse like stop, when all servers depending on it are done). Dependencies
+ * define order only.
+ *
+ * With parallelism 1 servers are processed one by one in the calling thread as plain loop would do it, the first
+ * failure stops the processing and its exception is thrown as it is.
+ *
+ * With higher parallelism a server is processed even if its dependency failed, all servers are always processed and
+ * failures are reported together by {@link ServerLifecycleException}. Actions run in several threads then, they
+ * share the static `JBFile.ant` AntBuilder (and other static state of noe) which is not thread safe, so the
+ * parallel mode is meant for actions which do not use AntBuilder concurrently (e.g. start and stop of servers).
+ */
+@Slf4j
+class ServerLifecycleExecutor {
+
+  final int parallelism
+  // server id -> ids of servers which have to be processed before it
+  private final Map<String, Set<String>> dependencies
+
+  ServerLifecycleExecutor(int parallelism, Map<String, Set<String>> dependencies = [:]) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism has to be positive, got ${parallelism}")
+    }
+    this.parallelism = parallelism
+    this.dependencies = dependencies
+  }
+
+  /**
+   * @param operation name of the operation used in logs and exceptions
+   * @param servers servers to process, map[id: server]
+   * @param reverse whether dependencies apply in reverse order
+   * @param action closure called with server id and server
+   * @throws ServerLifecycleException when the action failed for any of the servers in the parallel mode, with
+   * parallelism 1 the exception of the first failed action is thrown
+   */
+  void execute(String operation, Map<String, ServerAbstract> servers, boolean reverse = false, Closure action) {
+    Map<String, Set<String>> prerequisites = prerequisites(servers.keySet(), reverse)
+    List<String> order = order(prerequisites)
+    if (parallelism == 1) {
+      order.each { String id ->
+        log.trace("[${id}] ${operation}")
+        action.call(id, servers[id])
+      }
+      return
+    }
+
+    Map<String, Throwable> failures = new ConcurrentHashMap<String, Throwable>()
+    Closure process = { String id ->
+      try {
+        log.trace("[${id}] ${operation}")
+        action.call(id, servers[id])
+      } catch (Throwable e) {
+        log.debug("[${id}] ${operation} failed", e)
+        failures[id] = e
+      }
+    }
+
+    if (servers.size() < 2) {
+      order.each(process)
+    } else {
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, servers.size()),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("noe-${operation}-%d").build())
+      try {
+        Map<String, CompletableFuture<Void>> done = [:]
+        order.each { String id ->
+          CompletableFuture[] waitFor = prerequisites[id].collect { done[it] } as CompletableFuture[]
+          // failure of a prerequisite is recorded already, it does not prevent processing of this server
+          done[id] = CompletableFuture.allOf(waitFor)
+              .handle { result, failure -> null }
+              .thenRunAsync({ process(id) } as Runnable, pool)
+        }
+        CompletableFuture.allOf(done.values() as CompletableFuture[]).join()
+      } finally {
+        pool.shutdown()
+      }
+    }
+
+    if (!failures.isEmpty()) {
+      // report failures in the processing order
+      Map<String, Throwable> ordered = new LinkedHashMap<String, Throwable>()
+      order.findAll { failures.containsKey(it) }.each { ordered[it] = failures[it] }
+      throw new ServerLifecycleException(operation, ordered)
+    }
+  }
+
+  private Map<String, Set<String>> prerequisites(Set<String> ids, boolean reverse) {
+    Map<String, Set<String>> prerequisites = [:]
+    ids.each { prerequisites[it] = new LinkedHashSet<String>() }
+    ids.each { String id ->
+      dependencies[id]?.findAll { ids.contains(it) }?.each { String dependency ->
+        if (reverse) {
+          prerequisites[dependency].add(id)
+        } else {
+          prerequisites[id].add(dependency)
+        }
+      }
+    }
+    return prerequisites
+  }
+
+  /**
+   * Topological order which keeps the original order of independent servers
+   */
+  private static List<String> order(Map<String, Set<String>> prerequisites) {
+    List<String> order = []
+    Set<String> remaining = new LinkedHashSet<String>(prerequisites.keySet())
+    while (!remaining.isEmpty()) {
+      String next = remaining.find { String id -> order.containsAll(prerequisites[id]) }
+      if (next == null) {
+        throw new IllegalStateException("Cyclic dependency among servers ${remaining}")
+      }
+      order.add(next)
+      remaining.remove(next)
+    }
+    return order
+  }
+}
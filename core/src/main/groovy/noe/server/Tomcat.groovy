@@ -7,6 +7,7 @@ import noe.common.NoeContext
 import noe.common.utils.Cmd
 import noe.common.utils.JBFile
 import noe.common.utils.Library
+import noe.common.utils.LogCheckpoint
 import noe.common.utils.PathHelper
 import noe.common.utils.VerifyURLBuilder
 import noe.common.utils.Version
@@ -154,6 +155,11 @@ class Tomcat extends ServerAbstract implements WorkerServer {
     return new ServerInstanceCreatorHelper(this).createNewServerInstancePhysicalCopy(offset)
   }
 
+  @Override
+  List<File> getMutableDirs() {
+    return super.getMutableDirs() + [new File(getServerRoot() + workDir), new File(getServerRoot(), 'temp')]
+  }
+
   /**
    * Physical removing of actual server instance.
    *
@@ -196,14 +202,24 @@ class Tomcat extends ServerAbstract implements WorkerServer {
    * Check log files for ERRORS and WARNINGS
    */
   List<String> verifyLogs() {
-    final List<String> defaultFilteredLines = platform.isFips() ? Arrays.asList(
+    return super.verifyLogs(defaultFilteredLines())
+  }
+
+  /**
+   * Check log files for ERRORS and WARNINGS appended after the checkpoint
+   */
+  List<String> verifyLogsSince(LogCheckpoint mark) {
+    return super.verifyLogsSince(mark, defaultFilteredLines())
+  }
+
+  private List<String> defaultFilteredLines() {
+    return platform.isFips() ? Arrays.asList(
             "Creation of SecureRandom instance for session ID generation using \\[.*\\] took \\[",
             "Exception initializing random number generator using algorithm \\[SHA1PRNG\\]",
             "WARNING \\[main\\] org\\.apache\\.catalina\\.util\\.SessionIdGeneratorBase\\.<clinit> The default SHA1PRNG algorithm for SecureRandom is not supported by this JVM\\. Using the platform default\\.",
             "ErrorReportValve\\.java"
     ) : Arrays.asList(
             "Creation of SecureRandom instance for session ID generation using \\[.*\\] took \\[")
-    return super.verifyLogs(defaultFilteredLines)
   }
 
   /**
@@ -310,20 +326,21 @@ class Tomcat extends ServerAbstract implements WorkerServer {
     }
 
     log.debug("New address for server {} binding: '" + address + "'", serverId)
+    ConfigEditSession session = editConfig()
     if (version.getMajorVersion() == 5) {
       // Tomcat 5
-      updateConfReplaceRegExp('server.xml', '<Connector port="' + mainHttpPort + '" maxHttpHeaderSize="8192"'
+      session.replaceInConf('server.xml', '<Connector port="' + mainHttpPort + '" maxHttpHeaderSize="8192"'
           + (cfgHost == '' ? '' : ' address="' + cfgHost + '"'),
           '<Connector port="' + mainHttpPort + '" maxHttpHeaderSize="8192" address="' + address + '"')
-      updateConfReplaceRegExp('server.xml', '<Connector protocol="AJP/1.3"'
+      session.replaceInConf('server.xml', '<Connector protocol="AJP/1.3"'
           + (cfgHost == '' ? '' : ' address="' + cfgHost + '"'),
           '<Connector protocol="AJP/1.3"' + ' address="' + address + '"')
     } else {
       // Tomcat 6, 7
-      updateConfReplaceRegExp('server.xml', '<Connector port="' + mainHttpPort + '" protocol="HTTP/1.1"'
+      session.replaceInConf('server.xml', '<Connector port="' + mainHttpPort + '" protocol="HTTP/1.1"'
           + (cfgHost == '' ? '' : ' address="' + cfgHost + '"'),
           '<Connector port="' + mainHttpPort + '" protocol="HTTP/1.1" address="' + address + '"')
-      updateConfReplaceRegExp('server.xml', '<Connector protocol="AJP/1.3"'
+      session.replaceInConf('server.xml', '<Connector protocol="AJP/1.3"'
           + (cfgHost == '' ? '' : ' address="' + cfgHost + '"'),
           '<Connector protocol="AJP/1.3"' + ' address="' + address + '"')
 
@@ -331,11 +348,12 @@ class Tomcat extends ServerAbstract implements WorkerServer {
         if (version.getMajorVersion() > 7)
           log.warn("Possibly not supported version, but continuing ... ")
 
-        updateConfReplaceRegExp('server.xml', '<Server port="' + shutdownPort + '"'
+        session.replaceInConf('server.xml', '<Server port="' + shutdownPort + '"'
             + (cfgHost == '' ? '' : ' address="' + cfgHost + '"'),
             '<Server port="' + shutdownPort + '" address="' + address + '"')
       }
     }
+    session.commit()
     cfgHost = host = address
   }
 
@@ -618,28 +636,22 @@ class Tomcat extends ServerAbstract implements WorkerServer {
     return TomcatCommandUtils().getTomcatRunUser()
   }
 
+  /**
+   * Shifts all ports of server.xml by offset, the file is read and written once, see {@link TomcatConfigurator#shiftPorts(int)}
+   */
   void shiftPorts(int offset = DefaultProperties.DEFAULT_SHIFT_PORT_OFFSET) {
-    this.mainHttpPort += offset
-    this.shutdownPort += offset
-    this.mainHttpsPort += offset
-    this.ajpPort += offset
-
-    log.debug("shifting ports of server ${serverId}, updating to values: mainHttpPort ${mainHttpPort}, " +
-            "shutdownPort: ${shutdownPort}, mainHttpsPort: ${mainHttpsPort}, ajpPort: ${ajpPort}")
-
-    // TODO update server.xml ports with actual ports (this. ... )
-    this.updateConfReplaceRegExp('server.xml', '<Server port="8005"', '<Server port="' + Integer.valueOf(8005 + offset) + '"', true, true)
-    this.updateConfReplaceRegExp('server.xml', '<Connector port="8080" protocol="HTTP/1.1"', '<Connector port="' + Integer.valueOf(8080 + offset) + '" protocol="HTTP/1.1"', true, true)
-    this.updateConfReplaceRegExp('server.xml', 'redirectPort="8443"', 'redirectPort="' + Integer.valueOf(8443 + offset) + '"', false, true)
-
-    try {
-      this.updateConfReplaceRegExp('server.xml', '<Connector port="8443" protocol="HTTP/1.1"', '<Connector port="' + Integer.valueOf(8443 + offset) + '" protocol="HTTP/1.1"', true, true)
-    }
-    catch (RuntimeException rex) {
-      this.updateConfReplaceRegExp('server.xml', '<Connector port="8443" protocol="org.apache.coyote.http11.Http11Protocol"', '<Connector port="' + Integer.valueOf(8443 + offset) + '" protocol="org.apache.coyote.http11.Http11Protocol"', true, true)
+    if (retrieveConfFilesByName('server.xml').isEmpty()) {
+      log.warn("server.xml of server ${serverId} was not found, only ports of the instance are shifted")
+      this.mainHttpPort += offset
+      this.shutdownPort += offset
+      this.mainHttpsPort += offset
+      this.ajpPort += offset
+    } else {
+      new TomcatConfigurator(this).shiftPorts(offset)
     }
 
-    this.updateConfReplaceRegExp('server.xml', '<Connector protocol="AJP/1.3"' + (cfgHost == '' ? '' : ' address="' + cfgHost + '"') + ' port="8009"', '<Connector protocol="AJP/1.3"' + (cfgHost == '' ? '' : ' address="' + cfgHost + '"') + ' port="'+ Integer.valueOf(8009 + offset) + '"', true, true)
+    log.debug("ports of server ${serverId} shifted to values: mainHttpPort ${mainHttpPort}, " +
+            "shutdownPort: ${shutdownPort}, mainHttpsPort: ${mainHttpsPort}, ajpPort: ${ajpPort}")
   }
 
   @Deprecated
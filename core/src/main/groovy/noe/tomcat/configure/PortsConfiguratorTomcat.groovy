@@ -0,0 +1,74 @@
+package noe.tomcat.configure
+
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * IMPORTANT: For usage within noe-core:tomcat.configure only
+ *
+ * Shifting of all ports in Tomcat server.xml
+ *
+ * Every `port` and `redirectPort` attribute of any element (Server, Connectors, Cluster receivers, ...) is shifted,
+ * whatever its value and protocol of the connector is. Disabled ports (-1), random ports (0) and values which are not
+ * numbers (e.g. `${port.http}` placeholders) are left untouched.
+ *
+ * Ports could be shifted in the parsed model (`define()`) or directly in the text of server.xml (`shift()`), the latter
+ * keeps comments and formatting of the file.
+ */
+class PortsConfiguratorTomcat {
+
+  static final List<String> PORT_ATTRIBUTES = ['port', 'redirectPort']
+  // comments are matched to be skipped, ports in them are not shifted as they are not in the parsed model either
+  private static final Pattern PORT_OR_COMMENT = ~/(?s)(<!--.*?-->)|(\s(?:port|redirectPort)\s*=\s*)(["'])(\d+)\3/
+
+  private final Node server
+
+
+  public PortsConfiguratorTomcat(Node server) {
+    this.server = server
+  }
+
+  /**
+   * Returns modified `PortsConfiguratorTomcat#server`
+   */
+  public Node define(int offset) {
+    server.depthFirst().each { element ->
+      if (!(element instanceof Node)) {
+        return
+      }
+      Map attributes = ((Node) element).attributes()
+      PORT_ATTRIBUTES.each { String name ->
+        String value = attributes[name]?.toString()?.trim()
+        if (value?.isInteger() && value.toInteger() > 0) {
+          attributes[name] = String.valueOf(value.toInteger() + offset)
+        }
+      }
+    }
+
+    return server
+  }
+
+  /**
+   * Shifts ports in the text of server.xml in one pass, the rest of the text is kept as it is
+   *
+   * @return number of shifted ports
+   */
+  static int shift(StringBuilder xml, int offset) {
+    Matcher matcher = PORT_OR_COMMENT.matcher(xml)
+    StringBuffer shifted = new StringBuffer(xml.length())
+    int count = 0
+    while (matcher.find()) {
+      if (matcher.group(1) != null || !matcher.group(4).isInteger() || matcher.group(4).toInteger() <= 0) {
+        matcher.appendReplacement(shifted, Matcher.quoteReplacement(matcher.group(0)))
+      } else {
+        String port = String.valueOf(matcher.group(4).toInteger() + offset)
+        matcher.appendReplacement(shifted, Matcher.quoteReplacement(matcher.group(2) + matcher.group(3) + port + matcher.group(3)))
+        count++
+      }
+    }
+    matcher.appendTail(shifted)
+    xml.setLength(0)
+    xml.append(shifted)
+    return count
+  }
+}
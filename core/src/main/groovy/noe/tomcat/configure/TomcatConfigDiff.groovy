@@ -0,0 +1,101 @@
+package noe.tomcat.configure
+
+/**
+ * Changes of xml configuration files written by `TomcatConfigurator#commit()`.
+ *
+ * Changes are listed per file as lines of form
+ * <ul>
+ *  <li>`Server/Service/Connector[1]@port: 8080 -> 8181` for a changed, added (null ->) or removed (-> null) attribute</li>
+ *  <li>`Server/Service/Engine/Host[0]: text -> other text` for a changed text content</li>
+ *  <li>`+ Server/Listener[5] [className:...]` for an added element</li>
+ *  <li>`- Server/Listener[2] [className:...]` for a removed element</li>
+ * </ul>
+ * Elements are identified by their position among siblings of the same name.
+ */
+class TomcatConfigDiff {
+
+  final Map<File, List<String>> changes = [:]
+
+  void add(File config, Node before, Node after) {
+    List<String> fileChanges = []
+    compare(before, after, before.name().toString(), fileChanges)
+    changes[config] = fileChanges
+  }
+
+  /**
+   * Files written by the commit
+   */
+  Set<File> getFiles() {
+    return changes.keySet()
+  }
+
+  boolean isEmpty() {
+    return changes.values().every { it.isEmpty() }
+  }
+
+  @Override
+  String toString() {
+    return changes.collect { File config, List<String> fileChanges ->
+      ([config.absolutePath + ':'] + fileChanges.collect { '  ' + it }).join('\n')
+    }.join('\n')
+  }
+
+  /**
+   * Deep copy of the node to be compared later with the node changed meanwhile
+   */
+  static Node snapshot(Node node) {
+    Node copy = new Node(null, node.name(), new LinkedHashMap(node.attributes()))
+    node.children().each { child ->
+      if (child instanceof Node) {
+        copy.append(snapshot((Node) child))
+      } else {
+        copy.children().add(child)
+      }
+    }
+    return copy
+  }
+
+  private static void compare(Node before, Node after, String path, List<String> fileChanges) {
+    Map beforeAttributes = before.attributes()
+    Map afterAttributes = after.attributes()
+    (beforeAttributes.keySet() + afterAttributes.keySet()).each { key ->
+      if (beforeAttributes[key] != afterAttributes[key]) {
+        fileChanges.add("${path}@${key}: ${beforeAttributes[key]} -> ${afterAttributes[key]}".toString())
+      }
+    }
+    if (text(before) != text(after)) {
+      fileChanges.add("${path}: ${text(before)} -> ${text(after)}".toString())
+    }
+
+    Map<String, List<Node>> beforeChildren = children(before)
+    Map<String, List<Node>> afterChildren = children(after)
+    (beforeChildren.keySet() + afterChildren.keySet()).each { String name ->
+      List<Node> beforeNodes = beforeChildren[name] ?: []
+      List<Node> afterNodes = afterChildren[name] ?: []
+      for (int i = 0; i < Math.max(beforeNodes.size(), afterNodes.size()); i++) {
+        String childPath = "${path}/${name}[${i}]"
+        if (i >= afterNodes.size()) {
+          fileChanges.add("- ${childPath} ${beforeNodes[i].attributes()}".toString())
+        } else if (i >= beforeNodes.size()) {
+          fileChanges.add("+ ${childPath} ${afterNodes[i].attributes()}".toString())
+        } else {
+          compare(beforeNodes[i], afterNodes[i], childPath, fileChanges)
+        }
+      }
+    }
+  }
+
+  private static Map<String, List<Node>> children(Node node) {
+    Map<String, List<Node>> children = new LinkedHashMap<String, List<Node>>()
+    node.children().each { child ->
+      if (child instanceof Node) {
+        children.get(((Node) child).name().toString(), []).add((Node) child)
+      }
+    }
+    return children
+  }
+
+  private static String text(Node node) {
+    return node.children().findAll { !(it instanceof Node) }.join('')
+  }
+}
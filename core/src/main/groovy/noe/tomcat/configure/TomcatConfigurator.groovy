@@ -25,12 +25,37 @@ import noe.tomcat.configure.envars.ZipTomcatEnvVarsFile
  *
  * Any configuration is backed-up to vault (`FileStateVault`).
  * For all configuration reverting to original state, call method `revertAllConfiguration()`.
+ *
+ * By default every call writes its xml configuration file. In deferred mode (see `deferCommit()`) parsed xml files
+ * are kept in memory across calls and written by `commit()` only, each changed file once with one vault backup:
+ * <pre>
+ *   TomcatConfigDiff diff = new TomcatConfigurator(tomcat).deferCommit()
+ *       .jvmRoute('node1')
+ *       .httpConnector(new NonSecureHttpConnectorTomcat().setPort(8180))
+ *       .ajpConnector(new AjpConnectorTomcat().setPort(8109))
+ *       .commit()
+ * </pre>
+ * A kept file is parsed again when it is changed on disk meanwhile, unless it has uncommitted changes.
  */
 class TomcatConfigurator {
 
   private final Tomcat tomcatInstance
-  private Map<File, Node> parsedConfigs = [:]
+  private Map<File, ParsedConfig> parsedConfigs = [:]
   private final FileStateVault configVault = new FileStateVault()
+  private boolean deferred = false
+
+  private static class ParsedConfig {
+    Node node
+    // as written on disk, for the diff
+    Node original
+    long lastModified
+    long length
+    boolean changed
+
+    boolean isUpToDate(File config) {
+      return config.lastModified() == lastModified && config.length() == length
+    }
+  }
 
 
   TomcatConfigurator(Tomcat tomcatInstance) {
@@ -194,6 +219,40 @@ class TomcatConfigurator {
     return this
   }
 
+  /**
+   * Shift all ports in server.xml by offset, see `PortsConfiguratorTomcat`.
+   * Unlike `portOffset()`, server.xml is read and written once and ports are shifted by what is actually
+   * configured, whatever the connector protocols and the original values are.
+   * Ports are shifted in the text of server.xml, so comments are kept, unless the file is kept parsed with changes
+   * to be committed (deferred mode).
+   */
+  TomcatConfigurator shiftPorts(int offset) {
+    File serverXml = getServerXml()
+
+    if (serverXml?.exists()) {
+      if (deferred || parsedConfigs[serverXml]?.changed) {
+        Node Server = getParsedConfig(serverXml)
+        setParsedConfig(serverXml, new PortsConfiguratorTomcat(Server).define(offset))
+      } else {
+        configVault.push(serverXml)
+        tomcatInstance.editConfig()
+            .editInFile(serverXml.getAbsolutePath(), "shift ports by ${offset}", { StringBuilder text -> PortsConfiguratorTomcat.shift(text, offset) > 0 })
+            .commit()
+        // written behind the parsed model, it is parsed again by the next call
+        parsedConfigs.remove(serverXml)
+      }
+
+      tomcatInstance.shutdownPort += offset
+      tomcatInstance.mainHttpPort += offset
+      tomcatInstance.mainHttpsPort += offset
+      tomcatInstance.ajpPort += offset
+    } else {
+      missingConfigFile('server.xml')
+    }
+
+    return configure()
+  }
+
   /**
    * Sets shutdown server attributes
    *
@@ -305,13 +364,12 @@ class TomcatConfigurator {
     File confFile = retrieveConfFile(confName)
 
     if (confFile?.exists()) {
-      configVault.push(confFile)
-      printNodeToFile(confFile, parsedXml)
+      setParsedConfig(confFile, parsedXml)
     } else {
       missingConfigFile('server.xml')
     }
 
-    return this
+    return configure()
   }
 
   /**
@@ -339,18 +397,17 @@ class TomcatConfigurator {
     String tomcatUsers = 'tomcat-users.xml'
     File confFile = retrieveConfFile(tomcatUsers)
     if (confFile?.exists()) {
-      configVault.push(confFile)
       Map userAttributes = ['username' : user.username,
                             'password' : user.password,
                             'roles'    : user.parsedRoles]
 
       Node usersNode = getParsedConfig(confFile)
       usersNode.appendNode('user',userAttributes)
-      printNodeToFile(confFile, usersNode)
+      setParsedConfig(confFile, usersNode)
     } else {
       missingConfigFile(tomcatUsers)
     }
-    return this
+    return configure()
   }
 
   /**
@@ -362,14 +419,13 @@ class TomcatConfigurator {
     String serverXml = 'server.xml'
     File confFile = retrieveConfFile(serverXml)
     if (confFile?.exists()) {
-      configVault.push(confFile)
       Node serverNode = getParsedConfig(confFile)
       serverNode.appendNode('Listener', ['className' : listenerFQCN])
-      printNodeToFile(confFile, serverNode)
+      setParsedConfig(confFile, serverNode)
     } else {
       missingConfigFile(serverXml)
     }
-    return this
+    return configure()
   }
 
   /**
@@ -381,15 +437,14 @@ class TomcatConfigurator {
     File serverXml = getServerXml()
 
     if (serverXml?.exists()) {
-      configVault.push(serverXml)
       Node serverNode = getParsedConfig(serverXml)
       Node listener = serverNode.Listener.find { it.@className.contains(listenerFQCN) }
       serverNode.remove(listener)
-      printNodeToFile(serverXml, serverNode)
+      setParsedConfig(serverXml, serverNode)
     } else {
       missingConfigFile('server.xml')
     }
-    return this
+    return configure()
   }
 
   /**
@@ -468,36 +523,115 @@ class TomcatConfigurator {
   /**
    * Persists configuration model stored in memory.
    * Model in memory will be cleared.
+   *
+   * In deferred mode nothing is persisted, see `commit()`.
    */
   TomcatConfigurator configure() {
-    parsedConfigs.each { File config, Node node ->
-      configVault.push(config)
-      printNodeToFile(config, node)
+    if (!deferred) {
+      persist()
+      parsedConfigs.clear()
     }
 
-    parsedConfigs.clear()
+    return this
+  }
+
+  /**
+   * Switches deferred mode on or off. In deferred mode configuration calls change parsed xml files kept in memory
+   * only, `commit()` persists them.
+   * Switching deferred mode off does not persist anything, call `commit()` before.
+   */
+  TomcatConfigurator deferCommit(boolean deferred = true) {
+    this.deferred = deferred
 
     return this
   }
 
+  /**
+   * Persists all changed xml configuration files kept in memory, each file is backed-up to vault and written once.
+   * Parsed files are kept in memory for following calls in deferred mode.
+   *
+   * @return changes of the written files
+   */
+  TomcatConfigDiff commit() {
+    TomcatConfigDiff diff = persist()
+    if (!deferred) {
+      parsedConfigs.clear()
+    }
+
+    return diff
+  }
+
+  /**
+   * @return true if there are changes not persisted yet
+   */
+  boolean hasUncommittedChanges() {
+    return parsedConfigs.values().any { it.changed }
+  }
+
+  private TomcatConfigDiff persist() {
+    TomcatConfigDiff diff = new TomcatConfigDiff()
+    parsedConfigs.each { File config, ParsedConfig parsed ->
+      if (!parsed.changed) {
+        return
+      }
+      configVault.push(config)
+      printNodeToFile(config, parsed.node)
+
+      diff.add(config, parsed.original, parsed.node)
+      parsed.original = TomcatConfigDiff.snapshot(parsed.node)
+      parsed.lastModified = config.lastModified()
+      parsed.length = config.length()
+      parsed.changed = false
+    }
+
+    return diff
+  }
+
   private File getServerXml() {
     return retrieveConfFile("server.xml")
   }
 
   private void setParsedConfig(File config, Node parsedConfig) {
-    parsedConfigs[config] = parsedConfig
+    if (!isConfigParsed(config)) {
+      // e.g. externally parsed, the original is parsed for the diff
+      parse(config)
+    }
+    parsedConfigs[config].node = parsedConfig
+    parsedConfigs[config].changed = true
   }
 
   private Node getParsedConfig(File config) {
     if (!isConfigParsed(config)) {
-      parsedConfigs[config] = new XmlParser().parse(config)
+      parse(config)
     }
 
-    return parsedConfigs[config]
+    return parsedConfigs[config].node
   }
 
+  /**
+   * Parsed config is dropped when the file was changed on disk since it was parsed or written by this configurator
+   */
   private boolean isConfigParsed(File config) {
-    return parsedConfigs.containsKey(config)
+    ParsedConfig parsed = parsedConfigs[config]
+    if (parsed == null) {
+      return false
+    }
+    if (!parsed.isUpToDate(config)) {
+      if (parsed.changed) {
+        throw new IllegalStateException("'${config}' was changed on disk while it has uncommitted changes in tomcat with id '${tomcatInstance.getServerId()}'")
+      }
+      parsedConfigs.remove(config)
+      return false
+    }
+
+    return true
+  }
+
+  private void parse(File config) {
+    ParsedConfig parsed = new ParsedConfig(lastModified: config.lastModified(), length: config.length())
+    parsed.node = new XmlParser().parse(config)
+    parsed.original = TomcatConfigDiff.snapshot(parsed.node)
+    parsedConfigs[config] = parsed
   }
 
   /**
@@ -13,8 +13,19 @@ class JavaVersion {
             case "-vminfo":
                 System.out.print(System.getProperty("java.vm.info"));
                 break;
+            case "-all":
+                java.util.Properties properties = new java.util.Properties();
+                for (String name : new String[] {"java.version", "java.vendor", "java.vm.name", "java.vm.info"}) {
+                    properties.setProperty(name, System.getProperty(name));
+                }
+                try {
+                    properties.store(System.out, null);
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
             default:
-                System.out.print("JavaVersion -version|-vendor|-vmname|-vminfo");
+                System.out.print("JavaVersion -version|-vendor|-vmname|-vminfo|-all");
         }
     }
 }
@@ -0,0 +1,69 @@
+package noe.common
+
+import org.junit.Assert
+import org.junit.Test
+
+class StreamCaptureTest {
+
+  private static void write(StreamCapture capture, String text) {
+    byte[] bytes = text.getBytes()
+    capture.write(bytes, 0, bytes.length)
+  }
+
+  @Test
+  void linesTest() {
+    List<String> lines = []
+    StreamCapture capture = new StreamCapture().onLine({ String line -> lines.add(line) } as StreamCapture.LineListener)
+    write(capture, 'first\r\nsec')
+    Assert.assertEquals(['first'], lines)
+    write(capture, 'ond\nlast')
+    capture.close()
+
+    Assert.assertEquals(['first', 'second', 'last'], lines)
+    String nl = StreamConsumer.NEW_LINE
+    Assert.assertEquals("first${nl}second${nl}last${nl}".toString(), capture.toString())
+    Assert.assertEquals(0, capture.getDroppedChars())
+  }
+
+  @Test
+  void tailRetentionTest() {
+    StreamCapture capture = new StreamCapture(10)
+    (1..1000).each { write(capture, "${it}\n") }
+    capture.close()
+
+    String nl = StreamConsumer.NEW_LINE
+    String expected = "${nl}999${nl}1000${nl}".toString()
+    expected = expected.substring(expected.length() - 10)
+    Assert.assertEquals(expected, capture.toString())
+    Assert.assertTrue(capture.getDroppedChars() > 0)
+  }
+
+  @Test
+  void wholeOutputIsKeptByDefaultTest() {
+    StreamCapture capture = new StreamCapture()
+    String line = 'x' * 1023
+    int lines = StreamCapture.DEFAULT_LIMIT.intdiv(1024) + 2
+    lines.times { write(capture, "${line}\n") }
+    capture.close()
+
+    Assert.assertEquals(lines * (line + StreamConsumer.NEW_LINE).length(), capture.toString().length())
+    Assert.assertEquals(0, capture.getDroppedChars())
+  }
+
+  @Test
+  void spillTest() {
+    File spill = File.createTempFile('noe-capture', '.txt')
+    spill.deleteOnExit()
+    StreamCapture capture = new StreamCapture(4).spillTo(spill)
+    write(capture, 'line one\nline two\n')
+    capture.close()
+
+    Assert.assertEquals(['line one', 'line two'], spill.readLines())
+    Assert.assertEquals(4, capture.toString().length())
+  }
+
+  @Test(expected = IllegalArgumentException)
+  void invalidLimitTest() {
+    new StreamCapture(0)
+  }
+}
@@ -112,4 +112,24 @@ public class ListProcessDataTest {
         Assert.assertTrue("Arthur should not be removed", filteredData.contains(USER, "arthur"));
         Assert.assertFalse("Hobit should be removed", filteredData.contains(USER, "bilbo"));
     }
+
+    @Test
+    public void testTypedAccess() {
+        int index = data.indexOf(24);
+        Assert.assertTrue("Process 24 should be listed", index >= 0);
+        Assert.assertEquals(24, data.getPid(index));
+        Assert.assertEquals(42, data.getParentPid(index));
+        Assert.assertEquals("haveatowel", data.getCommand(index));
+        Assert.assertEquals("arthur", data.getUser(index));
+        Assert.assertEquals(-1, data.getParentPid(data.indexOf(0)));
+        Assert.assertEquals(-1, data.indexOf(7));
+
+        final ListProcessData filteredData = data.filter(i -> data.getParentPid(i) == 42);
+        Assert.assertEquals(2, filteredData.size());
+        Assert.assertTrue(filteredData.contains(PROCESS_ID, "443"));
+
+        int[] sorted = data.sortedIndexes(true, PROCESS_ID);
+        Assert.assertEquals(443, data.getPid(sorted[0]));
+        Assert.assertEquals(0, data.getPid(sorted[4]));
+    }
 }
@@ -0,0 +1,41 @@
+package noe.common.newcmd;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+public class ProcFsReaderTest {
+
+    @Test
+    public void testFormatting() {
+        Assert.assertEquals("00:00:05", ProcFsReader.formatTime(5));
+        Assert.assertEquals("02:01:00", ProcFsReader.formatTime(2 * 3600 + 60));
+        Assert.assertEquals("3-00:00:01", ProcFsReader.formatTime(3 * 86400 + 1));
+
+        Assert.assertEquals("00:05", ProcFsReader.formatElapsedTime(5));
+        Assert.assertEquals("01:00:00", ProcFsReader.formatElapsedTime(3600));
+        Assert.assertEquals("2-03:04:05", ProcFsReader.formatElapsedTime(2 * 86400 + 3 * 3600 + 4 * 60 + 5));
+
+        Assert.assertEquals("?", ProcFsReader.formatTty(0));
+        Assert.assertEquals("pts/3", ProcFsReader.formatTty((136 << 8) + 3));
+        Assert.assertEquals("tty1", ProcFsReader.formatTty((4 << 8) + 1));
+        Assert.assertEquals("ttyS0", ProcFsReader.formatTty((4 << 8) + 64));
+    }
+
+    @Test
+    public void testReadingCurrentProcess() {
+        Assume.assumeTrue(ProcFsReader.isAvailable());
+        long pid = Long.parseLong(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+
+        ListProcessData data = new ProcFsReader().listAll(PsCmdFormat.PROCESS_ID, PsCmdFormat.PARENT_PROCESS_ID,
+                PsCmdFormat.COMMAND, PsCmdFormat.COMMAND_ARGS);
+        Map<PsCmdFormat, String> current = data.get(pid);
+        Assert.assertNotNull("Current process " + pid + " has to be listed", current);
+        Assert.assertEquals(String.valueOf(pid), current.get(PsCmdFormat.PROCESS_ID));
+        Assert.assertTrue(current.get(PsCmdFormat.COMMAND_ARGS).contains("java"));
+        Assert.assertNotNull(data.get(Long.parseLong(current.get(PsCmdFormat.PARENT_PROCESS_ID))));
+    }
+}
@@ -0,0 +1,164 @@
+package noe.common.utils
+
+import org.junit.After
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class BlobStateVaultTest {
+
+  File testDir
+  File storeDir
+  BlobStore store
+  BlobStateVault vault
+
+  @Before
+  void prepare() {
+    testDir = File.createTempDir('noe', 'BlobStateVault')
+    storeDir = File.createTempDir('noe', 'BlobStore')
+    store = new BlobStore(storeDir)
+    vault = new BlobStateVault(store)
+
+    new File(testDir, 'conf').mkdirs()
+    new File(testDir, 'conf/server.xml').text = '<Server port="8005"/>'
+    new File(testDir, 'conf/web.xml').text = '<web-app/>'
+    new File(testDir, 'bin').mkdirs()
+    new File(testDir, 'bin/catalina.sh').text = '#!/bin/sh'
+  }
+
+  @After
+  void cleanup() {
+    testDir?.deleteDir()
+    store?.clear()
+    storeDir?.deleteDir()
+  }
+
+  private Map<String, String> content(File dir) {
+    Map<String, String> content = new TreeMap<String, String>()
+    dir.eachFileRecurse { File file ->
+      content[dir.toPath().relativize(file.toPath()).toString()] = file.isFile() ? file.text : '<dir>'
+    }
+    return content
+  }
+
+  private int blobCount() {
+    int count = 0
+    storeDir.eachFileRecurse { File file -> if (file.isFile()) count++ }
+    return count
+  }
+
+  @Test
+  void pushPopDirectoryTest() {
+    Map<String, String> original = content(testDir)
+    vault.push(testDir)
+    assertTrue(vault.isPushed(testDir))
+
+    new File(testDir, 'conf/server.xml').text = '<Server port="9005"/>'
+    new File(testDir, 'conf/web.xml').delete()
+    new File(testDir, 'conf/added.xml').text = 'added'
+    new File(testDir, 'logs').mkdirs()
+    new File(testDir, 'logs/catalina.out').text = 'log'
+    new File(testDir, 'bin').deleteDir()
+    new File(testDir, 'bin').text = 'file instead of directory'
+
+    vault.pop(testDir)
+    assertEquals(original, content(testDir))
+    assertFalse(vault.isPushed(testDir))
+  }
+
+  @Test
+  void permissionsTest() {
+    Assume.assumeFalse(new Platform().isWindows())
+    File script = new File(testDir, 'bin/catalina.sh')
+    JBFile.chmod('0750', script)
+    vault.push(testDir)
+
+    JBFile.chmod('0600', script)
+    script.text = 'changed'
+    vault.pop(testDir)
+
+    assertEquals('#!/bin/sh', script.text)
+    assertEquals('0750', JBFile.retrievePermissions(script).getPerm())
+  }
+
+  @Test
+  void notExistingTest() {
+    File missing = new File(testDir, 'webapps')
+    vault.push(missing)
+    new File(missing, 'ROOT').mkdirs()
+
+    vault.pop(missing)
+    assertFalse(missing.exists())
+  }
+
+  @Test
+  void deduplicationTest() {
+    File copy = new File(testDir, 'copy')
+    copy.mkdirs()
+    new File(copy, 'server.xml').text = new File(testDir, 'conf/server.xml').text
+
+    vault.push(new File(testDir, 'conf'))
+    vault.push(new File(testDir, 'conf'))
+    new BlobStateVault(store).push(copy)
+
+    assertEquals(2, blobCount())
+  }
+
+  @Test
+  void popReleasesBlobsTest() {
+    File serverXml = new File(testDir, 'conf/server.xml')
+    vault.push(serverXml)
+    serverXml.text = 'second'
+    vault.push(serverXml)
+    serverXml.text = 'third'
+    BlobStateVault other = new BlobStateVault(store).push(serverXml)
+    assertEquals(3, blobCount())
+
+    vault.pop(serverXml)
+    assertEquals(2, blobCount())
+    assertEquals('second', serverXml.text)
+
+    vault.popAll()
+    assertEquals('third is still referenced by the other vault', 1, blobCount())
+    other.pop()
+    assertEquals(0, blobCount())
+    assertEquals('third', serverXml.text)
+  }
+
+  @Test
+  void popAllTest() {
+    File serverXml = new File(testDir, 'conf/server.xml')
+    vault.push(serverXml)
+    serverXml.text = 'second'
+    vault.push(serverXml)
+    serverXml.text = 'third'
+
+    vault.popAll()
+    assertEquals('<Server port="8005"/>', serverXml.text)
+    assertFalse(vault.isPushed(serverXml))
+  }
+
+  @Test
+  void variantModifiedInPlaceIsNotLinkedTest() {
+    Assume.assumeFalse(new Platform().isWindows())
+    String hash = store.store(new File(testDir, 'conf/server.xml'))
+    File first = new File(testDir, 'first.xml')
+    File second = new File(testDir, 'second.xml')
+    store.link(hash, '0644', first)
+
+    // the same length, written in place to the linked variant
+    first.text = '<Server port="9005"/>'
+    store.link(hash, '0644', second)
+
+    assertEquals('<Server port="8005"/>', second.text)
+  }
+
+  @Test(expected = IllegalStateException)
+  void popNotPushedTest() {
+    vault.pop(testDir)
+  }
+}
@@ -99,6 +99,22 @@ class DirStateVaultTest {
     Assert.assertFalse("Testing directory was popped out, it should not be in vault yet.", vault.isPushed(testDir))
   }
 
+  @Test
+  void popRestoresOnlyChangedItems() {
+    DirStateVault vault = new DirStateVault().push(testDir)
+    File added = new File(testDir, 'added-after-push.tmp')
+    added.createNewFile()
+    File modified = firstLevelDir[FILES_PER_FOLDER][0]
+    modified.append('footer')
+
+    vault.pop(testDir)
+
+    assertEquals([added.absolutePath], vault.lastRestoreDiff.deleted)
+    assertEquals([modified.absolutePath], vault.lastRestoreDiff.rewritten)
+    assertEquals([], vault.lastRestoreDiff.recreated)
+    assertEquals(FILES_PER_FOLDER + FOLDERS_PER_FOLDER * FILES_PER_FOLDER - 1, vault.lastRestoreDiff.unchanged)
+  }
+
   @Test
   void nonExistingDirectoryIsPushed() {
     File dir = new File(testDir, 'i-have-never-existed-physically')
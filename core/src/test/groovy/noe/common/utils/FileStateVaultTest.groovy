@@ -46,6 +46,46 @@ class FileStateVaultTest {
     assertTrue(Arrays.equals(testFile.getBytes(), fileContentToTest))
   }
 
+  @Test
+  void unchangedFileIsNotRewritten() {
+    testFile.setLastModified(System.currentTimeMillis() - 60000)
+    long lastModified = testFile.lastModified()
+    FileStateVault vault = new FileStateVault().push(testFile)
+    vault.pop(testFile)
+
+    assertEquals(lastModified, testFile.lastModified())
+    assertTrue(vault.lastRestoreDiff.isEmpty())
+    assertEquals(1, vault.lastRestoreDiff.unchanged)
+  }
+
+  @Test
+  void sameSizeModificationIsRestored() {
+    FileStateVault vault = new FileStateVault().push(testFile)
+    byte[] modified = fileContentToTest.clone()
+    modified[0] = (byte) (modified[0] + 1)
+    testFile.setBytes(modified)
+    vault.pop(testFile)
+
+    assertTrue(Arrays.equals(testFile.getBytes(), fileContentToTest))
+    assertEquals([testFile.absolutePath], vault.lastRestoreDiff.rewritten)
+  }
+
+  @Test
+  void restoreDiffIsReported() {
+    File dir = testFolder.newFolder()
+    File deletedFile = new File(dir, 'deleted')
+    File createdFile = new File(dir, 'created')
+    FileStateVault vault = new FileStateVault().push(testFile).push(deletedFile).push(createdFile)
+
+    deletedFile.setText('not expected after pop')
+    vault.popAll()
+
+    assertEquals([deletedFile.absolutePath], vault.lastRestoreDiff.deleted)
+    assertEquals(1, vault.lastRestoreDiff.unchanged)
+    assertFalse(deletedFile.exists())
+    assertFalse(createdFile.exists())
+  }
+
   @Test
   void pushPopFileWasNotExisted() {
     File testFolder = testFolder.newFolder()
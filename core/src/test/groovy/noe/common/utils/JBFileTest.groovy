@@ -4,6 +4,9 @@ import groovy.util.logging.Slf4j
 import org.junit.Assume
 import org.junit.Test
 
+import java.nio.charset.Charset
+import java.util.regex.Pattern
+
 import static org.junit.Assert.assertEquals
 import static org.junit.Assert.assertFalse
 import static org.junit.Assert.assertTrue
@@ -366,6 +369,29 @@ blah blah blah
     }
   }
 
+  @Test
+  void retrievePermissionsMatchesListLongTest() {
+    Assume.assumeFalse('Octal permissions are only present on Unix-like', platform.isWindows())
+    File testFile = null
+    try {
+      testFile = File.createTempFile('noe', 'jbfile')
+      ["4755", "0640", "2710"].each { String perm ->
+        assertTrue("Wrong chmod return code ", JBFile.chmod(perm, testFile) == 0)
+        String listLong = JBFile.callListLongDirectory(testFile)
+        JBFile.FilePermission filePerm = JBFile.retrievePermissions(testFile)
+        assertEquals(perm, filePerm.getPerm())
+        assertEquals(JBFile.readOctalPermissions(listLong), filePerm.getPerm())
+        assertEquals(listLong.split()[2], filePerm.getOwner())
+        assertEquals(listLong.split()[3], filePerm.getGroup())
+      }
+
+      JBFile.definePermissions(new JBFile.FilePermission(null, null, "0604"), testFile)
+      assertEquals("0604", JBFile.retrievePermissions(testFile).getPerm())
+    } finally {
+      testFile?.delete()
+    }
+  }
+
   @Test
   void testNativeUnzip() {
     File tmpDestDir = null
@@ -414,6 +440,73 @@ third line
     }
   }
 
+  @Test
+  void testHasMatchingLineStreamed() {
+    File testFile = File.createTempFile('noe', 'jbfile')
+    try {
+      // lines longer than the read buffer and all kinds of line terminators
+      String longLine = 'x' * 100000
+      testFile.text = "${longLine}\r\nsecond ${longLine}\rthird line\n\nlast line"
+
+      assertTrue JBFile.hasMatchingLine(testFile, /second x+/)
+      assertTrue JBFile.hasMatchingLine(testFile, /third line/, 3)
+      assertFalse JBFile.hasMatchingLine(testFile, /third line/, 4)
+      assertTrue JBFile.hasMatchingLine(testFile, ~/^$/, 4)
+      assertTrue JBFile.hasMatchingLine(testFile, 'last line', 5)
+      assertFalse JBFile.hasMatchingLine(testFile, 'last')
+
+      // multi byte characters split by the read buffer
+      testFile.setText("${'č' * 100000}\nlast line", 'UTF-8')
+      List<String> lines = []
+      MappedLineReader.forEachLine(testFile, 0L, Charset.forName('UTF-8'), { CharSequence line, long lineNumber ->
+        lines.add(line.toString())
+        return true
+      } as MappedLineReader.LineHandler)
+      assertEquals(['č' * 100000, 'last line'], lines)
+    } finally {
+      testFile.delete()
+    }
+  }
+
+  @Test
+  void testFileRegexpOccurrencesStreamed() {
+    File testFile = File.createTempFile('noe', 'jbfile')
+    try {
+      testFile.text = "GET /index.html 200\r\nget /index.html 404\nGET /index.html 200 GET /index.html 200\r"
+
+      // counted line by line
+      assertEquals 3, JBFile.fileRegexpOccurrences(testFile, /GET \/index\.html \d+/)
+      assertEquals 4, JBFile.fileRegexpOccurrences(testFile, ~/(?i)GET \/index\.html/)
+      assertEquals 4, JBFile.fileRegexpOccurrences(testFile, Pattern.compile('get /index', Pattern.CASE_INSENSITIVE))
+      // matched against the whole text
+      assertEquals 2, JBFile.fileRegexpOccurrences(testFile, /(?m)^GET/)
+      assertEquals 1, JBFile.fileRegexpOccurrences(testFile, /200\s+get/)
+      assertEquals 0, JBFile.fileRegexpOccurrences(testFile.parentFile, /GET/)
+    } finally {
+      testFile.delete()
+    }
+  }
+
+  @Test
+  void testEmptyFileAndCheckpointAtEnd() {
+    File testFile = File.createTempFile('noe', 'jbfile')
+    try {
+      assertFalse JBFile.hasMatchingLine(testFile, /GET.*/)
+      assertEquals 0, JBFile.fileRegexpOccurrences(testFile, /GET/)
+
+      testFile.text = "GET /index.html 200\n"
+      LogCheckpoint checkpoint = LogCheckpoint.mark([testFile])
+      assertFalse JBFile.hasMatchingLine(testFile, /GET.*/, checkpoint)
+      assertEquals 0, JBFile.fileRegexpOccurrences(testFile, /GET/, checkpoint)
+
+      testFile.append("GET /other.html 404\n")
+      assertTrue JBFile.hasMatchingLine(testFile, /GET \/other.*/, checkpoint)
+      assertEquals 1, JBFile.fileRegexpOccurrences(testFile, /GET/, checkpoint)
+    } finally {
+      testFile.delete()
+    }
+  }
+
   @Test
   void testIsExistingFile() {
 
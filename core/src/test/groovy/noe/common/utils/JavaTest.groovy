@@ -1,6 +1,7 @@
 package noe.common.utils
 
 import org.junit.Assert
+import org.junit.Assume
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.powermock.api.mockito.PowerMockito
@@ -185,4 +186,39 @@ class JavaTest {
       Assert.assertTrue("Java version string compared '" + testedString + "'", Java.isJdkXOrHigher("1.11"))
     }
   }
+
+  @Test
+  void testProbe() {
+    String javaHome = System.getProperty('java.home')
+    Map<String, String> probed = Java.probe(javaHome)
+
+    Assert.assertEquals(System.getProperty('java.version'), probed['java.version'])
+    Assert.assertEquals(System.getProperty('java.vendor'), probed['java.vendor'])
+    Assert.assertEquals(System.getProperty('java.vm.name'), probed['java.vm.name'])
+    Assert.assertEquals(System.getProperty('java.vm.info'), probed['java.vm.info'])
+    // from the cache
+    Assert.assertEquals(probed, Java.probe(javaHome))
+  }
+
+  @Test
+  void testFailedProbeIsNotCached() {
+    Assume.assumeFalse(new Platform().isWindows())
+    File javaHome = File.createTempDir('noe', 'broken-jdk')
+    try {
+      File calls = new File(javaHome, 'calls')
+      new File(javaHome, 'bin').mkdirs()
+      ['java', 'javac'].each { String tool ->
+        File script = new File(javaHome, "bin/${tool}")
+        script.text = "#!/bin/sh\necho ${tool} >> '${calls.absolutePath}'\nexit 1\n"
+        script.setExecutable(true)
+      }
+
+      Assert.assertNull(Java.probe(javaHome.absolutePath)['java.version'])
+      int javaCalls = calls.readLines().count('java')
+      Assert.assertNull(Java.probe(javaHome.absolutePath)['java.version'])
+      Assert.assertTrue('failed probe has to be run again', calls.readLines().count('java') > javaCalls)
+    } finally {
+      javaHome.deleteDir()
+    }
+  }
 }
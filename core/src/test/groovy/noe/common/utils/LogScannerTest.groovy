@@ -0,0 +1,72 @@
+package noe.common.utils
+
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+
+import java.util.regex.Pattern
+
+class LogScannerTest {
+
+  private static final Pattern SEVERITY = Pattern.compile('ERROR|WARN|SEVERE', Pattern.CASE_INSENSITIVE)
+
+  File dir
+  List<File> logs
+
+  @Before
+  void createLogs() {
+    dir = File.createTempDir('noe', 'LogScanner')
+    logs = (1..5).collect { int i ->
+      File log = new File(dir, "server-${i}.log")
+      log.withWriter { Writer writer ->
+        1000.times { writer.write("INFO line ${it}\n") }
+        writer.write("[main] Error: failure ${i}\n")
+        writer.write("[main] warning: known issue\n")
+      }
+      return log
+    }
+  }
+
+  @After
+  void deleteLogs() {
+    dir?.deleteDir()
+  }
+
+  @Test
+  void findAllKeepsOrderOfFiles() {
+    List<LogScanner.Match> matches = new LogScanner(SEVERITY).findAll(logs)
+
+    Assert.assertEquals(10, matches.size())
+    Assert.assertEquals(logs.collectMany { [it, it] }, matches*.file)
+    Assert.assertEquals(1001L, matches[0].lineNumber)
+    Assert.assertEquals("${logs[0].absolutePath} [main] Error: failure 1".toString(), matches[0].toString())
+  }
+
+  @Test
+  void excludedLinesAreNotReported() {
+    List<String> matches = new LogScanner(SEVERITY).excluding(['known issue', 'server-2\\.log']).findAll(logs)*.line
+
+    Assert.assertEquals(['[main] Error: failure 1', '[main] Error: failure 3', '[main] Error: failure 4', '[main] Error: failure 5'], matches)
+  }
+
+  @Test
+  void containsAnyMatchesWholeLine() {
+    Assert.assertTrue(new LogScanner(~/.*failure 5/, true).containsAny(logs))
+    Assert.assertFalse(new LogScanner(~/failure 5/, true).containsAny(logs))
+    Assert.assertFalse(new LogScanner(~/.*failure 6/, true).containsAny(logs))
+  }
+
+  @Test
+  void sinceCheckpointScansAppendedLinesOnly() {
+    LogCheckpoint checkpoint = LogCheckpoint.mark(logs)
+    logs[0].append("SEVERE: appended\n")
+    new File(dir, 'new.log').text = "ERROR: in a new file\n"
+    logs[1].delete()
+    logs[1].text = "WARN: rotated\n"
+
+    List<String> matches = new LogScanner(SEVERITY).since(checkpoint).findAll(logs + new File(dir, 'new.log'))*.line
+
+    Assert.assertEquals(['SEVERE: appended', 'WARN: rotated', 'ERROR: in a new file'], matches)
+  }
+}
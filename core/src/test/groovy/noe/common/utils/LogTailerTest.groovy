@@ -0,0 +1,90 @@
+package noe.common.utils
+
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+class LogTailerTest {
+
+  File logFile
+
+  @Before
+  void setUp() {
+    logFile = File.createTempFile('noe-tailer', '.log')
+  }
+
+  @After
+  void tearDown() {
+    logFile.delete()
+  }
+
+  @Test
+  void pollTest() {
+    LogTailer tailer = new LogTailer(logFile)
+    logFile << 'first\r\nsecond\nthi'
+    Assert.assertEquals(['first', 'second'], tailer.poll())
+    logFile << 'rd\n'
+    Assert.assertEquals(['third'], tailer.poll())
+    Assert.assertEquals([], tailer.poll())
+  }
+
+  @Test
+  void truncationTest() {
+    LogTailer tailer = new LogTailer(logFile)
+    logFile << 'old line one\nold line two\n'
+    Assert.assertEquals(2, tailer.poll().size())
+    logFile.text = 'new\n'
+    Assert.assertEquals(['new'], tailer.poll())
+  }
+
+  @Test
+  void rotationTest() {
+    LogTailer tailer = new LogTailer(logFile)
+    logFile << 'before rotation\n'
+    Assert.assertEquals(['before rotation'], tailer.poll())
+    File rotated = new File(logFile.absolutePath + '.1')
+    Assert.assertTrue(logFile.renameTo(rotated))
+    try {
+      logFile << 'after rotation, longer than the original content\n'
+      Assert.assertEquals(['after rotation, longer than the original content'], tailer.poll())
+    } finally {
+      rotated.delete()
+    }
+  }
+
+  @Test
+  void awaitTest() {
+    logFile << 'Server startup in 42 ms\n'
+    LogTailer tailer = LogTailer.fromEnd(logFile)
+    Thread writer = Thread.start {
+      sleep 300
+      logFile << 'INFO started\nINFO Server startup in 1234 ms'
+    }
+    try {
+      Assert.assertFalse(tailer.await(/.*startup in 42 ms/, 100, TimeUnit.MILLISECONDS))
+      // unterminated line is matched as well
+      Assert.assertTrue(tailer.await(/.*startup in \d+ ms/, 5, TimeUnit.SECONDS))
+    } finally {
+      writer.join()
+    }
+  }
+
+  @Test
+  void onLineTest() {
+    List<String> lines = new CopyOnWriteArrayList<String>()
+    LogTailer tailer = new LogTailer(logFile).onLine { String line -> lines.add(line) }.start()
+    try {
+      logFile << 'one\ntwo\n'
+      for (int i = 0; i < 50 && lines.size() < 2; i++) {
+        sleep 100
+      }
+      Assert.assertEquals(['one', 'two'], lines)
+    } finally {
+      tailer.close()
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package noe.common.utils
+
+import noe.common.utils.processid.ProcessUtils
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Test
+
+class ProcessCommandLinesTest {
+
+  @Before
+  void setUp() {
+    Assume.assumeTrue(ProcessCommandLines.isAvailable())
+  }
+
+  @Test
+  void findPidsTest() {
+    String identifier = "noe-cmdline-${System.nanoTime()}"
+    Process process = ['sleep', '10', identifier].execute()
+    try {
+      long pid = ProcessUtils.getProcessId(process)
+      Assert.assertEquals([pid], ProcessCommandLines.findPids { String cmdline -> cmdline.contains(identifier) })
+      Assert.assertEquals("sleep 10 ${identifier}".toString(), ProcessCommandLines.readCmdline(pid))
+    } finally {
+      process.destroy()
+      process.waitFor()
+    }
+    Assert.assertTrue(ProcessCommandLines.findPids { String cmdline -> cmdline.contains(identifier) }.isEmpty())
+  }
+
+  @Test
+  void findDescendantsTest() {
+    Process process = ['sh', '-c', 'sleep 10 & sleep 10 & wait'].execute()
+    try {
+      long pid = ProcessUtils.getProcessId(process)
+      List<Long> descendants = []
+      for (int i = 0; i < 50 && descendants.size() < 2; i++) {
+        sleep 100
+        descendants = ProcessCommandLines.findDescendants(pid)
+      }
+      Assert.assertEquals(2, descendants.size())
+      descendants.each { Assert.assertEquals('sleep 10', ProcessCommandLines.readCmdline(it)) }
+    } finally {
+      process.destroy()
+    }
+  }
+}
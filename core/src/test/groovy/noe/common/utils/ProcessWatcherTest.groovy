@@ -0,0 +1,38 @@
+package noe.common.utils
+
+import noe.common.utils.processid.ProcessUtils
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
+class ProcessWatcherTest {
+
+  @Test
+  void waitForExitTest() {
+    Assume.assumeFalse(new Platform().isWindows())
+    Process process = ['sleep', '1'].execute()
+    long pid = ProcessUtils.getProcessId(process)
+    Thread.start { process.waitFor() }
+
+    Assert.assertTrue(ProcessWatcher.isAlive(pid))
+    Assert.assertTrue(ProcessWatcher.waitForExit([pid], 10, TimeUnit.SECONDS))
+    Assert.assertFalse(ProcessWatcher.isAlive(pid))
+    Assert.assertTrue(ProcessWatcher.aliveOf([pid]).isEmpty())
+  }
+
+  @Test
+  void waitForExitTimeoutTest() {
+    Assume.assumeFalse(new Platform().isWindows())
+    Process process = ['sleep', '10'].execute()
+    try {
+      long pid = ProcessUtils.getProcessId(process)
+      Assert.assertFalse(ProcessWatcher.waitForExit([pid], 200, TimeUnit.MILLISECONDS))
+      Assert.assertEquals([pid] as Set, ProcessWatcher.aliveOf([pid, null]))
+      Assert.assertFalse('process is not watched after timeout', ProcessWatcher.watched.containsKey(pid))
+    } finally {
+      process.destroy()
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package noe.common.utils
+
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+
+import java.util.zip.ZipFile
+
+class ReportArchiveTest {
+
+  File dir
+  File logDir
+
+  @Before
+  void createLogs() {
+    dir = File.createTempDir('noe', 'ReportArchive')
+    logDir = new File(dir, 'server/log')
+    logDir.mkdirs()
+    new File(logDir, 'server.log').text = 'INFO started\n'
+    new File(logDir, 'access.log').text = 'GET /\n'
+    new File(logDir, 'old').mkdir()
+    new File(logDir, 'old/server.log.1').text = 'INFO rotated\n'
+  }
+
+  @After
+  void deleteLogs() {
+    dir?.deleteDir()
+  }
+
+  @Test
+  void dirFormatKeepsLayoutOfCopy() {
+    ReportArchive archive = new ReportArchive(new File(dir, 'archive/test'), ReportArchive.FORMAT_DIR, false)
+    logDir.eachFile { archive.copy(it, "Tomcat-9${File.separator}tomcat1/log") }
+    archive.close()
+
+    File archived = new File(dir, 'archive/test/Tomcat-9/tomcat1/log')
+    Assert.assertEquals('INFO started\n', new File(archived, 'server.log').text)
+    Assert.assertEquals('INFO rotated\n', new File(archived, 'old/server.log.1').text)
+    Assert.assertEquals(new File(logDir, 'server.log').lastModified(), new File(archived, 'server.log').lastModified())
+  }
+
+  @Test
+  void zipFormatStoresOneArchive() {
+    File location = new File(dir, 'archive/test')
+    [1, 2].each {
+      ReportArchive archive = new ReportArchive(location, ReportArchive.FORMAT_ZIP, false)
+      logDir.eachFile { archive.copy(it, 'Tomcat-9/tomcat1/log') }
+      archive.close()
+    }
+
+    Assert.assertTrue(new File(dir, 'archive/test-1.zip').isFile())
+    ZipFile zip = new ZipFile(new File(dir, 'archive/test.zip'))
+    try {
+      Assert.assertEquals(['Tomcat-9/tomcat1/log/access.log', 'Tomcat-9/tomcat1/log/old/server.log.1', 'Tomcat-9/tomcat1/log/server.log'],
+          zip.entries().collect { it.name }.sort())
+      Assert.assertEquals('INFO started\n', zip.getInputStream(zip.getEntry('Tomcat-9/tomcat1/log/server.log')).text)
+    } finally {
+      zip.close()
+    }
+  }
+
+  @Test
+  void unchangedFilesAreListedOnly() {
+    File server = new File(logDir, 'server.log')
+    File access = new File(logDir, 'access.log')
+    new ReportArchive(new File(dir, 'archive/first'), ReportArchive.FORMAT_DIR, true).withCloseable { it.copy(server, 'log') }
+    LogCheckpoint checkpoint = LogCheckpoint.mark([access])
+
+    ReportArchive archive = new ReportArchive(new File(dir, 'archive/second'), ReportArchive.FORMAT_ZIP, true)
+    archive.copy(server, 'log', checkpoint)
+    archive.copy(access, 'log', checkpoint)
+    archive.close()
+
+    ZipFile zip = new ZipFile(archive.target)
+    try {
+      Assert.assertEquals([ReportArchive.UNCHANGED_LIST], zip.entries().collect { it.name })
+      List<String> unchanged = zip.getInputStream(zip.getEntry(ReportArchive.UNCHANGED_LIST)).readLines()
+      Assert.assertEquals(2, unchanged.size())
+      Assert.assertTrue(unchanged[0], unchanged[0].startsWith('log/access.log has nothing appended since the log checkpoint'))
+      Assert.assertTrue(unchanged[1], unchanged[1].startsWith('log/server.log is unchanged since archived to '))
+    } finally {
+      zip.close()
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package noe.common.utils
+
+import org.junit.Assert
+import org.junit.Test
+
+class TcpProbeTest {
+
+  private static InetSocketAddress freeAddress() {
+    ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+    try {
+      return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort())
+    } finally {
+      socket.close()
+    }
+  }
+
+  @Test
+  void waitForOpenTest() {
+    InetSocketAddress address = freeAddress()
+    ServerSocket server = null
+    Thread opener = Thread.start {
+      sleep 300
+      server = new ServerSocket(address.getPort(), 50, address.getAddress())
+    }
+    try {
+      Map<InetSocketAddress, Long> open = TcpProbe.waitForOpen([address], 10000)
+      Assert.assertEquals([address] as Set, open.keySet())
+      // detected well before the former 1s polling interval elapsed twice
+      Assert.assertTrue("Open detected after ${open[address]} ms", open[address] >= 250 && open[address] < 2000)
+    } finally {
+      opener.join()
+      server?.close()
+    }
+  }
+
+  @Test
+  void waitForClosedTest() {
+    ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+    InetSocketAddress open = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort())
+    InetSocketAddress closed = freeAddress()
+    try {
+      Map<InetSocketAddress, Long> result = TcpProbe.waitForClosed([open, closed], 500)
+      Assert.assertEquals([closed] as Set, result.keySet())
+    } finally {
+      server.close()
+    }
+    Assert.assertEquals([open] as Set, TcpProbe.waitForClosed([open], 5000).keySet())
+  }
+
+  @Test
+  void waitForOpenTimeoutTest() {
+    long start = System.currentTimeMillis()
+    Assert.assertTrue(TcpProbe.waitForOpen([freeAddress()], 300).isEmpty())
+    Assert.assertTrue(System.currentTimeMillis() - start < 2000)
+  }
+}
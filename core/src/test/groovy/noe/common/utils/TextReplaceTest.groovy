@@ -0,0 +1,89 @@
+package noe.common.utils
+
+import org.junit.After
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Test
+
+import java.nio.file.Files
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+class TextReplaceTest {
+
+  File testFile
+
+  @Before
+  void createTestFile() {
+    testFile = File.createTempFile('noe', 'replace')
+  }
+
+  @After
+  void deleteTestFile() {
+    testFile?.delete()
+  }
+
+  @Test
+  void bylineKeepsLineTerminators() {
+    testFile.text = "port=8080\r\nport=8443\nlast port=9090"
+
+    assertEquals(3, TextReplace.replaceRegexp(testFile, 'port=([0-9]+)', 'port=1\\1', true, 'UTF-8'))
+    assertEquals("port=18080\r\nport=18443\nlast port=19090", testFile.text)
+  }
+
+  @Test
+  void dollarInReplacementIsLiteral() {
+    testFile.text = "path=old\n"
+
+    assertEquals(1, TextReplace.replaceRegexp(testFile, 'old', '${jboss.home}', true, 'UTF-8'))
+    assertEquals('path=${jboss.home}\n', testFile.text)
+  }
+
+  @Test
+  void nothingIsWrittenWithoutMatch() {
+    testFile.text = "nothing to replace\n"
+    Object fileKey = Files.readAttributes(testFile.toPath(), 'basic:fileKey').fileKey
+
+    assertEquals(0, TextReplace.replaceRegexp(testFile, 'missing', 'x', true, 'UTF-8'))
+    assertEquals(0, TextReplace.replace(testFile, 'missing', 'x', 'UTF-8'))
+    assertEquals(fileKey, Files.readAttributes(testFile.toPath(), 'basic:fileKey').fileKey)
+  }
+
+  @Test
+  void malformedInputDoesNotFailReplace() {
+    // 'é' in Latin-1 in an otherwise UTF-8 file
+    testFile.bytes = 'Listen 80\n# caf\u00E9\n'.getBytes('ISO-8859-1')
+
+    assertEquals(1, TextReplace.replaceRegexp(testFile, 'Listen 80', 'Listen 8080', true, 'UTF-8'))
+    assertEquals(1, TextReplace.replace(testFile, 'caf', 'bar', 'UTF-8'))
+    assertEquals('Listen 8080\n# bar\uFFFD\n', testFile.getText('UTF-8'))
+  }
+
+  @Test
+  void unmappableCharacterDoesNotFailWrite() {
+    TextReplace.write(testFile, 'x=\u20AC', 'ISO-8859-1')
+
+    assertEquals('x=?', testFile.getText('ISO-8859-1'))
+  }
+
+  @Test
+  void tokenAcrossChunksIsReplaced() {
+    String prefix = 'x' * (64 * 1024 - 3)
+    testFile.text = "${prefix}TOKEN-TOKEN"
+
+    assertEquals(2, TextReplace.replace(testFile, 'TOKEN', 'value', 'UTF-8'))
+    assertEquals("${prefix}value-value".toString(), testFile.text)
+  }
+
+  @Test
+  void permissionsAreKept() {
+    Assume.assumeFalse('Octal permissions are only present on Unix-like', new Platform().isWindows())
+    testFile.text = "#!/bin/sh\necho old\n"
+    JBFile.chmod('0750', testFile)
+
+    assertEquals(1, TextReplace.replaceRegexp(testFile, 'old', 'new', true, 'UTF-8'))
+    assertEquals('0750', JBFile.retrievePermissions(testFile).perm)
+    assertTrue(testFile.canExecute())
+  }
+}
@@ -0,0 +1,59 @@
+package noe.common.utils
+
+import org.junit.After
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Test
+
+class UniversalPropertiesTest {
+
+  static final String PREFIX = 'noe.universal.test'
+
+  @After
+  void clearProperties() {
+    ['value', 'runtime'].each { String name ->
+      UniversalProperties.aliases("${PREFIX}.${name}").each { System.clearProperty(it) }
+    }
+  }
+
+  @Test
+  void aliasesKeepOrder() {
+    Assert.assertEquals(['my.great_property', 'my_great_property', 'MY_GREAT_PROPERTY', 'my.great.property', 'myGreat_property'],
+        UniversalProperties.aliases('my.great_property') as List)
+    Assert.assertEquals(['MY_PROP', 'MY_PROP', 'MY_PROP', 'my.prop'], UniversalProperties.aliases('MY_PROP') as List)
+    Assert.assertEquals(['a..b', 'a__b', 'A__B', 'a..b', 'aB'], UniversalProperties.aliases('a..b') as List)
+  }
+
+  @Test
+  void firstSetAliasWins() {
+    System.setProperty('noeUniversalTestValue', 'camel')
+    Assert.assertEquals('camel', Library.getUniversalProperty("${PREFIX}.value"))
+
+    System.setProperty("${PREFIX}.value".replace('.', '_'), 'underscore')
+    Assert.assertEquals('underscore', Library.getUniversalProperty("${PREFIX}.value"))
+
+    System.setProperty("${PREFIX}.value", '')
+    Assert.assertEquals('underscore', Library.getUniversalProperty("${PREFIX}.value"))
+  }
+
+  @Test
+  void propertiesSetAtRuntimeAreSeen() {
+    Assert.assertEquals('default', Library.getUniversalProperty("${PREFIX}.runtime", 'default'))
+
+    System.setProperty("${PREFIX}.runtime", 'set')
+    Assert.assertEquals('set', Library.getUniversalProperty("${PREFIX}.runtime", 'default'))
+
+    System.clearProperty("${PREFIX}.runtime")
+    Assert.assertEquals('default', Library.getUniversalProperty("${PREFIX}.runtime", 'default'))
+  }
+
+  @Test
+  void environmentIsResolved() {
+    Map.Entry<String, String> variable = System.getenv().find {
+      it.key ==~ /[A-Z][A-Z0-9_]*/ && it.value && UniversalProperties.aliases(it.key.toLowerCase().replace('_', '.')).every { System.getProperty(it) == null }
+    }
+    Assume.assumeNotNull(variable)
+
+    Assert.assertEquals(variable.value, Library.getUniversalProperty(variable.key.toLowerCase().replace('_', '.')))
+  }
+}
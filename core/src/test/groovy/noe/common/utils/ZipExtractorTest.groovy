@@ -0,0 +1,102 @@
+package noe.common.utils
+
+import org.apache.tools.zip.UnixStat
+import org.apache.tools.zip.ZipEntry
+import org.apache.tools.zip.ZipOutputStream
+import org.junit.After
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Test
+
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.security.MessageDigest
+
+class ZipExtractorTest {
+
+  File dir
+  File zip
+
+  @Before
+  void createZip() {
+    dir = File.createTempDir('noe', 'ZipExtractor')
+    zip = new File(dir, 'dist.zip')
+    writeZip(zip) { ZipOutputStream out ->
+      add(out, 'dist/', UnixStat.DIR_FLAG | 0755, null)
+      add(out, 'dist/bin/run.sh', UnixStat.FILE_FLAG | 0750, '#!/bin/sh\necho run\n')
+      add(out, 'dist/conf/server.conf', UnixStat.FILE_FLAG | 0640, 'port=8080\n')
+      add(out, 'dist/run', UnixStat.LINK_FLAG | 0777, 'bin/run.sh')
+      100.times { add(out, "dist/lib/lib-${it}.txt", UnixStat.FILE_FLAG | 0644, "library ${it}\n" * 1000) }
+    }
+  }
+
+  @After
+  void deleteZip() {
+    dir?.deleteDir()
+  }
+
+  @Test
+  void extractsContentModesAndLinks() {
+    File dest = new File(dir, 'dest')
+    MessageDigest digest = MessageDigest.getInstance('SHA-256')
+
+    ZipExtractor.extract(zip, dest, 4, digest)
+
+    Assert.assertEquals('port=8080\n', new File(dest, 'dist/conf/server.conf').text)
+    Assert.assertEquals(100, new File(dest, 'dist/lib').list().length)
+    Assert.assertEquals("library 99\n" * 1000, new File(dest, 'dist/lib/lib-99.txt').text)
+    Assert.assertEquals(MessageDigest.getInstance('SHA-256').digest(zip.bytes), digest.digest())
+
+    Assume.assumeTrue('POSIX file system is needed', !new Platform().isWindows())
+    Assert.assertEquals('rwxr-x---', PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(dest, 'dist/bin/run.sh').toPath())))
+    Assert.assertEquals('rw-r-----', PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(dest, 'dist/conf/server.conf').toPath())))
+    Assert.assertTrue(Files.isSymbolicLink(new File(dest, 'dist/run').toPath()))
+    Assert.assertEquals('bin/run.sh', Files.readSymbolicLink(new File(dest, 'dist/run').toPath()).toString())
+  }
+
+  @Test
+  void existingFilesAreReplaced() {
+    File dest = new File(dir, 'dest')
+    ZipExtractor.extract(zip, dest, 2, null)
+    File conf = new File(dest, 'dist/conf/server.conf')
+    conf.text = 'changed'
+    conf.setReadOnly()
+
+    ZipExtractor.extract(zip, dest, 2, null)
+
+    Assert.assertEquals('port=8080\n', conf.text)
+  }
+
+  @Test
+  void entriesOutsideOfDestinationAreRefused() {
+    File evil = new File(dir, 'evil.zip')
+    writeZip(evil) { ZipOutputStream out -> add(out, '../outside.txt', UnixStat.FILE_FLAG | 0644, 'evil') }
+
+    try {
+      ZipExtractor.extract(evil, new File(dir, 'dest'), 2, null)
+      Assert.fail('Extraction of entry outside of destination has to fail')
+    } catch (IOException expected) {
+      Assert.assertFalse(new File(dir, 'outside.txt').exists())
+    }
+  }
+
+  private static void writeZip(File file, Closure entries) {
+    ZipOutputStream out = new ZipOutputStream(file)
+    try {
+      entries(out)
+    } finally {
+      out.close()
+    }
+  }
+
+  private static void add(ZipOutputStream out, String name, int mode, String content) {
+    ZipEntry entry = new ZipEntry(name)
+    entry.setUnixMode(mode)
+    out.putNextEntry(entry)
+    if (content != null) {
+      out.write(content.getBytes('UTF-8'))
+    }
+    out.closeEntry()
+  }
+}
@@ -0,0 +1,68 @@
+package noe.eap.server.as7
+
+import org.junit.Assert
+import org.junit.Test
+
+class AS7CliBatchTest {
+
+  @Test
+  void recordTest() {
+    AS7CliBatch batch = new AS7CliBatch()
+    Assert.assertTrue(batch.isEmpty())
+
+    Assert.assertFalse(batch.record(':read-attribute(name=server-state)'))
+    Assert.assertFalse(batch.record('/subsystem=undertow/server=default-server/host=default-host:read-children-names(child-type=location)'))
+    Assert.assertFalse(batch.record('deploy /tmp/app.war'))
+    Assert.assertTrue(batch.isEmpty())
+
+    Assert.assertTrue(batch.record('/subsystem=undertow/configuration=handler/file=h:remove()'))
+    Assert.assertTrue(batch.record('reload --admin-only'))
+    Assert.assertTrue(batch.isAdminOnlyReload())
+    Assert.assertTrue(batch.record('/subsystem=undertow/configuration=handler/file=h:add(path=/tmp, directory-listing=true)'))
+    batch.requestReload(false)
+
+    Assert.assertEquals(2, batch.operations.size())
+    Assert.assertTrue(batch.isReloadRequested())
+    Assert.assertFalse(batch.isAdminOnlyReload())
+    Assert.assertEquals('batch,/subsystem=undertow/configuration=handler/file=h:remove(),' +
+        '/subsystem=undertow/configuration=handler/file=h:add(path=/tmp, directory-listing=true),run-batch', batch.compile())
+  }
+
+  @Test
+  void lifecycleOperationsAreNotRecordedTest() {
+    AS7CliBatch batch = new AS7CliBatch()
+    Assert.assertFalse(batch.record(':shutdown(restart=true)'))
+    Assert.assertFalse(batch.record('/host=master:reload'))
+    Assert.assertFalse(batch.record('/server-group=main-server-group:restart-servers'))
+    Assert.assertTrue(batch.isEmpty())
+  }
+
+  @Test
+  void readOnlyTest() {
+    Assert.assertTrue(AS7CliBatch.isReadOnly(':read-attribute(name=server-state)'))
+    Assert.assertTrue(AS7CliBatch.isReadOnly('ls /subsystem,/deployment=a.war:read-resource'))
+    Assert.assertFalse(AS7CliBatch.isReadOnly('deploy /tmp/app.war'))
+    Assert.assertFalse(AS7CliBatch.isReadOnly('module add --name=a --resources=a.jar'))
+    Assert.assertFalse(AS7CliBatch.isReadOnly(':read-resource,:shutdown'))
+  }
+
+  @Test
+  void takeOperationsKeepsReloadTest() {
+    AS7CliBatch batch = new AS7CliBatch()
+    Assert.assertNull(batch.takeOperations())
+    Assert.assertTrue(batch.record('/a=b:add,reload'))
+
+    Assert.assertEquals('/a=b:add', batch.takeOperations())
+    Assert.assertTrue(batch.operations.isEmpty())
+    Assert.assertTrue(batch.isReloadRequested())
+    Assert.assertNull(batch.takeOperations())
+  }
+
+  @Test
+  void singleOperationIsNotWrappedTest() {
+    AS7CliBatch batch = new AS7CliBatch()
+    Assert.assertTrue(batch.record(':write-attribute(name=a,value=b)'))
+    Assert.assertEquals(':write-attribute(name=a,value=b)', batch.compile())
+  }
+
+}
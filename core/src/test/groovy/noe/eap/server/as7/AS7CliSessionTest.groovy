@@ -0,0 +1,114 @@
+package noe.eap.server.as7
+
+import noe.common.utils.Platform
+import org.junit.After
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Test
+
+class AS7CliSessionTest {
+
+  // fake interactive jboss-cli: prints a prompt with each output line, `hang` swallows the following echo marker
+  static final String FAKE_CLI = '''\
+while read -r line; do
+  case "$line" in
+    quit) exit 0 ;;
+    'echo '*) echo "${line#echo }" ;;
+    fail*) echo "[standalone@localhost:9990 /] Failed to handle $line" ;;
+    lost*) echo "The controller is not available at localhost:9990" ;;
+    hang*) read -r ignored ;;
+    batch) in_batch=1 ;;
+    discard-batch) in_batch= ;;
+    run-batch) echo "The batch failed with the following error: WFLYCTL0212: Duplicate resource" ;;
+    batch-state) if [ -n "$in_batch" ]; then echo "batch mode"; else echo "normal mode"; fi ;;
+    *) echo "[standalone@localhost:9990 /] done $line" ;;
+  esac
+done
+'''
+
+  static final String HOST = 'fake-cli'
+  static final int PORT = 9990
+
+  @Before
+  void before() {
+    Assume.assumeFalse(new Platform().isWindows())
+  }
+
+  @After
+  void after() {
+    AS7CliSession.close(HOST, PORT)
+  }
+
+  private static AS7CliSession pooledSession() {
+    return AS7CliSession.forController(HOST, PORT, ['sh', '-c', FAKE_CLI], new File('.'))
+  }
+
+  @Test
+  void commandsRunInOneSession() {
+    AS7CliSession session = pooledSession()
+
+    Map result = session.run('/a=b:add(x=1,y=2),connection refused by the app', 5000)
+
+    Assert.assertEquals(0, result.exitValue)
+    Assert.assertEquals('done /a=b:add(x=1,y=2)\ndone connection refused by the app\n', result.stdOut)
+    Assert.assertSame('session is kept in the pool', session, pooledSession())
+  }
+
+  @Test
+  void processingStopsAtFailedCommand() {
+    Map result = pooledSession().run('first,failing,never', 5000)
+
+    Assert.assertEquals(1, result.exitValue)
+    Assert.assertEquals('done first\nFailed to handle failing\n', result.stdOut)
+  }
+
+  @Test
+  void failedBatchIsDiscarded() {
+    AS7CliSession session = pooledSession()
+
+    Map result = session.run('batch,/a=b:add,run-batch', 5000)
+
+    Assert.assertEquals(1, result.exitValue)
+    Assert.assertEquals('normal mode\n', session.run('batch-state', 5000).stdOut)
+  }
+
+  @Test
+  void lostConnectionAfterSentCommandsGivesFailedResult() {
+    AS7CliSession session = pooledSession()
+
+    Map result = session.run('first,lost,never', 5000)
+
+    Assert.assertNotNull('commands were sent, they must not be run again', result)
+    Assert.assertEquals(1, result.exitValue)
+    Assert.assertEquals('done first\n', result.stdOut)
+    Assert.assertNotSame('broken session is evicted', session, pooledSession())
+  }
+
+  @Test
+  void lostConnectionOnFirstCommandFallsBack() {
+    AS7CliSession session = pooledSession()
+
+    Assert.assertNull('nothing reached the server, one-shot mode could run the commands', session.run('lost,never', 5000))
+    Assert.assertNotSame('broken session is evicted', session, pooledSession())
+  }
+
+  @Test
+  void timeoutGivesFailedResult() {
+    Map result = pooledSession().run('first,hang', 500)
+
+    Assert.assertNotNull(result)
+    Assert.assertEquals(1, result.exitValue)
+    Assert.assertEquals('done first\n', result.stdOut)
+  }
+
+  @Test
+  void splitCommandsTest() {
+    Assert.assertEquals([':read-resource'], AS7CliSession.splitCommands(':read-resource'))
+    Assert.assertEquals(['batch', '/a=b:add(x=1,y=2)', 'run-batch'], AS7CliSession.splitCommands('batch, /a=b:add(x=1,y=2),run-batch'))
+    Assert.assertEquals(['/a=b:add(l=[1,2],o={k=v,l=w})'], AS7CliSession.splitCommands('/a=b:add(l=[1,2],o={k=v,l=w})'))
+    Assert.assertEquals(['/a=b:add(v="x,y")', 'reload'], AS7CliSession.splitCommands('/a=b:add(v="x,y"),reload'))
+    Assert.assertEquals([], AS7CliSession.splitCommands(' , '))
+  }
+
+}
@@ -1,13 +1,16 @@
 package noe.server
 
 import noe.common.utils.JBFile
+import noe.common.utils.LogCheckpoint
 import noe.common.utils.PathHelper
 import org.junit.After
+import org.junit.Assume
 import org.junit.Before
 
 import groovy.util.logging.Slf4j
 import org.junit.Test
 
+import java.nio.file.Files
 import java.util.concurrent.TimeUnit
 
 import static org.junit.Assert.*
@@ -37,6 +40,16 @@ class ServerAbstractTest {
     }
   }
 
+  class CloneTestServer extends TestServer {
+    CloneTestServer(String basedir, version) {
+      super(basedir, version)
+    }
+
+    @Override
+    void shiftPorts(int offset) {
+    }
+  }
+
   @Before
   void prepare() {
     baseDir = File.createTempDir('noe', 'ServerAbstract')
@@ -150,4 +163,71 @@ class ServerAbstractTest {
     accessLog.append('random data\n' + text)
     assertEquals(server.countOccurrencesInLog('access', pattern), 2)
   }
+
+  @Test
+  void serverLogCheckpointTest() {
+    accessLog.write("${text}\n")
+    LogCheckpoint mark = server.markLogs()
+    assertFalse(shouldNotContainMsg, server.logContains('access', pattern))
+    assertFalse(shouldNotContainMsg, server.logsContains(pattern))
+    assertEquals(0, server.countOccurrencesInLog('access', pattern))
+
+    accessLog.append("${text} again\n")
+    assertTrue(shouldContainMsg, server.logContains('access', pattern))
+    assertTrue(shouldContainMsg, server.logsContains(pattern))
+    assertEquals(1, server.countOccurrencesInLog('access', pattern))
+    assertEquals(2, server.countOccurrencesInLogSince(null, 'access', pattern))
+
+    server.setLogCheckpoint(null)
+    assertEquals(2, server.countOccurrencesInLog('access', pattern))
+    assertEquals(1, server.countOccurrencesInLogSince(mark, 'access', pattern))
+  }
+
+  @Test
+  void configEditSessionTest() {
+    String nl = System.lineSeparator()
+    server.setServerRoot(baseDir.getAbsolutePath())
+    server.setConfigDirs(['conf', 'conf2'])
+    File conf = new File(PathHelper.join(baseDir.getAbsolutePath(), 'conf', 'test.conf'))
+    JBFile.mkdir(conf.getParentFile())
+    conf.text = "Listen 80\nServerName localhost\n"
+
+    ConfigEditSession.Report report = server.editConfig()
+        .replaceInConf('test.conf', 'Listen ([0-9]+)', 'Listen 1\\1')
+        .replaceInConf('test.conf', 'localhost', 'example.com', false, true)
+        .replaceInConf('test.conf', 'Missing', 'nothing')
+        .insertInConf('test.conf', '# edited', 1)
+        .insertInConf('test.conf', '# too far', 10)
+        .commit()
+
+    assertEquals([true, true, false, true, false], report.results*.applied)
+    assertTrue(report[0])
+    assertFalse(report.allApplied)
+    assertEquals("# edited${nl}Listen 180\nServerName example.com\n".toString(), conf.text)
+  }
+
+  @Test
+  void cloneByLinksTest() {
+    Assume.assumeFalse('Linking is not used with admin privileges', JBFile.useAdminPrivileges)
+    File ref = new File(baseDir, 'ref')
+    ['lib/core.jar', 'conf/httpd.conf', 'conf/extra.jar', 'bin/start.sh'].each { String path ->
+      File file = new File(ref, path)
+      JBFile.mkdir(file.getParentFile())
+      file.text = path
+    }
+    File clone = new File(baseDir, 'node2')
+    CloneTestServer node = new CloneTestServer(clone.getAbsolutePath(), '2.4.62')
+    node.setRefBasedir(ref.getAbsolutePath())
+    node.setConfigDirs(['/conf'])
+    node.setLogDirs(['/logs'])
+    node.setDeploymentPath(null)
+
+    new ServerInstanceCreatorHelper(node, ServerInstanceCreatorHelper.CLONE_MODE_LINK).createNewServerInstancePhysicalCopy()
+
+    Closure<Boolean> linked = { String path -> Files.isSameFile(new File(ref, path).toPath(), new File(clone, path).toPath()) }
+    assertTrue('Binary has to be linked', linked('lib/core.jar'))
+    assertFalse('Binary in mutable directory has to be copied', linked('conf/extra.jar'))
+    assertFalse('Script has to be copied', linked('bin/start.sh'))
+    assertEquals('conf/httpd.conf', new File(clone, 'conf/httpd.conf').text)
+  }
 }
@@ -0,0 +1,81 @@
+package noe.server
+
+import org.junit.Assert
+import org.junit.Test
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+class ServerLifecycleExecutorTest {
+
+  // actions get just ids, servers themselves are not needed
+  private final Map<String, ServerAbstract> servers = [balancer: null, tomcat1: null, tomcat2: null, tomcat3: null]
+  private final Map<String, Set<String>> dependencies = [balancer: ['tomcat1', 'tomcat2', 'tomcat3'] as Set<String>]
+
+  @Test
+  void sequentialOrderTest() {
+    List<String> processed = []
+    new ServerLifecycleExecutor(1, dependencies).execute('start', servers) { id, server -> processed.add(id) }
+    Assert.assertEquals(['tomcat1', 'tomcat2', 'tomcat3', 'balancer'], processed)
+
+    processed.clear()
+    new ServerLifecycleExecutor(1, dependencies).execute('stop', servers, true) { id, server -> processed.add(id) }
+    Assert.assertEquals(['balancer', 'tomcat1', 'tomcat2', 'tomcat3'], processed)
+  }
+
+  @Test
+  void parallelTest() {
+    Queue<String> processed = new ConcurrentLinkedQueue<String>()
+    AtomicInteger running = new AtomicInteger()
+    AtomicInteger maxRunning = new AtomicInteger()
+    new ServerLifecycleExecutor(2, dependencies).execute('start', servers) { id, server ->
+      maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+      sleep 200
+      running.decrementAndGet()
+      processed.add(id)
+    }
+
+    Assert.assertEquals(2, maxRunning.get())
+    Assert.assertEquals(4, processed.size())
+    Assert.assertEquals('balancer', processed.toList().last())
+  }
+
+  @Test
+  void failuresTest() {
+    List<String> processed = Collections.synchronizedList([])
+    try {
+      new ServerLifecycleExecutor(4, dependencies).execute('start', servers) { id, server ->
+        processed.add(id)
+        if (id in ['tomcat1', 'tomcat3']) {
+          throw new IllegalStateException("${id} failed")
+        }
+      }
+      Assert.fail('Failures have to be reported')
+    } catch (ServerLifecycleException e) {
+      Assert.assertEquals(['tomcat1', 'tomcat3'], e.failures.keySet().toList())
+      Assert.assertEquals(1, e.getSuppressed().length)
+    }
+    Assert.assertEquals(4, processed.size())
+  }
+
+  @Test
+  void sequentialStopsAtFirstFailureTest() {
+    List<String> processed = []
+    try {
+      new ServerLifecycleExecutor(1, dependencies).execute('start', servers) { id, server ->
+        processed.add(id)
+        assert id != 'tomcat2'
+      }
+      Assert.fail('Failure has to be thrown')
+    } catch (AssertionError e) {
+      Assert.assertTrue(e.message.contains('tomcat2'))
+    }
+    Assert.assertEquals(['tomcat1', 'tomcat2'], processed)
+  }
+
+  @Test(expected = IllegalStateException)
+  void cyclicDependencyTest() {
+    Map<String, Set<String>> cyclic = [tomcat1: ['tomcat2'] as Set<String>, tomcat2: ['tomcat1'] as Set<String>]
+    new ServerLifecycleExecutor(1, cyclic).execute('start', servers) { id, server -> }
+  }
+}
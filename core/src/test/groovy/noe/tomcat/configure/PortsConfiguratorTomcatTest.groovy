@@ -0,0 +1,63 @@
+package noe.tomcat.configure
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+class PortsConfiguratorTomcatTest {
+
+  static final String SERVER_XML = '''\
+<Server port="8005" shutdown="SHUTDOWN">
+  <Service name="Catalina">
+    <Connector port="8080" protocol="HTTP/1.1" connectionTimeout="20000" redirectPort="8443"/>
+    <Connector port="9443" protocol="org.apache.coyote.http11.Http11NioProtocol" SSLEnabled="true"/>
+    <Connector protocol="AJP/1.3" address="::1" port="8009" redirectPort="8443"/>
+    <Connector port="${port.custom}" protocol="HTTP/1.1"/>
+    <Engine name="Catalina" defaultHost="localhost">
+      <Cluster className="org.apache.catalina.ha.tcp.SimpleTcpCluster">
+        <Channel className="org.apache.catalina.tribes.group.GroupChannel">
+          <Receiver className="org.apache.catalina.tribes.transport.nio.NioReceiver" port="4000"/>
+        </Channel>
+      </Cluster>
+    </Engine>
+  </Service>
+</Server>
+'''
+
+  @Test
+  void allPortsAreShifted() {
+    Node server = new PortsConfiguratorTomcat(new XmlParser().parseText(SERVER_XML)).define(101)
+
+    assertEquals('8106', server.@port)
+    List<Node> connectors = server.Service.Connector
+    assertEquals(['8181', '9544', '8110', '${port.custom}'], connectors*.@port)
+    assertEquals(['8544', null, '8544', null], connectors*.@redirectPort)
+    assertEquals('4101', server.Service.Engine.Cluster.Channel.Receiver[0].@port)
+  }
+
+  @Test
+  void disabledPortsAreKept() {
+    Node server = new PortsConfiguratorTomcat(new XmlParser().parseText('<Server port="-1"><Service><Connector port="0"/></Service></Server>')).define(101)
+
+    assertEquals('-1', server.@port)
+    assertEquals('0', server.Service.Connector[0].@port)
+  }
+
+  @Test
+  void portsAreShiftedInTextAndCommentsAreKept() {
+    String xml = SERVER_XML.replace('<Service name="Catalina">', """<Service name="Catalina">
+    <!-- Define an AJP 1.3 Connector on port 8009 -->
+    <!--
+    <Connector port="8443" protocol="org.apache.coyote.http11.Http11AprProtocol"/>
+    -->""")
+    StringBuilder text = new StringBuilder(xml)
+
+    assertEquals(7, PortsConfiguratorTomcat.shift(text, 101))
+
+    assertTrue(text.contains('<!-- Define an AJP 1.3 Connector on port 8009 -->'))
+    assertTrue(text.contains('<Connector port="8443" protocol="org.apache.coyote.http11.Http11AprProtocol"/>'))
+    Node server = new XmlParser().parseText(text.toString())
+    assertEquals(new PortsConfiguratorTomcat(new XmlParser().parseText(xml)).define(101).toString(), server.toString())
+  }
+}
@@ -0,0 +1,114 @@
+package noe.tomcat.configure
+
+import noe.common.utils.Version
+import noe.server.Tomcat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class TomcatConfiguratorTest {
+
+  static final String SERVER_XML = '''\
+<Server port="8005" shutdown="SHUTDOWN">
+  <Service name="Catalina">
+    <Connector port="8080" protocol="HTTP/1.1" redirectPort="8443"/>
+    <Engine name="Catalina" defaultHost="localhost"/>
+  </Service>
+</Server>
+'''
+
+  File baseDir
+  File serverXml
+  Tomcat tomcat
+
+  @Before
+  void before() {
+    baseDir = File.createTempDir('noe', 'TomcatConfigurator')
+    serverXml = new File(baseDir, 'conf/server.xml')
+    serverXml.getParentFile().mkdirs()
+    serverXml.text = SERVER_XML
+    // a write of the configurator has to change the modification time
+    serverXml.setLastModified(System.currentTimeMillis() - 60000)
+    tomcat = new Tomcat(baseDir.getAbsolutePath(), new Version('1.0.0-FAKE'))
+    tomcat.configDirs = ['conf']
+  }
+
+  @After
+  void after() {
+    baseDir?.deleteDir()
+  }
+
+  @Test
+  void deferredChangesAreWrittenOnCommit() {
+    TomcatConfigurator configurator = new TomcatConfigurator(tomcat).deferCommit()
+        .jvmRoute('node1')
+        .shiftPorts(100)
+        .addListener('org.example.TestListener')
+
+    assertTrue(configurator.hasUncommittedChanges())
+    assertEquals(SERVER_XML, serverXml.text)
+
+    TomcatConfigDiff diff = configurator.commit()
+
+    assertFalse(configurator.hasUncommittedChanges())
+    assertEquals([serverXml] as Set, diff.files)
+    assertEquals([
+        'Server@port: 8005 -> 8105',
+        'Server/Service[0]/Connector[0]@port: 8080 -> 8180',
+        'Server/Service[0]/Connector[0]@redirectPort: 8443 -> 8543',
+        'Server/Service[0]/Engine[0]@jvmRoute: null -> node1',
+        '+ Server/Listener[0] [className:org.example.TestListener]'
+    ] as Set, diff.changes[serverXml] as Set)
+    Node server = new XmlParser().parse(serverXml)
+    assertEquals('node1', server.Service.Engine[0].@jvmRoute)
+    assertEquals('8180', server.Service.Connector[0].@port)
+    assertEquals(8180, tomcat.mainHttpPort)
+
+    configurator.revertAllConfiguration()
+    assertEquals(SERVER_XML, serverXml.text)
+  }
+
+  @Test
+  void committedConfigIsParsedAgainWhenChangedOnDisk() {
+    TomcatConfigurator configurator = new TomcatConfigurator(tomcat).deferCommit()
+    configurator.jvmRoute('node1').commit()
+
+    serverXml.text = SERVER_XML.replace('SHUTDOWN', 'STOP')
+    TomcatConfigDiff diff = configurator.jvmRoute('node2').commit()
+
+    assertEquals(['Server/Service[0]/Engine[0]@jvmRoute: null -> node2'], diff.changes[serverXml])
+    Node server = new XmlParser().parse(serverXml)
+    assertEquals('STOP', server.@shutdown)
+    assertEquals('node2', server.Service.Engine[0].@jvmRoute)
+  }
+
+  @Test
+  void uncommittedConfigChangedOnDiskIsRefused() {
+    TomcatConfigurator configurator = new TomcatConfigurator(tomcat).deferCommit().jvmRoute('node1')
+    serverXml.text = SERVER_XML.replace('SHUTDOWN', 'STOP')
+
+    try {
+      configurator.jvmRoute('node2')
+      fail('Uncommitted changes of config changed on disk must not be overwritten')
+    } catch (IllegalStateException expected) {
+      assertEquals(SERVER_XML.replace('SHUTDOWN', 'STOP'), serverXml.text)
+    }
+  }
+
+  @Test
+  void shiftedPortsKeepComments() {
+    String commented = SERVER_XML.replace('<Engine', '<!-- Define an AJP 1.3 Connector on port 8009 -->\n    <Engine')
+    serverXml.text = commented
+
+    new TomcatConfigurator(tomcat).shiftPorts(100)
+
+    assertEquals(commented.replace('8005', '8105').replace('8080', '8180').replace('8443', '8543'), serverXml.text)
+    assertEquals(8180, tomcat.mainHttpPort)
+    assertEquals(8105, tomcat.shutdownPort)
+  }
+}